@@ -0,0 +1,53 @@
+package com.images.benchmark;
+
+import com.images.ImagesApiApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Starts the application without a web server on an in-memory H2 database, with blobs in a temporary
+ * directory and background work that would add noise to the measurements switched off.
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start() {
+        return start(WebApplicationType.NONE);
+    }
+
+    static ConfigurableApplicationContext start(WebApplicationType webApplicationType, String... arguments) {
+        final Path storage;
+        try {
+            storage = Files.createTempDirectory("images-api-benchmark");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new SpringApplicationBuilder(ImagesApiApplication.class)
+                .web(webApplicationType)
+                .logStartupInfo(false)
+                .run(concat(arguments, "--spring.profiles.active=benchmark",
+                        "--spring.main.banner-mode=off",
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_ON_EXIT=FALSE",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--logging.level.root=WARN",
+                        "--images.storage.root=" + storage.resolve("blobs"),
+                        "--images.transform-cache.root=" + storage.resolve("transform-cache"),
+                        "--images.notifications.drain.enabled=false",
+                        "--images.variants.specs="));
+    }
+
+    private static String[] concat(String[] arguments, String... defaults) {
+        final String[] all = Arrays.copyOf(defaults, defaults.length + arguments.length);
+        System.arraycopy(arguments, 0, all, defaults.length, arguments.length);
+        return all;
+    }
+}
@@ -0,0 +1,57 @@
+package com.images.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.images.domain.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes lists of images with an ObjectMapper configured the way Spring MVC configures its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ImageSerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int images;
+
+    private ObjectMapper objectMapper;
+    private List<Image> list;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        final LocalDateTime date = LocalDateTime.of(2022, 1, 1, 12, 0);
+        list = new ArrayList<>(images);
+        for (int i = 0; i < images; i++) {
+            list.add(Image.builder()
+                    .uuid(new UUID(i, i))
+                    .title("Image " + i)
+                    .description("Description of benchmark image " + i)
+                    .path(String.format("%064x", i))
+                    .dateAdded(date.plusMinutes(i))
+                    .dateUpdated(date.plusMinutes(i))
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeImages() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(list);
+    }
+}
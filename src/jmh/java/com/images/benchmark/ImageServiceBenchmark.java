@@ -0,0 +1,87 @@
+package com.images.benchmark;
+
+import com.images.domain.Image;
+import com.images.forms.ImageCreateForm;
+import com.images.services.ImageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service calls against the real Spring context and H2. {@code getImage} mostly hits the metadata cache,
+ * {@code findAll} reads every stored row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ImageServiceBenchmark {
+
+    @Param({"1000"})
+    int storedImages;
+
+    private ConfigurableApplicationContext context;
+    private ImageService imageService;
+    private final List<UUID> uuids = new ArrayList<>();
+    private final Random random = new Random(42);
+    private long uploads;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        imageService = context.getBean(ImageService.class);
+        for (int i = 0; i < storedImages; i++) {
+            uuids.add(imageService.createImage(file(i), form(i)).getUuid());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Image createImage() {
+        // Every upload has new content so the blob store cannot skip the write as a duplicate
+        final long upload = storedImages + uploads++;
+        return imageService.createImage(file(upload), form(upload));
+    }
+
+    @Benchmark
+    public Image getImage() {
+        return imageService.getImage(uuids.get(random.nextInt(uuids.size())));
+    }
+
+    @Benchmark
+    public List<Image> findAll() {
+        return imageService.findAll();
+    }
+
+    private static MockMultipartFile file(long sequence) {
+        final byte[] content = new byte[4 * 1024];
+        ByteBuffer.wrap(content).putLong(sequence);
+        return new MockMultipartFile("file", "image-" + sequence + ".jpg", "image/jpeg", content);
+    }
+
+    private static ImageCreateForm form(long sequence) {
+        return ImageCreateForm.builder()
+                .title("Image " + sequence)
+                .description("Benchmark image " + sequence)
+                .build();
+    }
+}
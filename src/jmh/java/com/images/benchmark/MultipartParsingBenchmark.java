@@ -0,0 +1,112 @@
+package com.images.benchmark;
+
+import org.apache.tomcat.util.http.fileupload.FileItem;
+import org.apache.tomcat.util.http.fileupload.FileUpload;
+import org.apache.tomcat.util.http.fileupload.FileUploadException;
+import org.apache.tomcat.util.http.fileupload.UploadContext;
+import org.apache.tomcat.util.http.fileupload.disk.DiskFileItemFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a {@code POST /image} request body with the multipart parser embedded Tomcat uses. Like the servlet
+ * default, every file part is written to disk whatever its size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MultipartParsingBenchmark {
+
+    private static final String BOUNDARY = "----images-api-benchmark";
+
+    @Param({"1024", "102400", "1048576", "10485760"})
+    int fileSize;
+
+    private byte[] body;
+    private Path repository;
+    private FileUpload fileUpload;
+
+    @Setup
+    public void setUp() throws IOException {
+        final byte[] content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(fileSize + 512);
+        output.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+                + "Benchmark image\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"image.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        output.write(content);
+        output.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        body = output.toByteArray();
+
+        repository = Files.createTempDirectory("images-api-multipart");
+        fileUpload = new FileUpload(new DiskFileItemFactory(0, repository.toFile()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(repository);
+    }
+
+    @Benchmark
+    public long parse() throws FileUploadException {
+        final List<FileItem> items = fileUpload.parseRequest(new BodyContext(body));
+        long size = 0;
+        for (FileItem item : items) {
+            size += item.getSize();
+            item.delete();
+        }
+        return size;
+    }
+
+    private static final class BodyContext implements UploadContext {
+
+        private final byte[] body;
+
+        BodyContext(byte[] body) {
+            this.body = body;
+        }
+
+        @Override
+        public long contentLength() {
+            return body.length;
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return StandardCharsets.UTF_8.name();
+        }
+
+        @Override
+        public String getContentType() {
+            return "multipart/form-data; boundary=" + BOUNDARY;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(body);
+        }
+    }
+}
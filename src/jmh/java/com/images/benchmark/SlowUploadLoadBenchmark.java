@@ -0,0 +1,147 @@
+package com.images.benchmark;
+
+import com.images.execution.ExecutionMode;
+import com.images.execution.VirtualThreads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test comparing {@code images.execution.mode=platform} with {@code virtual}: a wave of clients upload
+ * to {@code POST /image} at the same time, each sending its body in small chunks with pauses in between like a
+ * slow mobile connection. Tomcat is limited to {@value #TOMCAT_THREADS} threads, so in platform mode the wave
+ * is served in several rounds while in virtual mode every upload is read at once.
+ *
+ * <p>The virtual mode needs the benchmark JVM to be Java 21 or newer, pass it with {@code -Pjmh.jvm}. On an
+ * older runtime the application would fall back to platform threads and both modes would measure the same
+ * thing, so the setup fails instead.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SlowUploadLoadBenchmark {
+
+    private static final String HOST = "localhost";
+    private static final int TOMCAT_THREADS = 50;
+    private static final String BOUNDARY = "----images-api-load-test";
+    private static final int CHUNK_SIZE = 4 * 1024;
+
+    @Param({"platform", "virtual"})
+    String mode;
+
+    @Param({"400"})
+    int clients;
+
+    @Param({"8"})
+    int chunks;
+
+    @Param({"25"})
+    int pauseMillis;
+
+    private ConfigurableApplicationContext context;
+    private ExecutorService clientThreads;
+    private int port;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(WebApplicationType.SERVLET,
+                "--server.port=0",
+                "--server.tomcat.threads.max=" + TOMCAT_THREADS,
+                // The whole wave connects at once, a short accept backlog would reset some of the connections
+                "--server.tomcat.accept-count=" + (2 * clients),
+                "--images.execution.mode=" + mode);
+        if (ExecutionMode.VIRTUAL.name().equalsIgnoreCase(mode)
+                && context.getBean(VirtualThreads.class).getMode() != ExecutionMode.VIRTUAL) {
+            context.close();
+            throw new IllegalStateException(String.format("Virtual mode needs Java 21 or newer, the benchmark runs on Java [%s]",
+                    System.getProperty("java.version")));
+        }
+        port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        clientThreads = Executors.newFixedThreadPool(clients);
+    }
+
+    @TearDown
+    public void tearDown() {
+        clientThreads.shutdownNow();
+        context.close();
+    }
+
+    @Benchmark
+    public int uploadWave() throws Exception {
+        final List<Future<Integer>> uploads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            final int client = i;
+            uploads.add(clientThreads.submit(() -> upload(client)));
+        }
+        int succeeded = 0;
+        for (Future<Integer> upload : uploads) {
+            final int status = upload.get();
+            if (status != 200) {
+                throw new IllegalStateException(String.format("Upload answered with status [%d]", status));
+            }
+            succeeded++;
+        }
+        return succeeded;
+    }
+
+    private int upload(int client) throws IOException, InterruptedException {
+        final byte[] head = ("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+                + "Slow upload " + client + "\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"image.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        final byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        final byte[] chunk = new byte[CHUNK_SIZE];
+        final long contentLength = head.length + (long) chunks * chunk.length + tail.length;
+
+        try (Socket socket = new Socket(HOST, port)) {
+            socket.setSoTimeout(60_000);
+            final OutputStream output = socket.getOutputStream();
+            output.write(("POST /image HTTP/1.1\r\n"
+                    + "Host: " + HOST + ":" + port + "\r\n"
+                    + "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n"
+                    + "Content-Length: " + contentLength + "\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            output.write(head);
+            for (int i = 0; i < chunks; i++) {
+                // Different content per upload, otherwise the blob store skips the write as a duplicate
+                chunk[0] = (byte) client;
+                chunk[1] = (byte) (client >> 8);
+                chunk[2] = (byte) i;
+                output.write(chunk);
+                output.flush();
+                Thread.sleep(pauseMillis);
+            }
+            output.write(tail);
+            output.flush();
+
+            final BufferedReader input = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            final String statusLine = input.readLine();
+            return statusLine == null ? -1 : Integer.parseInt(statusLine.split(" ")[1]);
+        }
+    }
+}
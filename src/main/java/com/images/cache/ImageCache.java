@@ -0,0 +1,72 @@
+package com.images.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.images.domain.Image;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of image metadata, evicting by size and by time since the entry was loaded.
+ *
+ * <p>Loads for the same key are collapsed: while one thread runs the loader every other thread asking for that
+ * key waits for its result, so a burst of requests for a cold key costs one database read. Missing images are
+ * not cached. Hit, miss and eviction counts are published through Micrometer under the {@code images} cache name.</p>
+ */
+@Component
+public class ImageCache implements MeterBinder {
+
+    static final String CACHE_NAME = "images";
+
+    private final Cache<UUID, Image> cache;
+
+    @Autowired
+    public ImageCache(@Value("${images.cache.maximum-size:10000}") long maximumSize,
+                      @Value("${images.cache.expire-after-write-seconds:600}") long expireAfterWriteSeconds) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(expireAfterWriteSeconds))
+                .recordStats()
+                .build();
+    }
+
+    public Image get(UUID uuid, Function<UUID, Image> loader) {
+        return cache.get(uuid, loader);
+    }
+
+    /**
+     * Drops the entry now and again once the surrounding transaction completes. The second eviction removes a
+     * value that a concurrent reader loaded from the database before the write was committed; it waits for any
+     * load of that key still in flight, so nothing older than the commit can survive it.
+     */
+    public void invalidate(UUID uuid) {
+        cache.invalidate(uuid);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(uuid);
+                }
+            });
+        }
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+}
@@ -0,0 +1,299 @@
+package com.images.cache;
+
+import com.images.exception.BlobStoreException;
+import com.images.storage.BlobLocation;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Size bounded, least recently used cache of generated files on local disk.
+ *
+ * <p>Entries are files named {@code key.format} under {@code images.transform-cache.root}. The LRU order and
+ * total size are kept in memory and rebuilt from the directory at startup, oldest file first. Concurrent
+ * requests for a missing key are collapsed: one thread produces the file and the others wait for it. The size on
+ * disk is published as {@code images.transform.cache.size}.</p>
+ *
+ * <p>Every {@link Entry} handed out holds on to its file until it is closed: an entry evicted meanwhile leaves the
+ * index and the size at once, but its file is only deleted when the last reader closes its entry.</p>
+ */
+@Component
+public class TransformCache implements MeterBinder {
+
+    private static final Logger logger = LogManager.getLogger(TransformCache.class);
+    private static final Pattern ENTRY_FILE = Pattern.compile("([0-9a-f]{64})\\.([a-z0-9]+)");
+
+    private final Path root;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Cached> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<Cached>> inFlight = new ConcurrentHashMap<>();
+    private long totalBytes;
+
+    @FunctionalInterface
+    public interface Producer {
+
+        /**
+         * Writes the content of the entry.
+         *
+         * @return format of the content, used as the file extension
+         */
+        String produce(OutputStream output) throws IOException;
+    }
+
+    @Autowired
+    public TransformCache(@Value("${images.transform-cache.root:data/transform-cache}") String root,
+                          @Value("${images.transform-cache.max-bytes:1073741824}") long maxBytes) {
+        this.root = Paths.get(root).toAbsolutePath();
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(this.root);
+            load();
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Transform cache directory [%s] could not be read", this.root), e);
+        }
+    }
+
+    /**
+     * Returns the cached file for the key, producing it first when it is not cached. The entry has to be closed
+     * once its file has been read.
+     *
+     * @param key hex encoded SHA-256 of everything the content depends on
+     */
+    public Entry get(String key, Producer producer) throws IOException {
+        while (true) {
+            final Entry cached = open(key);
+            if (cached != null) {
+                return cached;
+            }
+
+            final CompletableFuture<Cached> production = new CompletableFuture<>();
+            final CompletableFuture<Cached> running = inFlight.putIfAbsent(key, production);
+            if (running != null) {
+                final Entry produced = open(await(running));
+                if (produced != null) {
+                    return produced;
+                }
+                // Evicted again before this request got to read it
+                continue;
+            }
+            try {
+                Entry entry = open(key);
+                if (entry == null) {
+                    entry = produce(key, producer);
+                }
+                production.complete(entry.cached);
+                return entry;
+            } catch (IOException | RuntimeException e) {
+                production.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, production);
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("images.transform.cache.size", this, TransformCache::getTotalBytes)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized Entry open(String key) {
+        final Cached cached = entries.get(key);
+        return cached == null ? null : open(cached);
+    }
+
+    private synchronized Entry open(Cached cached) {
+        if (cached.evicted) {
+            return null;
+        }
+        cached.readers++;
+        return new Entry(this, cached);
+    }
+
+    private synchronized void close(Cached cached) {
+        cached.readers--;
+        if (cached.evicted && cached.readers == 0) {
+            delete(cached);
+        }
+    }
+
+    private Entry produce(String key, Producer producer) throws IOException {
+        final Path directory = root.resolve(key.substring(0, 2));
+        Files.createDirectories(directory);
+        final Path temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            final String format;
+            try (OutputStream output = Files.newOutputStream(temp)) {
+                format = producer.produce(output);
+            }
+            final Path file = directory.resolve(key + "." + format);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return add(key, new Cached(file, format, Files.size(file)));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Indexes a new file and returns it opened, so it cannot be evicted before the caller has read it.
+     */
+    private synchronized Entry add(String key, Cached cached) {
+        final Cached previous = entries.put(key, cached);
+        totalBytes += cached.size - (previous == null ? 0 : previous.size);
+
+        final Iterator<Map.Entry<String, Cached>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            final Map.Entry<String, Cached> evicted = eldest.next();
+            if (evicted.getKey().equals(key)) {
+                continue;
+            }
+            eldest.remove();
+            totalBytes -= evicted.getValue().size;
+            evicted.getValue().evicted = true;
+            if (evicted.getValue().readers == 0) {
+                delete(evicted.getValue());
+            }
+        }
+        return open(cached);
+    }
+
+    private static void delete(Cached cached) {
+        try {
+            Files.deleteIfExists(cached.file);
+        } catch (IOException e) {
+            logger.warn(String.format("Evicted transform cache file [%s] could not be deleted", cached.file), e);
+        }
+    }
+
+    private void load() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.find(root, 2, (path, attributes) -> attributes.isRegularFile())) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.comparing(TransformCache::lastModified));
+        for (Path file : files) {
+            final Matcher matcher = ENTRY_FILE.matcher(file.getFileName().toString());
+            if (matcher.matches()) {
+                add(matcher.group(1), new Cached(file, matcher.group(2), Files.size(file))).close();
+            } else {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static Cached await(CompletableFuture<Cached> running) throws IOException {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A cached file opened by one reader. Closing it more than once has no further effect.
+     */
+    public static final class Entry implements Closeable {
+
+        private final TransformCache cache;
+        private final Cached cached;
+        private boolean closed;
+
+        private Entry(TransformCache cache, Cached cached) {
+            this.cache = cache;
+            this.cached = cached;
+        }
+
+        public Path getFile() {
+            return cached.file;
+        }
+
+        public String getFormat() {
+            return cached.format;
+        }
+
+        public long getSize() {
+            return cached.size;
+        }
+
+        public BlobLocation getLocation() {
+            return new BlobLocation(cached.file, 0, cached.size);
+        }
+
+        @Override
+        public void close() {
+            synchronized (cache) {
+                if (!closed) {
+                    closed = true;
+                    cache.close(cached);
+                }
+            }
+        }
+    }
+
+    // A file in the cache, the reader count and eviction mark are guarded by the cache
+    private static final class Cached {
+
+        private final Path file;
+        private final String format;
+        private final long size;
+        private int readers;
+        private boolean evicted;
+
+        private Cached(Path file, String format, long size) {
+            this.file = file;
+            this.format = format;
+            this.size = size;
+        }
+    }
+}
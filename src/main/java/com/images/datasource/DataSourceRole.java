@@ -0,0 +1,9 @@
+package com.images.datasource;
+
+/**
+ * Lookup keys of the {@link ReplicaRoutingDataSource}.
+ */
+public enum DataSourceRole {
+    PRIMARY,
+    REPLICA
+}
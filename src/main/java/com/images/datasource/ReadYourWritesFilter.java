@@ -0,0 +1,58 @@
+package com.images.datasource;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Read-your-writes for clients of a replicated database. A request that committed a write gets a short lived
+ * cookie back; while the client sends it, and for the rest of the writing request, reads go to the primary.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String COOKIE_NAME = "images-read-primary";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (WebUtils.getCookie(request, COOKIE_NAME) != null) {
+            ReplicaRoutingDataSource.pinToPrimary();
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.clearPins();
+        }
+    }
+
+    /**
+     * Called after a write transaction committed. Outside of a request (scheduled jobs, listeners on other
+     * threads) there is no client to remember, so nothing happens.
+     */
+    static void markWritten(int seconds) {
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)
+                || attributes.getAttribute(COOKIE_NAME, RequestAttributes.SCOPE_REQUEST) != null) {
+            return;
+        }
+        attributes.setAttribute(COOKIE_NAME, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+        ReplicaRoutingDataSource.pinToPrimary();
+        final HttpServletResponse response = ((ServletRequestAttributes) attributes).getResponse();
+        if (response != null && !response.isCommitted()) {
+            final Cookie cookie = new Cookie(COOKIE_NAME, "1");
+            cookie.setMaxAge(seconds);
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+        }
+    }
+}
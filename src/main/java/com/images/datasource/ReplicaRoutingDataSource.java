@@ -0,0 +1,98 @@
+package com.images.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Sends connections of read-only transactions to the replica and everything else to the primary.
+ * The transaction flags are only known once the transaction has started, so this must sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} that fetches the real connection
+ * on the first statement.
+ * <p>
+ * Reads are kept on the primary while the current thread is pinned, see {@link #onPrimary(Supplier)} and
+ * {@link ReadYourWritesFilter}. When a write transaction commits, the filter is told so that the client that
+ * wrote keeps reading from the primary until the replica has caught up.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final ThreadLocal<Integer> PRIMARY_PINS = ThreadLocal.withInitial(() -> 0);
+
+    private final int readYourWritesSeconds;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, int readYourWritesSeconds) {
+        final Map<Object, Object> targets = new HashMap<>();
+        targets.put(DataSourceRole.PRIMARY, primary);
+        targets.put(DataSourceRole.REPLICA, replica);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        this.readYourWritesSeconds = readYourWritesSeconds;
+    }
+
+    /**
+     * Runs the action with every connection of the current thread taken from the primary, read-only or not.
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        pinToPrimary();
+        try {
+            return action.get();
+        } finally {
+            unpin();
+        }
+    }
+
+    static void pinToPrimary() {
+        PRIMARY_PINS.set(PRIMARY_PINS.get() + 1);
+    }
+
+    static void unpin() {
+        final int pins = PRIMARY_PINS.get() - 1;
+        if (pins > 0) {
+            PRIMARY_PINS.set(pins);
+        } else {
+            PRIMARY_PINS.remove();
+        }
+    }
+
+    static void clearPins() {
+        PRIMARY_PINS.remove();
+    }
+
+    public static boolean isPinnedToPrimary() {
+        return PRIMARY_PINS.get() > 0;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return isPinnedToPrimary() ? DataSourceRole.PRIMARY : DataSourceRole.REPLICA;
+        }
+        rememberWrite();
+        return DataSourceRole.PRIMARY;
+    }
+
+    private void rememberWrite() {
+        if (readYourWritesSeconds <= 0
+                || !TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                ReadYourWritesFilter.markWritten(readYourWritesSeconds);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(ReplicaRoutingDataSource.this);
+            }
+        });
+    }
+}
@@ -0,0 +1,157 @@
+package com.images.deletion;
+
+import com.images.repository.ImageRepository;
+import com.images.repository.ImageVariantRepository;
+import com.images.repository.OrphanBlobRepository;
+import com.images.storage.BlobStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Finishes what a delete request started. Deleted images are only flagged on the request path; this collector
+ * removes the flagged rows in batches, together with their variants, and remembers the blobs they pointed to.
+ * Blobs are shared by every row with the same content, so a remembered blob is removed from the store only when
+ * its reference count over {@code image.path} and {@code image_variant.path} is zero. An upload of the same content
+ * may not have committed its row yet when the references are counted; the store is therefore asked to delete the
+ * blob only when nobody stored it within the last {@code images.deletion.blob-grace-seconds}, see
+ * {@link BlobStore#deleteUnlessStoredSince}. Uploads get that long from storing their content to committing.
+ */
+@Component
+public class DeletedImageCollector {
+
+    private static final Logger logger = LogManager.getLogger(DeletedImageCollector.class);
+
+    private final ImageRepository imageRepository;
+    private final ImageVariantRepository imageVariantRepository;
+    private final OrphanBlobRepository orphanBlobRepository;
+    private final BlobStore blobStore;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long blobGraceSeconds;
+    private final Counter purgedCounter;
+    private final Counter releasedCounter;
+
+    @Autowired
+    public DeletedImageCollector(ImageRepository imageRepository, ImageVariantRepository imageVariantRepository,
+                                 OrphanBlobRepository orphanBlobRepository, BlobStore blobStore,
+                                 PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                 @Value("${images.deletion.batch-size:500}") int batchSize,
+                                 @Value("${images.deletion.blob-grace-seconds:600}") long blobGraceSeconds) {
+        this.imageRepository = imageRepository;
+        this.imageVariantRepository = imageVariantRepository;
+        this.orphanBlobRepository = orphanBlobRepository;
+        this.blobStore = blobStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.blobGraceSeconds = blobGraceSeconds;
+        this.purgedCounter = Counter.builder("images.deletion.purged").register(meterRegistry);
+        this.releasedCounter = Counter.builder("images.deletion.blobs.released").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${images.deletion.collect-interval-ms:30000}")
+    public void collect() {
+        final int purged = purgeDeletedImages();
+        final int released = releaseOrphanBlobs(Instant.now().minusSeconds(blobGraceSeconds));
+        if (purged > 0 || released > 0) {
+            logger.info(String.format("Purged [%d] deleted images, released [%d] blobs", purged, released));
+        }
+    }
+
+    public synchronized int purgeDeletedImages() {
+        int purged = 0;
+        int batch;
+        do {
+            batch = transactionTemplate.execute(status -> purgeBatch());
+            purged += batch;
+        } while (batch == batchSize);
+        purgedCounter.increment(purged);
+        return purged;
+    }
+
+    /**
+     * Removes the blobs that were found orphaned before {@code before} and were not stored again since.
+     */
+    public synchronized int releaseOrphanBlobs(Instant before) {
+        final LocalDateTime detectedBefore = LocalDateTime.ofInstant(before, ZoneId.systemDefault());
+        int released = 0;
+        ReleasedBatch batch;
+        do {
+            batch = transactionTemplate.execute(status -> releaseBatch(detectedBefore, before));
+            released += batch.getReleased();
+        } while (batch.getExamined() == batchSize);
+        releasedCounter.increment(released);
+        return released;
+    }
+
+    private int purgeBatch() {
+        final List<Object[]> rows = imageRepository.findDeleted(PageRequest.of(0, batchSize));
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        final List<byte[]> uuids = rows.stream().map(row -> (byte[]) row[0]).collect(Collectors.toList());
+        final Set<String> paths = new LinkedHashSet<>();
+        rows.forEach(row -> paths.add((String) row[1]));
+        paths.addAll(imageVariantRepository.findPathsByImageUuids(uuids));
+
+        // The variants go with their images, the foreign key cascades
+        imageRepository.purgeDeleted(uuids);
+
+        orphanBlobRepository.record(paths);
+        return rows.size();
+    }
+
+    /**
+     * Runs in a read-write transaction so the reference counts come from the primary database, never from a
+     * replica that may not have seen the latest upload yet.
+     */
+    private ReleasedBatch releaseBatch(LocalDateTime detectedBefore, Instant storedBefore) {
+        final List<String> paths = orphanBlobRepository.findPathsDetectedBefore(detectedBefore, PageRequest.of(0, batchSize));
+        if (paths.isEmpty()) {
+            return new ReleasedBatch(0, 0);
+        }
+        final Map<String, Long> references = new HashMap<>();
+        imageRepository.countByPath(paths).forEach(row -> references.merge((String) row[0], toLong(row[1]), Long::sum));
+        imageVariantRepository.countByPath(paths).forEach(row -> references.merge((String) row[0], toLong(row[1]), Long::sum));
+
+        int released = 0;
+        for (String path : paths) {
+            if (references.getOrDefault(path, 0L) == 0 && blobStore.deleteUnlessStoredSince(path, storedBefore)) {
+                released++;
+            }
+        }
+        orphanBlobRepository.deleteByPathInDetectedBefore(paths, detectedBefore);
+        return new ReleasedBatch(paths.size(), released);
+    }
+
+    private static long toLong(Object count) {
+        return ((Number) count).longValue();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class ReleasedBatch {
+        private final int examined;
+        private final int released;
+    }
+}
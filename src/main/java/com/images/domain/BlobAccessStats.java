@@ -0,0 +1,45 @@
+package com.images.domain;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * How often and how recently the content of a blob was read, flushed in batches by the tiered store and used
+ * to decide which blobs move to the cold tier.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@Entity
+@Table(name = "blob_access_stats", indexes = {
+        @Index(name = "idx_blob_access_stats_tier_accessed", columnList = "tier, lastAccessed")
+})
+@EqualsAndHashCode
+public class BlobAccessStats implements Serializable {
+
+    @Id
+    @Column(name = "blobKey", length = 64)
+    private String blobKey;
+
+    @Column(nullable = false)
+    private long accessCount;
+
+    @Column(name = "lastAccessed", nullable = false)
+    private Instant lastAccessed;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private BlobTier tier;
+
+    /**
+     * Also tells Spring Data whether a row is new, so saving a batch does not select every row first.
+     */
+    @Version
+    private Long version;
+}
@@ -0,0 +1,9 @@
+package com.images.domain;
+
+/**
+ * Where the content of a blob is kept by the tiered store.
+ */
+public enum BlobTier {
+    HOT,
+    COLD
+}
@@ -1,9 +1,11 @@
 package com.images.domain;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Type;
+import org.hibernate.annotations.Where;
 import org.springframework.format.annotation.DateTimeFormat;
 
 import javax.persistence.*;
@@ -18,16 +20,28 @@ import java.util.UUID;
 @AllArgsConstructor
 @ToString
 @Entity
-@Table(name = "image")
+@Table(name = "image", indexes = {
+        @Index(name = "idx_image_added_uuid", columnList = "addedDate, uuid"),
+        @Index(name = "idx_image_mime_added_uuid", columnList = "mimeType, addedDate, uuid"),
+        @Index(name = "idx_image_dimensions", columnList = "width, height"),
+        @Index(name = "idx_image_byte_size", columnList = "byteSize"),
+        @Index(name = "idx_image_captured", columnList = "capturedAt"),
+        @Index(name = "idx_image_deleted_updated", columnList = "deleted, updateDate"),
+        @Index(name = "idx_image_path", columnList = "path")
+})
+// Deleted images stay in the table until com.images.deletion.DeletedImageCollector removes them and their blobs
+@Where(clause = "deleted = false")
 @EqualsAndHashCode
 public class Image implements Serializable {
     public static final String DATE_FORMAT = "YYYY/MM/dd HH:mm";
 
+    // Time ordered ids stored as 16 bytes keep the clustered primary key compact and append-only,
+    // see db/mysql/image-uuid-to-binary.sql for converting rows created with the old CHAR(36) column
     @Id
     @GeneratedValue(generator = "UUID")
-    @GenericGenerator(name = "UUID", strategy = "org.hibernate.id.UUIDGenerator")
-    @Column(name = "uuid", updatable = false, nullable = false)
-    @Type(type="uuid-char")
+    @GenericGenerator(name = "UUID", strategy = "com.images.domain.TimeOrderedUuidGenerator")
+    @Column(name = "uuid", updatable = false, nullable = false, columnDefinition = "BINARY(16)")
+    @Type(type="uuid-binary")
     private UUID uuid;
 
     @Column(length = 50)
@@ -40,6 +54,30 @@ public class Image implements Serializable {
     @Column(nullable = false)
     private String path;
 
+    // Read from the file headers on upload, see com.images.imaging.ImageInfoReader; empty when the file does not say
+    @Column(name = "width")
+    private Integer width;
+
+    @Column(name = "height")
+    private Integer height;
+
+    @Column(name = "mimeType", length = 100)
+    private String mimeType;
+
+    @Column(name = "byteSize")
+    private Long byteSize;
+
+    @Column(name = "orientation")
+    private Integer orientation;
+
+    @Column(name = "capturedAt")
+    @DateTimeFormat(pattern = DATE_FORMAT)
+    private LocalDateTime capturedAt;
+
+    // Difference hash of the picture, see com.images.imaging.PerceptualHash; empty when the content is not an image
+    @Column(name = "perceptualHash")
+    private Long perceptualHash;
+
     @Column(name = "addedDate")
     @DateTimeFormat(pattern = DATE_FORMAT)
     @Builder.Default
@@ -51,4 +89,19 @@ public class Image implements Serializable {
     @Builder.Default
     private LocalDateTime dateUpdated = LocalDateTime.now();
 
+    // Counts updates, guards against lost updates and makes the entity tag of the metadata responses
+    @Version
+    @Column(nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private Long version;
+
+    @JsonIgnore
+    @Column(nullable = false, columnDefinition = "BOOLEAN DEFAULT FALSE")
+    @Builder.Default
+    private boolean deleted = false;
+
+    @PreUpdate
+    void touch() {
+        dateUpdated = LocalDateTime.now();
+    }
+
 }
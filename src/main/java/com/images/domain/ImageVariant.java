@@ -0,0 +1,63 @@
+package com.images.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.annotations.Type;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Smaller rendition of an {@link Image}, generated in the background after the image is stored.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString(exclude = "image")
+@Entity
+@Table(name = "image_variant",
+        uniqueConstraints = @UniqueConstraint(name = "uk_image_variant_name", columnNames = {"image_uuid", "name"}),
+        // Blobs are shared by content, com.images.deletion.DeletedImageCollector counts their references by path
+        indexes = @Index(name = "idx_image_variant_path", columnList = "path"))
+@EqualsAndHashCode(exclude = "image")
+public class ImageVariant implements Serializable {
+
+    @Id
+    @GeneratedValue(generator = "UUID")
+    @GenericGenerator(name = "UUID", strategy = "com.images.domain.TimeOrderedUuidGenerator")
+    @Column(name = "uuid", updatable = false, nullable = false, columnDefinition = "BINARY(16)")
+    @Type(type="uuid-binary")
+    private UUID uuid;
+
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "image_uuid", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Image image;
+
+    @Column(nullable = false, length = 50)
+    private String name;
+
+    @Column(nullable = false)
+    private String path;
+
+    @Column(nullable = false, length = 100)
+    private String mimeType;
+
+    private int width;
+
+    private int height;
+
+    private long byteSize;
+
+    @Column(name = "createdDate")
+    @Builder.Default
+    private LocalDateTime dateCreated = LocalDateTime.now();
+}
@@ -0,0 +1,46 @@
+package com.images.domain;
+
+import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Type;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Blob that lost one of its references, because an image was purged or its content or variants were replaced.
+ * The same blob may be recorded more than once. It is removed from the store only when nothing points to it any
+ * more and nobody stored the same content within the grace period, so an upload of the same content that is
+ * still in flight keeps it.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@Entity
+@Table(name = "orphan_blob", indexes = {
+        @Index(name = "idx_orphan_blob_detected", columnList = "detectedDate"),
+        @Index(name = "idx_orphan_blob_path", columnList = "path")
+})
+@EqualsAndHashCode
+public class OrphanBlob implements Serializable {
+
+    // Rows are only ever inserted, so transactions recording the same blob at once never conflict
+    @Id
+    @GeneratedValue(generator = "UUID")
+    @GenericGenerator(name = "UUID", strategy = "com.images.domain.TimeOrderedUuidGenerator")
+    @Column(name = "uuid", updatable = false, nullable = false, columnDefinition = "BINARY(16)")
+    @Type(type = "uuid-binary")
+    private UUID uuid;
+
+    @Column(name = "path", nullable = false)
+    private String path;
+
+    @Column(name = "detectedDate", nullable = false)
+    @Builder.Default
+    private LocalDateTime dateDetected = LocalDateTime.now();
+}
@@ -0,0 +1,51 @@
+package com.images.domain;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.images.events.ImageChangeType;
+import lombok.*;
+import org.hibernate.annotations.Type;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Image change waiting to be published, written in the same transaction as the change itself. The id grows
+ * with every event and gives the publishing order.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@Entity
+@Table(name = "outbox_event")
+@EqualsAndHashCode
+public class OutboxEvent implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "image_uuid", nullable = false, updatable = false, columnDefinition = "BINARY(16)")
+    @Type(type="uuid-binary")
+    private UUID imageUuid;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, updatable = false, length = 16)
+    private ImageChangeType type;
+
+    /**
+     * The image as JSON after the change, {@code null} for deletions.
+     */
+    @Lob
+    @JsonRawValue
+    @Column(updatable = false)
+    private String payload;
+
+    @Column(name = "createdDate", nullable = false, updatable = false)
+    @Builder.Default
+    private LocalDateTime dateCreated = LocalDateTime.now();
+}
@@ -0,0 +1,48 @@
+package com.images.domain;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+
+import java.io.Serializable;
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates version 7 UUIDs: a 48 bit Unix millisecond timestamp, a 12 bit counter and 62 random bits.
+ *
+ * <p>Ids from one generator are strictly increasing, even within one millisecond or when the clock moves back,
+ * so new rows are appended at the end of the primary key index instead of splitting pages at random places.</p>
+ */
+public class TimeOrderedUuidGenerator implements IdentifierGenerator {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000000000000000L;
+    private static final int COUNTER_BITS = 12;
+
+    // Last issued timestamp and counter packed as (millis << 12 | counter)
+    private static final AtomicLong lastStamp = new AtomicLong();
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        return next();
+    }
+
+    public static UUID next() {
+        final long now = System.currentTimeMillis() << COUNTER_BITS;
+        long stamp;
+        long last;
+        do {
+            last = lastStamp.get();
+            // A counter overflow carries into the timestamp, borrowing the next millisecond
+            stamp = Math.max(now, last + 1);
+        } while (!lastStamp.compareAndSet(last, stamp));
+
+        final long millis = stamp >>> COUNTER_BITS;
+        final long counter = stamp & ((1L << COUNTER_BITS) - 1);
+        final long mostSignificantBits = (millis << 16) | VERSION | counter;
+        final long leastSignificantBits = (RANDOM.nextLong() >>> 2) | VARIANT;
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+}
@@ -0,0 +1,6 @@
+package com.images.events;
+
+public enum ImageChangeType {
+
+    CREATED, UPDATED, DELETED
+}
@@ -0,0 +1,38 @@
+package com.images.events;
+
+import com.images.domain.Image;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.UUID;
+
+/**
+ * Published by the image service inside the transaction that changed the image. Listeners that do slow work
+ * should use {@code @TransactionalEventListener} so they only see committed changes.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class ImageChangedEvent {
+
+    private final UUID uuid;
+    private final ImageChangeType type;
+
+    /**
+     * State of the image after the change, {@code null} when it was deleted.
+     */
+    private final Image image;
+
+    public static ImageChangedEvent created(Image image) {
+        return new ImageChangedEvent(image.getUuid(), ImageChangeType.CREATED, image);
+    }
+
+    public static ImageChangedEvent updated(Image image) {
+        return new ImageChangedEvent(image.getUuid(), ImageChangeType.UPDATED, image);
+    }
+
+    public static ImageChangedEvent deleted(UUID uuid) {
+        return new ImageChangedEvent(uuid, ImageChangeType.DELETED, null);
+    }
+}
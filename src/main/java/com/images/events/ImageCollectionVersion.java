@@ -0,0 +1,67 @@
+package com.images.events;
+
+import com.images.datasource.ReplicaRoutingDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Version of the image collection as a whole, moved on by every committed change. It backs the entity tag of
+ * the listing endpoints, so answering a conditional request costs a counter read instead of a query.
+ *
+ * <p>The counter starts over with every run and is not shared between instances, so the tag carries an id of
+ * this run: tags from another run or instance never match, they only cost one full response.</p>
+ *
+ * <p>The counter moves on when the primary commits, while listings are read from the replica. For
+ * {@code images.datasource.read-your-writes-seconds} after a change, the time the replica is given to catch up,
+ * listings are therefore read from the primary, see {@link #read(Supplier)}; otherwise a listing could label
+ * data the replica has not caught up with yet with the new tag, and be answered with 304 until the next change.</p>
+ */
+@Component
+public class ImageCollectionVersion {
+
+    private final String runId = Long.toHexString(UUID.randomUUID().getMostSignificantBits());
+    private final AtomicLong version = new AtomicLong();
+    private final long replicaLagMillis;
+    private volatile long lastChanged;
+
+    @Autowired
+    public ImageCollectionVersion(@Value("${images.datasource.read-your-writes-seconds:5}") int replicaLagSeconds) {
+        this.replicaLagMillis = replicaLagSeconds * 1000L;
+    }
+
+    /**
+     * Moves on only after the commit. A listing that reads the tag before querying therefore never labels data
+     * older than its tag, at worst it labels newer data with an older tag, which just costs one more full response.
+     */
+    @TransactionalEventListener
+    public void onImageChanged(ImageChangedEvent event) {
+        lastChanged = System.currentTimeMillis();
+        version.incrementAndGet();
+    }
+
+    public String entityTag(String representation) {
+        return String.format("\"%s-%d-%s\"", runId, version.get(), representation);
+    }
+
+    /**
+     * Whether a listing read now has to come from the primary: the collection changed too recently for the replica,
+     * or the client is pinned to the primary after a write of its own. Pins belong to the request thread, so work
+     * handed to another thread has to be told the answer.
+     */
+    public boolean readsFromPrimary() {
+        return ReplicaRoutingDataSource.isPinnedToPrimary() || System.currentTimeMillis() - lastChanged < replicaLagMillis;
+    }
+
+    /**
+     * Runs a listing query labelled with {@link #entityTag(String)}, on the primary while {@link #readsFromPrimary()}.
+     */
+    public <T> T read(Supplier<T> query) {
+        return readsFromPrimary() ? ReplicaRoutingDataSource.onPrimary(query) : query.get();
+    }
+}
@@ -0,0 +1,11 @@
+package com.images.exception;
+
+public class BlobStoreException extends RuntimeException {
+    public BlobStoreException(String message) {
+        super(message);
+    }
+
+    public BlobStoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,7 @@
+package com.images.exception;
+
+public class DuplicateImageException extends RuntimeException {
+    public DuplicateImageException(String message) {
+        super(message);
+    }
+}
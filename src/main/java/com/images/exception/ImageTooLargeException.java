@@ -0,0 +1,7 @@
+package com.images.exception;
+
+public class ImageTooLargeException extends UnsupportedImageException {
+    public ImageTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.images.exception;
+
+public class TranscodeRejectedException extends RuntimeException {
+    public TranscodeRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.images.exception;
+
+public class UnsupportedImageException extends RuntimeException {
+    public UnsupportedImageException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package com.images.execution;
+
+public enum ExecutionMode {
+
+    /**
+     * Request handling and blob I/O run on bounded pools of platform threads.
+     */
+    PLATFORM,
+
+    /**
+     * Every request and blob I/O task gets its own virtual thread, so a blocked transfer costs memory rather
+     * than a pool thread. Needs Java 21 or newer at runtime.
+     */
+    VIRTUAL
+}
@@ -0,0 +1,37 @@
+package com.images.execution;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * In {@link ExecutionMode#VIRTUAL} mode, hands Tomcat's request processing and Spring MVC async work (the
+ * streamed {@code /image/all} response) to virtual threads. In platform mode nothing is changed and Tomcat
+ * keeps its own pool sized by {@code server.tomcat.threads.max}.
+ */
+@Configuration
+public class ExecutionModeConfiguration implements WebMvcConfigurer {
+
+    private final VirtualThreads virtualThreads;
+
+    @Autowired
+    public ExecutionModeConfiguration(VirtualThreads virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadConnectorCustomizer() {
+        return factory -> virtualThreads.getExecutor().ifPresent(executor ->
+                factory.addConnectorCustomizers(connector -> connector.getProtocolHandler().setExecutor(executor)));
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        virtualThreads.getExecutor().ifPresent(executor -> configurer.setTaskExecutor(new TaskExecutorAdapter(executor)));
+    }
+}
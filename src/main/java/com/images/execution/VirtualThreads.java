@@ -0,0 +1,70 @@
+package com.images.execution;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resolves {@code images.execution.mode} and owns the virtual thread executor when that mode is active.
+ *
+ * <p>The code is compiled for Java 11, so the executor is created reflectively through
+ * {@code Executors.newVirtualThreadPerTaskExecutor()}. On an older runtime the application logs a warning and
+ * keeps running in {@link ExecutionMode#PLATFORM} mode.</p>
+ */
+@Component
+public class VirtualThreads {
+
+    private static final Logger logger = LogManager.getLogger(VirtualThreads.class);
+
+    private final ExecutorService executor;
+
+    @Autowired
+    public VirtualThreads(@Value("${images.execution.mode:platform}") String mode) {
+        this.executor = ExecutionMode.valueOf(mode.trim().toUpperCase(Locale.ROOT)) == ExecutionMode.VIRTUAL
+                ? newVirtualThreadPerTaskExecutor()
+                : null;
+    }
+
+    public ExecutionMode getMode() {
+        return executor == null ? ExecutionMode.PLATFORM : ExecutionMode.VIRTUAL;
+    }
+
+    /**
+     * @return the executor starting a virtual thread per task, empty in {@link ExecutionMode#PLATFORM} mode
+     */
+    public Optional<ExecutorService> getExecutor() {
+        return Optional.ofNullable(executor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            logger.info("Execution mode is virtual, requests and blob I/O run on virtual threads");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            logger.warn(String.format("Virtual threads need Java 21 or newer, running on Java [%s]; falling back to platform threads",
+                    System.getProperty("java.version")));
+            return null;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            logger.warn("Virtual thread executor could not be created, falling back to platform threads", e);
+            return null;
+        }
+    }
+}
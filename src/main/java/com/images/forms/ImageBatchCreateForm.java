@@ -0,0 +1,20 @@
+package com.images.forms;
+
+import lombok.*;
+
+import javax.validation.Valid;
+import java.util.ArrayList;
+import java.util.List;
+
+@Setter
+@Getter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImageBatchCreateForm {
+
+    // Bound from images[0].title, images[0].description, ... matching the order of the uploaded files
+    @Valid
+    @Builder.Default
+    private List<ImageCreateForm> images = new ArrayList<>();
+}
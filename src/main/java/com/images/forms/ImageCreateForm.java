@@ -16,4 +16,7 @@ public class ImageCreateForm {
 
     @Size(max = 300, message = "Description's maximum size should be 300 characters")
     private String description;
+
+    // Refuse the upload when an image that looks the same already exists
+    private boolean rejectNearDuplicate;
 }
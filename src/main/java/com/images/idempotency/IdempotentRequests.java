@@ -0,0 +1,94 @@
+package com.images.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.images.exception.IdempotencyKeyReusedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs requests carrying an {@code Idempotency-Key} at most once. The first request with a key does the work,
+ * later requests with the same key get its result, and requests arriving while it is still running wait for
+ * it instead of doing the work again. A failed request is forgotten, so the client can retry it.
+ *
+ * <p>Results are kept in a bounded cache and expire after {@code images.idempotency.expire-after-seconds}.
+ * Requests still running weigh nothing, so the bound never evicts them and a retry always finds them.
+ * Hit and miss counts are published through Micrometer under the {@code idempotency} cache name.</p>
+ */
+@Component
+public class IdempotentRequests implements MeterBinder {
+
+    static final String CACHE_NAME = "idempotency";
+
+    private final Cache<String, Execution> executions;
+
+    @Autowired
+    public IdempotentRequests(@Value("${images.idempotency.maximum-size:10000}") long maximumSize,
+                              @Value("${images.idempotency.expire-after-seconds:86400}") long expireAfterSeconds) {
+        this.executions = Caffeine.newBuilder()
+                .maximumWeight(maximumSize)
+                .weigher((String key, Execution execution) -> execution.getResult().isDone() ? 1 : 0)
+                .expireAfterWrite(Duration.ofSeconds(expireAfterSeconds))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param fingerprint digest of the request, reusing a key for a different request is refused
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, String fingerprint, Supplier<T> action) {
+        final Execution own = new Execution(fingerprint, new CompletableFuture<>());
+        final Execution execution = executions.get(key, ignored -> own);
+        if (execution != own) {
+            if (!execution.getFingerprint().equals(fingerprint)) {
+                throw new IdempotencyKeyReusedException(String.format("Idempotency key [%s] was already used for another request", key));
+            }
+            try {
+                return (T) execution.getResult().join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        try {
+            final T result = action.get();
+            own.getResult().complete(result);
+            // Weighed again now that it is done, from here on it counts towards the bound
+            executions.asMap().replace(key, own, own);
+            return result;
+        } catch (RuntimeException | Error e) {
+            executions.asMap().remove(key, own);
+            own.getResult().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public long size() {
+        return executions.estimatedSize();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, executions, CACHE_NAME);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Execution {
+
+        private final String fingerprint;
+        private final CompletableFuture<Object> result;
+    }
+}
@@ -0,0 +1,68 @@
+package com.images.imaging;
+
+import com.images.exception.ImageTooLargeException;
+import com.images.storage.BlobLocation;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+
+public final class ImageDecoder {
+
+    private ImageDecoder() {
+    }
+
+    /**
+     * Decodes the first image of a blob, skipping source pixels when the image is much larger than needed:
+     * every dimension is kept at least twice as large as the biggest requested size so resizing still has
+     * enough detail. Pass 0 as a size to decode at full resolution.
+     *
+     * @return the decoded image or {@code null} when no ImageIO reader understands the content
+     */
+    public static BufferedImage decode(BlobLocation location, int maxWidth, int maxHeight) throws IOException {
+        return decode(location, maxWidth, maxHeight, Long.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #decode(BlobLocation, int, int)}, but refuses images with more than {@code maxPixels} source
+     * pixels before any of them is decoded: decoding costs time by the source size even when it is subsampled.
+     *
+     * @throws ImageTooLargeException when the image has more pixels than that
+     */
+    public static BufferedImage decode(BlobLocation location, int maxWidth, int maxHeight, long maxPixels) throws IOException {
+        try (ImageInputStream input = new RegionImageInputStream(location)) {
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                final long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    throw new ImageTooLargeException(String.format("Image of [%dx%d] pixels is larger than the [%d] pixels allowed",
+                            reader.getWidth(0), reader.getHeight(0), maxPixels));
+                }
+                final ImageReadParam param = reader.getDefaultReadParam();
+                final int subsampling = subsampling(reader.getWidth(0), reader.getHeight(0), maxWidth, maxHeight);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    static int subsampling(int width, int height, int maxWidth, int maxHeight) {
+        if (maxWidth <= 0 || maxHeight <= 0) {
+            return 1;
+        }
+        return Math.max(1, Math.min(width / (2 * maxWidth), height / (2 * maxHeight)));
+    }
+}
@@ -0,0 +1,62 @@
+package com.images.imaging;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Optional;
+
+public final class ImageEncoder {
+
+    private ImageEncoder() {
+    }
+
+    public static boolean supportsAlpha(String format) {
+        return !"jpeg".equalsIgnoreCase(format) && !"jpg".equalsIgnoreCase(format) && !"bmp".equalsIgnoreCase(format);
+    }
+
+    public static boolean canEncode(String format) {
+        return ImageIO.getImageWritersByFormatName(format).hasNext();
+    }
+
+    public static Optional<String> mimeType(String format) {
+        final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            return Optional.empty();
+        }
+        final String[] mimeTypes = writers.next().getOriginatingProvider().getMIMETypes();
+        return mimeTypes == null || mimeTypes.length == 0 ? Optional.empty() : Optional.of(mimeTypes[0]);
+    }
+
+    /**
+     * Writes the image in the given ImageIO format. Quality is between 0 and 1 and only applies to formats with
+     * lossy or tunable compression.
+     */
+    public static void encode(BufferedImage image, String format, float quality, OutputStream output) throws IOException {
+        final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException(String.format("No image writer available for format [%s]", format));
+        }
+        final ImageWriter writer = writers.next();
+        try (ImageOutputStream imageOutput = new MemoryCacheImageOutputStream(output)) {
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionType() == null && param.getCompressionTypes() != null) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(quality);
+            }
+            writer.setOutput(imageOutput);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.images.imaging;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * What the headers of an image file tell about it. Every value is {@code null} when the file does not say.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class ImageInfo {
+
+    public static final ImageInfo UNKNOWN = new ImageInfo(null, null, null, null, null);
+
+    private final Integer width;
+    private final Integer height;
+    private final String mimeType;
+
+    /**
+     * EXIF orientation, 1 to 8, where 1 means the pixels are stored upright.
+     */
+    private final Integer orientation;
+
+    /**
+     * EXIF original date and time, in the local time of the camera.
+     */
+    private final LocalDateTime capturedAt;
+}
@@ -0,0 +1,113 @@
+package com.images.imaging;
+
+import com.drew.imaging.FileType;
+import com.drew.imaging.FileTypeDetector;
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.imaging.ImageProcessingException;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.images.storage.BlobLocation;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.TimeZone;
+
+public final class ImageInfoReader {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private ImageInfoReader() {
+    }
+
+    /**
+     * Reads dimensions, type, EXIF orientation and capture time from the headers of a blob. Only the header
+     * segments are read, pixels are never decoded, so the cost does not depend on the size of the image.
+     */
+    public static ImageInfo read(BlobLocation location) throws IOException {
+        Integer width = null;
+        Integer height = null;
+        String mimeType = null;
+        try (ImageInputStream input = new RegionImageInputStream(location)) {
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (readers.hasNext()) {
+                final ImageReader reader = readers.next();
+                try {
+                    reader.setInput(input, true, true);
+                    width = reader.getWidth(0);
+                    height = reader.getHeight(0);
+                    final String[] mimeTypes = reader.getOriginatingProvider().getMIMETypes();
+                    mimeType = mimeTypes != null && mimeTypes.length > 0 ? mimeTypes[0] : null;
+                } finally {
+                    reader.dispose();
+                }
+            }
+        }
+
+        Integer orientation = null;
+        LocalDateTime capturedAt = null;
+        try (BufferedInputStream input = new BufferedInputStream(new RegionInputStream(new RegionImageInputStream(location)))) {
+            final FileType fileType = FileTypeDetector.detectFileType(input);
+            if (fileType == FileType.Unknown) {
+                return new ImageInfo(width, height, mimeType, null, null);
+            }
+            if (fileType.getMimeType() != null) {
+                mimeType = fileType.getMimeType();
+            }
+            final Metadata metadata = ImageMetadataReader.readMetadata(input);
+            final ExifIFD0Directory ifd0 = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+            if (ifd0 != null && ifd0.containsTag(ExifIFD0Directory.TAG_ORIENTATION)) {
+                orientation = ifd0.getInteger(ExifIFD0Directory.TAG_ORIENTATION);
+            }
+            final ExifSubIFDDirectory exif = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
+            if (exif != null) {
+                // EXIF times carry no zone, reading them as UTC and converting back keeps the camera's wall clock
+                final Date original = exif.getDateOriginal(UTC);
+                capturedAt = original == null ? null : LocalDateTime.ofInstant(original.toInstant(), ZoneOffset.UTC);
+            }
+        } catch (ImageProcessingException e) {
+            // Type known but its metadata is not readable, the dimensions are still worth keeping
+        }
+        return new ImageInfo(width, height, mimeType, orientation, capturedAt);
+    }
+
+    /**
+     * Plain input stream view of a region, for parsers that do not take an {@link ImageInputStream}.
+     */
+    private static class RegionInputStream extends InputStream {
+
+        private final ImageInputStream region;
+
+        RegionInputStream(ImageInputStream region) {
+            this.region = region;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return region.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return region.read(buffer, offset, length);
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            return region.skipBytes(count);
+        }
+
+        @Override
+        public void close() throws IOException {
+            region.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.images.imaging;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+public final class ImageResizer {
+
+    private ImageResizer() {
+    }
+
+    /**
+     * Scales the image down, keeping its aspect ratio, so it fits in the given box. Images that already fit are
+     * returned as they are. Large reductions halve the image in bilinear steps first, which is much cheaper
+     * than bicubic and avoids the aliasing of a single bilinear pass.
+     */
+    public static BufferedImage fitWithin(BufferedImage source, int maxWidth, int maxHeight, boolean keepAlpha) {
+        final double scale = Math.min(1.0, Math.min((double) maxWidth / source.getWidth(), (double) maxHeight / source.getHeight()));
+        final int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        final int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        return scale(source, width, height, keepAlpha);
+    }
+
+    /**
+     * Resizes the image to the box according to the fit. A size of 0 leaves that dimension free, which only
+     * makes sense for {@link ResizeFit#CONTAIN}.
+     */
+    public static BufferedImage resize(BufferedImage source, int width, int height, ResizeFit fit, boolean keepAlpha) {
+        final int boxWidth = width > 0 ? width : Integer.MAX_VALUE;
+        final int boxHeight = height > 0 ? height : Integer.MAX_VALUE;
+        switch (fit) {
+            case COVER:
+                final double scale = Math.max((double) boxWidth / source.getWidth(), (double) boxHeight / source.getHeight());
+                final int scaledWidth = Math.max(boxWidth, (int) Math.round(source.getWidth() * scale));
+                final int scaledHeight = Math.max(boxHeight, (int) Math.round(source.getHeight() * scale));
+                final BufferedImage scaled = scale(source, scaledWidth, scaledHeight, keepAlpha);
+                return scaled.getSubimage((scaledWidth - boxWidth) / 2, (scaledHeight - boxHeight) / 2, boxWidth, boxHeight);
+            case FILL:
+                return scale(source, boxWidth, boxHeight, keepAlpha);
+            case CONTAIN:
+            default:
+                return fitWithin(source, boxWidth, boxHeight, keepAlpha);
+        }
+    }
+
+    public static BufferedImage scale(BufferedImage source, int width, int height, boolean keepAlpha) {
+        final int type = keepAlpha && source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        do {
+            currentWidth = currentWidth / 2 >= width ? currentWidth / 2 : width;
+            currentHeight = currentHeight / 2 >= height ? currentHeight / 2 : height;
+            current = draw(current, currentWidth, currentHeight, type);
+        } while (currentWidth != width || currentHeight != height);
+        return current;
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height, int type) {
+        final BufferedImage target = new BufferedImage(width, height, type);
+        final Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (type == BufferedImage.TYPE_INT_RGB && source.getColorModel().hasAlpha()) {
+                // Formats without alpha would otherwise show transparent areas as black
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+            }
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+}
@@ -0,0 +1,66 @@
+package com.images.imaging;
+
+import java.awt.image.BufferedImage;
+
+public final class PerceptualHash {
+
+    /**
+     * Images are decoded at about this size before hashing, the hash only looks at a 9x8 grid anyway.
+     */
+    public static final int DECODE_SIZE = 64;
+
+    private static final int WIDTH = 9;
+    private static final int HEIGHT = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Difference hash: the image is reduced to a 9x8 grid of average luminance and every bit tells whether a
+     * cell is brighter than its right neighbour. Re-encoding, rescaling and small colour changes flip few bits,
+     * so the Hamming distance between two hashes measures how alike the images look.
+     */
+    public static long dHash(BufferedImage image) {
+        final double[][] grid = luminanceGrid(image);
+        long hash = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH - 1; x++) {
+                hash = (hash << 1) | (grid[y][x] > grid[y][x + 1] ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+
+    private static double[][] luminanceGrid(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final double[][] sums = new double[HEIGHT][WIDTH];
+        final int[][] counts = new int[HEIGHT][WIDTH];
+        final int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            final int cellY = y * HEIGHT / height;
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                final int cellX = x * WIDTH / width;
+                final int rgb = row[x];
+                sums[cellY][cellX] += 0.299 * ((rgb >> 16) & 0xff) + 0.587 * ((rgb >> 8) & 0xff) + 0.114 * (rgb & 0xff);
+                counts[cellY][cellX]++;
+            }
+        }
+        // Images smaller than the grid leave some cells empty, those repeat the cell to their left
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (counts[y][x] > 0) {
+                    sums[y][x] /= counts[y][x];
+                } else {
+                    sums[y][x] = x > 0 ? sums[y][x - 1] : (y > 0 ? sums[y - 1][x] : 0);
+                }
+            }
+        }
+        return sums;
+    }
+}
@@ -0,0 +1,119 @@
+package com.images.imaging;
+
+import com.images.storage.BlobLocation;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Image input stream over the region of a file holding a blob. Reads go through a small window buffer with
+ * positioned channel reads, so ImageIO can seek freely without a cache file and without loading the blob.
+ * When the store has the file mapped the bytes are copied from the mapping instead and no file is opened.
+ */
+public class RegionImageInputStream extends ImageInputStreamImpl {
+
+    private static final int WINDOW_SIZE = 8 * 1024;
+
+    private final ByteBuffer mapped;
+    private final FileChannel channel;
+    private final long offset;
+    private final long length;
+    private final ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+    private long windowStart;
+
+    public RegionImageInputStream(BlobLocation location) throws IOException {
+        this.mapped = location.mapped().orElse(null);
+        this.channel = mapped == null ? FileChannel.open(location.getFile(), StandardOpenOption.READ) : null;
+        this.offset = location.getOffset();
+        this.length = location.getLength();
+        this.window.limit(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (streamPos >= length || !fillWindow()) {
+            return -1;
+        }
+        final int value = window.get((int) (streamPos - windowStart)) & 0xff;
+        streamPos++;
+        return value;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        final long remaining = length - streamPos;
+        if (remaining <= 0) {
+            return -1;
+        }
+        final int wanted = (int) Math.min(len, remaining);
+        if (wanted >= WINDOW_SIZE) {
+            final int read = readAt(ByteBuffer.wrap(bytes, off, wanted), streamPos);
+            if (read <= 0) {
+                return -1;
+            }
+            streamPos += read;
+            return read;
+        }
+        if (!fillWindow()) {
+            return -1;
+        }
+        final int start = (int) (streamPos - windowStart);
+        final int count = Math.min(wanted, window.limit() - start);
+        System.arraycopy(window.array(), start, bytes, off, count);
+        streamPos += count;
+        return count;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private int readAt(ByteBuffer target, long position) throws IOException {
+        if (channel != null) {
+            return channel.read(target, offset + position);
+        }
+        final int count = (int) Math.min(target.remaining(), length - position);
+        if (count <= 0) {
+            return -1;
+        }
+        final ByteBuffer source = mapped.duplicate();
+        source.position((int) position).limit((int) position + count);
+        target.put(source);
+        return count;
+    }
+
+    private boolean fillWindow() throws IOException {
+        if (streamPos >= windowStart && streamPos < windowStart + window.limit()) {
+            return true;
+        }
+        window.clear();
+        window.limit((int) Math.min(WINDOW_SIZE, length - streamPos));
+        windowStart = streamPos;
+        while (window.hasRemaining()) {
+            if (readAt(window, windowStart + window.position()) <= 0) {
+                break;
+            }
+        }
+        window.flip();
+        return window.hasRemaining();
+    }
+}
@@ -0,0 +1,19 @@
+package com.images.imaging;
+
+public enum ResizeFit {
+
+    /**
+     * Scale down, keeping the aspect ratio, until the image fits in the box.
+     */
+    CONTAIN,
+
+    /**
+     * Scale, keeping the aspect ratio, until the image covers the box, then crop the overflow around the centre.
+     */
+    COVER,
+
+    /**
+     * Stretch the image to exactly the size of the box.
+     */
+    FILL
+}
@@ -3,10 +3,17 @@ package com.images.interceptor;
 import com.images.error.ApiErrorModel;
 import com.images.exception.ApiErrorException;
 import com.images.exception.DatabaseOperationException;
+import com.images.exception.DuplicateImageException;
+import com.images.exception.IdempotencyKeyReusedException;
+import com.images.exception.ImageNotFoundException;
+import com.images.exception.UnsupportedImageException;
+import com.images.exception.UploadConflictException;
+import com.images.exception.UploadNotFoundException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -29,6 +36,41 @@ public class RestResponseEntityExceptionHandler {
         return new ResponseEntity<>(new ApiErrorModel(e.getMessage()), HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(ImageNotFoundException.class)
+    public ResponseEntity<Object> handleImageNotFoundException(ImageNotFoundException e) {
+        return new ResponseEntity<>(new ApiErrorModel(e.getMessage()), HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(UnsupportedImageException.class)
+    public ResponseEntity<Object> handleUnsupportedImageException(UnsupportedImageException e) {
+        return new ResponseEntity<>(new ApiErrorModel(e.getMessage()), HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @ExceptionHandler(DuplicateImageException.class)
+    public ResponseEntity<Object> handleDuplicateImageException(DuplicateImageException e) {
+        return new ResponseEntity<>(new ApiErrorModel(e.getMessage()), HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<Object> handleIdempotencyKeyReusedException(IdempotencyKeyReusedException e) {
+        return new ResponseEntity<>(new ApiErrorModel(e.getMessage()), HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<Object> handleOptimisticLockingFailureException(ObjectOptimisticLockingFailureException e) {
+        return new ResponseEntity<>(new ApiErrorModel("Image was changed by another request, please retry"), HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(UploadNotFoundException.class)
+    public ResponseEntity<Object> handleUploadNotFoundException(UploadNotFoundException e) {
+        return new ResponseEntity<>(new ApiErrorModel(e.getMessage()), HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(UploadConflictException.class)
+    public ResponseEntity<Object> handleUploadConflictException(UploadConflictException e) {
+        return new ResponseEntity<>(new ApiErrorModel(e.getMessage()), HttpStatus.CONFLICT);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Object> handleException(Exception e, ServletWebRequest request) {
         final String message = String.format("Error happened [%s] for request [%s]",e.getMessage(), request.getRequest().getRequestURI());
@@ -0,0 +1,94 @@
+package com.images.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Latency and throughput of image operations.
+ *
+ * <p>Every operation is timed under {@code images.operation}, tagged with its name and outcome: {@code success},
+ * {@code not_found} when it returned nothing, or {@code error} when it threw. An operation running in a transaction is
+ * recorded once the transaction completes, so the commit counts towards its latency and a failed commit makes it an
+ * {@code error}. Timers publish percentile histograms
+ * so percentiles can be aggregated across instances. Content volume is counted under {@code images.uploaded}
+ * and {@code images.served}.</p>
+ */
+@Component
+public class ImageMetrics {
+
+    static final String OPERATION_TIMER = "images.operation";
+    static final String OUTCOME_SUCCESS = "success";
+    static final String OUTCOME_NOT_FOUND = "not_found";
+    static final String OUTCOME_ERROR = "error";
+
+    private final MeterRegistry meterRegistry;
+    private final Counter uploadedBytes;
+    private final Counter servedBytes;
+
+    @Autowired
+    public ImageMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.uploadedBytes = Counter.builder("images.uploaded").baseUnit("bytes").register(meterRegistry);
+        this.servedBytes = Counter.builder("images.served").baseUnit("bytes").register(meterRegistry);
+    }
+
+    public <T> T time(String operation, Supplier<T> call) {
+        final long start = System.nanoTime();
+        final T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error e) {
+            record(operation, OUTCOME_ERROR, start);
+            throw e;
+        }
+        final String outcome = result == null ? OUTCOME_NOT_FOUND : OUTCOME_SUCCESS;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    record(operation, status == STATUS_COMMITTED ? outcome : OUTCOME_ERROR, start);
+                }
+            });
+        } else {
+            record(operation, outcome, start);
+        }
+        return result;
+    }
+
+    public void time(String operation, Runnable call) {
+        time(operation, () -> {
+            call.run();
+            return Boolean.TRUE;
+        });
+    }
+
+    public void recordUploaded(long bytes) {
+        uploadedBytes.increment(bytes);
+    }
+
+    public void recordServed(long bytes) {
+        servedBytes.increment(bytes);
+    }
+
+    private void record(String operation, String outcome, long start) {
+        timer(operation, outcome).record(Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return Timer.builder(OPERATION_TIMER)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,56 @@
+package com.images.notification;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Periodically moves notification messages out of the ring buffer into the log and into per type counters,
+ * off the request threads. Enabled with {@code images.notifications.drain.enabled=true}.
+ */
+@Component
+@ConditionalOnProperty(name = "images.notifications.drain.enabled", havingValue = "true")
+public class NotificationLogDrain {
+
+    private static final Logger logger = LogManager.getLogger(NotificationLogDrain.class);
+
+    private final NotificationServiceImpl notificationService;
+    private final Map<NotificationMessageType, Counter> messageCounters = new EnumMap<>(NotificationMessageType.class);
+    private final Counter droppedCounter;
+
+    @Autowired
+    public NotificationLogDrain(NotificationServiceImpl notificationService, MeterRegistry meterRegistry) {
+        this.notificationService = notificationService;
+        for (NotificationMessageType type : NotificationMessageType.values()) {
+            messageCounters.put(type, Counter.builder("images.notifications")
+                    .tag("type", type.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        this.droppedCounter = Counter.builder("images.notifications.dropped").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${images.notifications.drain.interval-ms:1000}")
+    public void drain() {
+        final long dropped = notificationService.drain(message -> {
+            messageCounters.get(message.getType()).increment();
+            if (message.getType() == NotificationMessageType.ERROR) {
+                logger.warn(message.getText());
+            } else {
+                logger.info(message.getText());
+            }
+        });
+
+        if (dropped > 0) {
+            droppedCounter.increment(dropped);
+            logger.warn(String.format("[%d] notification messages were overwritten before they were drained", dropped));
+        }
+    }
+}
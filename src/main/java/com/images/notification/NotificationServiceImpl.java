@@ -2,19 +2,48 @@ package com.images.notification;
 
 import com.images.tools.NotificationMessage;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.bind.annotation.SessionAttributes;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
+/**
+ * Keeps the most recent notification messages in a fixed size ring buffer shared by all request threads.
+ *
+ * <p>Producers claim a slot with a single atomic increment and publish into it, so adding a message never
+ * blocks and never allocates more than the message itself. Once the buffer wraps the oldest messages are
+ * overwritten, which bounds how long a message outlives its request. {@link #drain(Consumer)} hands messages
+ * to a single consumer in order and reports how many were overwritten before it got to them.</p>
+ */
 @Service
-@SessionAttributes("siteNotificationMessages")
 public class NotificationServiceImpl implements NotificationService {
 
-    private final List<NotificationMessage> messages = new ArrayList<>();
+    static final int DEFAULT_CAPACITY = 1024;
 
+    private final AtomicReferenceArray<Slot> slots;
+    private final int mask;
+    private final AtomicLong sequence = new AtomicLong();
+    private long drained;
+
+    public NotificationServiceImpl() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    @Autowired
+    public NotificationServiceImpl(@Value("${images.notifications.capacity:" + DEFAULT_CAPACITY + "}") int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Notification capacity should be at least 1");
+        }
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
 
     @Override
     public void addInfoMessage(String msg) {
@@ -26,13 +55,69 @@ public class NotificationServiceImpl implements NotificationService {
         addNotificationMessage(NotificationMessageType.ERROR, msg);
     }
 
+    /**
+     * Snapshot of the most recent messages, oldest first. Messages still being published are skipped.
+     */
     public Collection<NotificationMessage> getMessages() {
+        final long end = sequence.get();
+        final List<NotificationMessage> messages = new ArrayList<>();
+        for (long position = Math.max(0, end - slots.length()); position < end; position++) {
+            final Slot slot = slots.get(index(position));
+            if (slot != null && slot.sequence == position) {
+                messages.add(slot.message);
+            }
+        }
         return messages;
     }
 
+    /**
+     * Passes every message published since the previous drain to the consumer, in order.
+     *
+     * @return number of messages that were overwritten before they could be drained
+     */
+    public synchronized long drain(Consumer<NotificationMessage> consumer) {
+        final long end = sequence.get();
+        long dropped = 0;
+        if (end - drained > slots.length()) {
+            dropped = end - slots.length() - drained;
+            drained = end - slots.length();
+        }
+        while (drained < end) {
+            final Slot slot = slots.get(index(drained));
+            if (slot == null || slot.sequence < drained) {
+                // Claimed but not published yet, pick it up on the next drain
+                break;
+            }
+            if (slot.sequence == drained) {
+                consumer.accept(slot.message);
+            } else {
+                dropped++;
+            }
+            drained++;
+        }
+        return dropped;
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
     private void addNotificationMessage(NotificationMessageType type, String msg) {
-        messages.add(new NotificationMessage(type, msg));
+        final long position = sequence.getAndIncrement();
+        slots.set(index(position), new Slot(position, new NotificationMessage(type, msg)));
     }
 
-}
+    private int index(long position) {
+        return (int) (position & mask);
+    }
 
+    private static final class Slot {
+        private final long sequence;
+        private final NotificationMessage message;
+
+        private Slot(long sequence, NotificationMessage message) {
+            this.sequence = sequence;
+            this.message = message;
+        }
+    }
+}
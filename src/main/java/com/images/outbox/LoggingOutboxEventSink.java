@@ -0,0 +1,22 @@
+package com.images.outbox;
+
+import com.images.domain.OutboxEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@ConditionalOnProperty(name = "images.outbox.sink", havingValue = "log", matchIfMissing = true)
+public class LoggingOutboxEventSink implements OutboxEventSink {
+
+    private static final Logger logger = LogManager.getLogger(LoggingOutboxEventSink.class);
+
+    @Override
+    public void publish(List<OutboxEvent> events) {
+        events.forEach(event -> logger.info(String.format("Image [%s] %s, event [%d]",
+                event.getImageUuid(), event.getType().name().toLowerCase(), event.getId())));
+    }
+}
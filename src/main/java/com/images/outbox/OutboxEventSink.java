@@ -0,0 +1,17 @@
+package com.images.outbox;
+
+import com.images.domain.OutboxEvent;
+
+import java.util.List;
+
+/**
+ * Destination of outbox events. Pick one with {@code images.outbox.sink}.
+ */
+public interface OutboxEventSink {
+
+    /**
+     * Publishes the events in the given order. Throwing means none of them count as published and the whole
+     * batch is offered again later, so a sink can see an event more than once.
+     */
+    void publish(List<OutboxEvent> events) throws Exception;
+}
@@ -0,0 +1,84 @@
+package com.images.outbox;
+
+import com.images.domain.OutboxEvent;
+import com.images.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Moves events from the outbox table to the {@link OutboxEventSink} in batches, oldest first, off the request
+ * path. Events are deleted only after the sink accepted them: if the sink fails, or the application stops in
+ * between, the same events are offered again on the next run, so delivery is at least once.
+ *
+ * <p>Ids are handed out on insert, so a transaction that commits late can add an event older than ones already
+ * published; it is published on the next run. Events of one image are always in order because changes of one
+ * image are serialized by its row lock.</p>
+ */
+@Component
+public class OutboxRelay {
+
+    private static final Logger logger = LogManager.getLogger(OutboxRelay.class);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxEventSink sink;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Counter publishedCounter;
+    private final Counter failedCounter;
+
+    @Autowired
+    public OutboxRelay(OutboxEventRepository outboxEventRepository, OutboxEventSink sink,
+                       PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                       @Value("${images.outbox.relay.batch-size:100}") int batchSize) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.sink = sink;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.publishedCounter = Counter.builder("images.outbox.published").register(meterRegistry);
+        this.failedCounter = Counter.builder("images.outbox.failed").register(meterRegistry);
+    }
+
+    /**
+     * Publishes batches until the outbox is empty or the sink fails.
+     *
+     * @return number of events published
+     */
+    @Scheduled(fixedDelayString = "${images.outbox.relay.interval-ms:500}")
+    public synchronized long relay() {
+        long published = 0;
+        while (true) {
+            final List<OutboxEvent> batch = outboxEventRepository.findOldest(PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return published;
+            }
+            try {
+                sink.publish(batch);
+            } catch (Exception e) {
+                failedCounter.increment();
+                logger.warn(String.format("Outbox batch starting at event [%d] could not be published, retrying later",
+                        batch.get(0).getId()), e);
+                return published;
+            }
+
+            final List<Long> ids = batch.stream().map(OutboxEvent::getId).collect(Collectors.toList());
+            transactionTemplate.executeWithoutResult(status -> outboxEventRepository.deleteByIdIn(ids));
+            publishedCounter.increment(batch.size());
+            published += batch.size();
+            if (batch.size() < batchSize) {
+                return published;
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.images.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.images.domain.OutboxEvent;
+import com.images.events.ImageChangeType;
+import com.images.events.ImageChangedEvent;
+import com.images.repository.OutboxEventRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.UncheckedIOException;
+
+/**
+ * Records every image change in the outbox table just before the transaction making the change commits, so
+ * the change and its event are stored or rolled back together.
+ */
+@Component
+public class OutboxWriter {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public OutboxWriter(OutboxEventRepository outboxEventRepository, ObjectMapper objectMapper) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onImageChanged(ImageChangedEvent event) {
+        final String payload;
+        try {
+            payload = event.getType() == ImageChangeType.DELETED ? null : objectMapper.writeValueAsString(event.getImage());
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        outboxEventRepository.save(OutboxEvent.builder()
+                .imageUuid(event.getUuid())
+                .type(event.getType())
+                .payload(payload)
+                .build());
+    }
+}
@@ -0,0 +1,27 @@
+package com.images.repository;
+
+import com.images.domain.BlobAccessStats;
+import com.images.domain.BlobTier;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BlobAccessStatsRepository extends CrudRepository<BlobAccessStats, String> {
+
+    @Query("select s.blobKey from BlobAccessStats s where s.tier = :tier and s.lastAccessed < :before order by s.lastAccessed")
+    List<String> findKeysByTierAccessedBefore(@Param("tier") BlobTier tier, @Param("before") Instant before,
+                                              Pageable pageable);
+
+    @Modifying
+    @Query("update BlobAccessStats s set s.tier = :tier where s.blobKey in :keys")
+    int updateTier(@Param("keys") Collection<String> keys, @Param("tier") BlobTier tier);
+}
@@ -0,0 +1,63 @@
+package com.images.repository;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Attributes of {@link com.images.domain.Image} a listing is narrowed to with {@code ?fields=}, in the order they
+ * were asked for. Only these columns are selected, so the {@code @Lob} description is not read unless it is named.
+ */
+@ToString
+@EqualsAndHashCode
+public class ImageFields {
+
+    public static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList("uuid", "title", "description",
+            "path", "width", "height", "mimeType", "byteSize", "orientation", "capturedAt", "perceptualHash",
+            "dateAdded", "dateUpdated", "version"));
+
+    private final List<String> names;
+
+    private ImageFields(List<String> names) {
+        this.names = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @param fields comma separated attribute names, repeated names are ignored
+     * @throws IllegalArgumentException when a name is not one of {@link #NAMES} or no name is given
+     */
+    public static ImageFields parse(String fields) {
+        final Set<String> names = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            final String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!NAMES.contains(name)) {
+                throw new IllegalArgumentException(String.format("Field [%s] is not known, fields should be some of %s", name, NAMES));
+            }
+            names.add(name);
+        }
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("At least one field should be given");
+        }
+        return new ImageFields(new ArrayList<>(names));
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * @return the names joined by commas, stable for equal fields
+     */
+    public String key() {
+        return String.join(",", names);
+    }
+}
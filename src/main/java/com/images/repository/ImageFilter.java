@@ -0,0 +1,32 @@
+package com.images.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Conditions on the metadata read from image files, every condition left {@code null} matches all images.
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString
+public class ImageFilter {
+
+    public static final ImageFilter NONE = ImageFilter.builder().build();
+
+    private final String mimeType;
+    private final Integer minWidth;
+    private final Integer minHeight;
+    private final Long maxByteSize;
+    private final LocalDateTime capturedAfter;
+    private final LocalDateTime capturedBefore;
+
+    public boolean isEmpty() {
+        return mimeType == null && minWidth == null && minHeight == null && maxByteSize == null
+                && capturedAfter == null && capturedBefore == null;
+    }
+}
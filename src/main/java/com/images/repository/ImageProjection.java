@@ -0,0 +1,29 @@
+package com.images.repository;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Some attributes of an image read by {@link ImageRepositoryCustom#findProjections}, serialized as an object with
+ * just those attributes. The position of the image in the listing is always read to build the next cursor.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class ImageProjection {
+
+    private final Map<String, Object> values;
+    private final LocalDateTime dateAdded;
+    private final UUID uuid;
+
+    @JsonValue
+    public Map<String, Object> getValues() {
+        return values;
+    }
+}
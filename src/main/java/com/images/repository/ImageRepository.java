@@ -2,12 +2,55 @@ package com.images.repository;
 
 import com.images.domain.Image;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 @Repository
-public interface ImageRepository extends CrudRepository<Image, UUID> {
+public interface ImageRepository extends CrudRepository<Image, UUID>, ImageRepositoryCustom {
 
+    // Served by SimpleJpaRepository, flushing surfaces constraint violations before the transaction commits
+    <S extends Image> S saveAndFlush(S image);
+
+    void flush();
+
+    @Query("select i from Image i order by i.dateAdded, i.uuid")
+    List<Image> findFirstPage(Pageable pageable);
+
+    // Keyset pagination: seeks straight to the cursor through the (addedDate, uuid) index instead of skipping rows
+    @Query("select i from Image i where i.dateAdded > :dateAdded or (i.dateAdded = :dateAdded and i.uuid > :uuid) " +
+            "order by i.dateAdded, i.uuid")
+    List<Image> findPageAfter(@Param("dateAdded") LocalDateTime dateAdded, @Param("uuid") UUID uuid, Pageable pageable);
+
+    @Query("select i.uuid from Image i order by i.dateAdded desc, i.uuid desc")
+    List<UUID> findNewestUuids(Pageable pageable);
+
+    @Query("select i.uuid from Image i where i.uuid in :uuids")
+    List<UUID> findExistingUuids(@Param("uuids") Collection<UUID> uuids);
+
+    // Soft delete: one statement, no select. The rows are removed later by the DeletedImageCollector
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Image i set i.deleted = true, i.version = i.version + 1, i.dateUpdated = :now " +
+            "where i.uuid in :uuids and i.deleted = false")
+    int markDeleted(@Param("uuids") Collection<UUID> uuids, @Param("now") LocalDateTime now);
+
+    // Native, because the @Where on Image hides deleted rows from every JPQL query. Ids come back as raw bytes
+    @Query(value = "select uuid, path from image where deleted = true order by update_date", nativeQuery = true)
+    List<Object[]> findDeleted(Pageable pageable);
+
+    @Modifying
+    @Query(value = "delete from image where deleted = true and uuid in (:uuids)", nativeQuery = true)
+    int purgeDeleted(@Param("uuids") Collection<byte[]> uuids);
+
+    // Counts deleted rows as well, their blobs are released when the rows are purged
+    @Query(value = "select path, count(*) from image where path in (:paths) group by path", nativeQuery = true)
+    List<Object[]> countByPath(@Param("paths") Collection<String> paths);
 }
@@ -0,0 +1,33 @@
+package com.images.repository;
+
+import com.images.domain.Image;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public interface ImageRepositoryCustom {
+
+    /**
+     * Passes every image, ordered by date added, to the action while reading them from a forward-only cursor.
+     * Images are detached once the action returns, so memory use does not grow with the size of the table.
+     * Has to be called inside a transaction.
+     */
+    void forEachImage(Consumer<Image> action);
+
+    /**
+     * One page of the images matching the filter, ordered by date added like {@link ImageRepository#findFirstPage}.
+     *
+     * @param afterDateAdded keyset cursor together with {@code afterUuid}, {@code null} for the first page
+     */
+    List<Image> findPage(ImageFilter filter, LocalDateTime afterDateAdded, UUID afterUuid, int limit);
+
+    /**
+     * Like {@link #findPage}, but selects only the given fields instead of loading whole entities.
+     *
+     * @param limit maximum number of images, 0 for all of them
+     */
+    List<ImageProjection> findProjections(ImageFields fields, ImageFilter filter, LocalDateTime afterDateAdded,
+                                          UUID afterUuid, int limit);
+}
@@ -0,0 +1,129 @@
+package com.images.repository;
+
+import com.images.domain.Image;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+public class ImageRepositoryImpl implements ImageRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final int fetchSize;
+
+    public ImageRepositoryImpl(@Value("${images.listing.fetch-size:500}") int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public void forEachImage(Consumer<Image> action) {
+        try (Stream<Image> images = entityManager
+                .createQuery("select i from Image i order by i.dateAdded, i.uuid", Image.class)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()) {
+            images.forEach(image -> {
+                action.accept(image);
+                entityManager.detach(image);
+            });
+        }
+    }
+
+    @Override
+    public List<Image> findPage(ImageFilter filter, LocalDateTime afterDateAdded, UUID afterUuid, int limit) {
+        final CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<Image> query = builder.createQuery(Image.class);
+        final Root<Image> image = query.from(Image.class);
+        final Path<LocalDateTime> dateAdded = image.get("dateAdded");
+        final Path<UUID> uuid = image.get("uuid");
+
+        query.where(predicates(builder, image, filter, afterDateAdded, afterUuid))
+                .orderBy(builder.asc(dateAdded), builder.asc(uuid));
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public List<ImageProjection> findProjections(ImageFields fields, ImageFilter filter, LocalDateTime afterDateAdded,
+                                                 UUID afterUuid, int limit) {
+        final CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        final Root<Image> image = query.from(Image.class);
+        final Path<LocalDateTime> dateAdded = image.get("dateAdded");
+        final Path<UUID> uuid = image.get("uuid");
+
+        // The position comes first so the cursor can be built whatever fields are asked for
+        final List<Selection<?>> selections = new ArrayList<>();
+        selections.add(dateAdded);
+        selections.add(uuid);
+        fields.getNames().forEach(name -> selections.add(image.get(name)));
+        query.multiselect(selections)
+                .where(predicates(builder, image, filter, afterDateAdded, afterUuid))
+                .orderBy(builder.asc(dateAdded), builder.asc(uuid));
+
+        final TypedQuery<Tuple> typedQuery = entityManager.createQuery(query)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize);
+        if (limit > 0) {
+            typedQuery.setMaxResults(limit);
+        }
+        final List<Tuple> tuples = typedQuery.getResultList();
+        final List<ImageProjection> projections = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            final Map<String, Object> values = new LinkedHashMap<>();
+            for (int i = 0; i < fields.getNames().size(); i++) {
+                values.put(fields.getNames().get(i), tuple.get(i + 2));
+            }
+            projections.add(new ImageProjection(values, tuple.get(0, LocalDateTime.class), tuple.get(1, UUID.class)));
+        }
+        return projections;
+    }
+
+    private static Predicate[] predicates(CriteriaBuilder builder, Root<Image> image, ImageFilter filter,
+                                          LocalDateTime afterDateAdded, UUID afterUuid) {
+        final Path<LocalDateTime> dateAdded = image.get("dateAdded");
+        final Path<UUID> uuid = image.get("uuid");
+
+        final List<Predicate> predicates = new ArrayList<>();
+        if (filter.getMimeType() != null) {
+            predicates.add(builder.equal(image.get("mimeType"), filter.getMimeType()));
+        }
+        if (filter.getMinWidth() != null) {
+            predicates.add(builder.ge(image.get("width"), filter.getMinWidth()));
+        }
+        if (filter.getMinHeight() != null) {
+            predicates.add(builder.ge(image.get("height"), filter.getMinHeight()));
+        }
+        if (filter.getMaxByteSize() != null) {
+            predicates.add(builder.le(image.get("byteSize"), filter.getMaxByteSize()));
+        }
+        if (filter.getCapturedAfter() != null) {
+            predicates.add(builder.greaterThanOrEqualTo(image.get("capturedAt"), filter.getCapturedAfter()));
+        }
+        if (filter.getCapturedBefore() != null) {
+            predicates.add(builder.lessThan(image.get("capturedAt"), filter.getCapturedBefore()));
+        }
+        if (afterDateAdded != null) {
+            predicates.add(builder.or(builder.greaterThan(dateAdded, afterDateAdded),
+                    builder.and(builder.equal(dateAdded, afterDateAdded), builder.greaterThan(uuid, afterUuid))));
+        }
+        return predicates.toArray(new Predicate[0]);
+    }
+}
@@ -0,0 +1,35 @@
+package com.images.repository;
+
+import com.images.domain.ImageVariant;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface ImageVariantRepository extends CrudRepository<ImageVariant, UUID> {
+
+    // Variants of a deleted image are gone for readers as well, until the collector removes them
+    @Query("select v from ImageVariant v join v.image i where i.uuid = :imageUuid and v.name = :name and i.deleted = false")
+    Optional<ImageVariant> findByImageUuidAndName(@Param("imageUuid") UUID imageUuid, @Param("name") String name);
+
+    @Query("select v from ImageVariant v join v.image i where i.uuid = :imageUuid and i.deleted = false")
+    List<ImageVariant> findByImageUuid(@Param("imageUuid") UUID imageUuid);
+
+    @Modifying
+    @Query("delete from ImageVariant v where v.image.uuid = :imageUuid")
+    int deleteByImageUuid(@Param("imageUuid") UUID imageUuid);
+
+    @Query(value = "select path from image_variant where image_uuid in (:imageUuids)", nativeQuery = true)
+    List<String> findPathsByImageUuids(@Param("imageUuids") Collection<byte[]> imageUuids);
+
+    @Query(value = "select path, count(*) from image_variant where path in (:paths) group by path", nativeQuery = true)
+    List<Object[]> countByPath(@Param("paths") Collection<String> paths);
+}
@@ -0,0 +1,41 @@
+package com.images.repository;
+
+import com.images.domain.OrphanBlob;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+@Repository
+public interface OrphanBlobRepository extends CrudRepository<OrphanBlob, UUID> {
+
+    @Query("select o.path from OrphanBlob o where o.dateDetected < :before group by o.path order by min(o.dateDetected)")
+    List<String> findPathsDetectedBefore(@Param("before") LocalDateTime before, Pageable pageable);
+
+    long countByPathIn(Collection<String> paths);
+
+    // Blobs recorded again after the references were counted are kept for the next run
+    @Modifying
+    @Query("delete from OrphanBlob o where o.path in :paths and o.dateDetected < :before")
+    int deleteByPathInDetectedBefore(@Param("paths") Collection<String> paths, @Param("before") LocalDateTime before);
+
+    /**
+     * Remembers blobs that lost a reference, in the transaction that removed the reference.
+     */
+    default void record(Collection<String> paths) {
+        if (!paths.isEmpty()) {
+            saveAll(paths.stream()
+                    .map(path -> OrphanBlob.builder().path(path).build())
+                    .collect(Collectors.toList()));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.images.restcontroller;
+
+import com.images.metrics.ImageMetrics;
+import com.images.storage.BlobLocation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Writes a stored blob to the response without copying it through the heap.
+ *
+ * <p>When the connector supports it (Tomcat NIO does by default) the file region is handed to Tomcat's sendfile
+ * support, so the kernel copies the bytes straight to the socket and the request thread is released before
+ * the transfer starts. Otherwise the region is pushed with {@link FileChannel#transferTo}, or written straight from
+ * the mapping when the store has the file mapped. Single byte ranges are answered with 206 and ranges starting past
+ * the end of the content with 416. Range headers that do not parse and multi-range requests get the full content.</p>
+ */
+@Component
+public class BlobContentWriter {
+
+    static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    private final ImageMetrics imageMetrics;
+
+    @Autowired
+    public BlobContentWriter(ImageMetrics imageMetrics) {
+        this.imageMetrics = imageMetrics;
+    }
+
+    public void write(BlobLocation location, String contentType, String etag,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        write(location, contentType, etag, request, response, true);
+    }
+
+    /**
+     * Like {@link #write}, but never hands the file to sendfile: every byte has been sent when this returns, so the
+     * caller may let go of the file right after.
+     */
+    public void writeNow(BlobLocation location, String contentType, String etag,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        write(location, contentType, etag, request, response, false);
+    }
+
+    private void write(BlobLocation location, String contentType, String etag,
+                       HttpServletRequest request, HttpServletResponse response, boolean sendfile) throws IOException {
+        final long length = location.getLength();
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        long start = 0;
+        long end = length - 1;
+        final String range = request.getHeader(HttpHeaders.RANGE);
+        final List<HttpRange> ranges = range != null && ifRangeMatches(request, etag) ? parseRanges(range) : Collections.emptyList();
+        if (ranges.size() == 1) {
+            start = ranges.get(0).getRangeStart(length);
+            end = ranges.get(0).getRangeEnd(length);
+            if (start >= length || start > end) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, String.format("bytes %d-%d/%d", start, end, length));
+        }
+
+        final long count = end - start + 1;
+        response.setContentType(contentType);
+        response.setContentLengthLong(count);
+        if (HttpMethod.HEAD.matches(request.getMethod()) || count == 0) {
+            return;
+        }
+
+        imageMetrics.recordServed(count);
+        final long position = location.getOffset() + start;
+        if (sendfile && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, location.getFile().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, position);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, position + count);
+            return;
+        }
+
+        final Optional<ByteBuffer> mapped = location.mapped();
+        if (mapped.isPresent()) {
+            final ByteBuffer region = mapped.get();
+            region.position((int) start).limit((int) (start + count));
+            final WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            while (region.hasRemaining()) {
+                target.write(region);
+            }
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(location.getFile(), StandardOpenOption.READ)) {
+            final WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long transferred = 0;
+            while (transferred < count) {
+                final long sent = channel.transferTo(position + transferred, count - transferred, target);
+                if (sent <= 0) {
+                    throw new IOException(String.format("Blob file [%s] ended before the expected length", location.getFile()));
+                }
+                transferred += sent;
+            }
+        }
+    }
+
+    /**
+     * A Range header that is not valid syntax is ignored, as RFC 7233 asks, so the full content is served.
+     */
+    private static List<HttpRange> parseRanges(String range) {
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    private boolean ifRangeMatches(HttpServletRequest request, String etag) {
+        final String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        return ifRange == null || ifRange.equals(etag);
+    }
+}
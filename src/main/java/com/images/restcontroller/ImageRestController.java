@@ -1,54 +1,298 @@
 package com.images.restcontroller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.images.datasource.ReplicaRoutingDataSource;
 import com.images.domain.Image;
+import com.images.domain.ImageVariant;
 import com.images.error.ApiErrorModel;
+import com.images.events.ImageCollectionVersion;
 import com.images.exception.ApiErrorException;
+import com.images.exception.ImageNotFoundException;
+import com.images.exception.TranscodeRejectedException;
+import com.images.exception.UnsupportedImageException;
+import com.images.cache.TransformCache;
+import com.images.forms.ImageBatchCreateForm;
 import com.images.forms.ImageCreateForm;
 import com.images.forms.ImageUpdateForm;
+import com.images.idempotency.IdempotentRequests;
 import com.images.notification.NotificationService;
+import com.images.repository.ImageFields;
+import com.images.repository.ImageFilter;
+import com.images.services.ImageBatchResult;
+import com.images.services.ImageCursor;
+import com.images.services.ImageSearchResult;
 import com.images.services.ImageService;
+import com.images.services.ImageVariantService;
+import com.images.services.SimilarImage;
+import com.images.similarity.PerceptualHashIndex;
+import com.images.imaging.ImageEncoder;
+import com.images.imaging.ResizeFit;
+import com.images.storage.BlobKeys;
+import com.images.storage.BlobLocation;
+import com.images.variants.ImageFormatNegotiator;
+import com.images.variants.ImageTransform;
+import com.images.variants.ImageTransformer;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
+import org.springframework.validation.FieldError;
 import org.springframework.validation.ObjectError;
+import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @RestController
 @RequestMapping("/image")
 public class ImageRestController {
 
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final Pattern BATCH_ITEM_FIELD = Pattern.compile("images\\[(\\d+)]\\..*");
+    private static final Pattern MONTH = Pattern.compile("\\d{4}-\\d{2}");
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
     private final ImageService imageService;
     private final NotificationService notificationService;
+    private final ImageVariantService imageVariantService;
+    private final BlobContentWriter blobContentWriter;
+    private final ImageTransformer imageTransformer;
+    private final ImageFormatNegotiator imageFormatNegotiator;
+    private final ImageCollectionVersion imageCollectionVersion;
+    private final IdempotentRequests idempotentRequests;
+    private final ObjectWriter lineWriter;
 
     @Autowired
-    public ImageRestController(ImageService imageService, NotificationService notificationService) {
+    public ImageRestController(ImageService imageService, NotificationService notificationService,
+                               ImageVariantService imageVariantService, BlobContentWriter blobContentWriter,
+                               ImageTransformer imageTransformer, ImageFormatNegotiator imageFormatNegotiator,
+                               ImageCollectionVersion imageCollectionVersion, IdempotentRequests idempotentRequests,
+                               ObjectMapper objectMapper) {
         this.imageService = imageService;
         this.notificationService = notificationService;
+        this.imageVariantService = imageVariantService;
+        this.blobContentWriter = blobContentWriter;
+        this.imageTransformer = imageTransformer;
+        this.imageFormatNegotiator = imageFormatNegotiator;
+        this.imageCollectionVersion = imageCollectionVersion;
+        this.idempotentRequests = idempotentRequests;
+        this.lineWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     @GetMapping(value = "/all")
-    public ResponseEntity<List<Image>> returnAll() {
-        return new ResponseEntity<>(imageService.findAll(), HttpStatus.OK);
+    public ResponseEntity<List<?>> returnAll(@RequestParam(value = "fields", required = false) String fields,
+                                             @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                             WebRequest request, HttpServletResponse response) {
+        final ImageFields imageFields = fields == null ? null : parseFields(fields);
+        // The tag is read before the query, see ImageCollectionVersion
+        final String etag = imageCollectionVersion.entityTag(representation(accept, imageFields));
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        final List<?> images = imageCollectionVersion.read(
+                () -> imageFields == null ? imageService.findAll() : imageService.findAll(imageFields));
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(images);
+    }
+
+    @GetMapping(value = "/all", params = "limit")
+    public ResponseEntity<?> returnPage(@RequestParam("limit") int limit,
+                                        @RequestParam(value = "after", required = false) String after,
+                                        @RequestParam(value = "mimeType", required = false) String mimeType,
+                                        @RequestParam(value = "minWidth", required = false) Integer minWidth,
+                                        @RequestParam(value = "minHeight", required = false) Integer minHeight,
+                                        @RequestParam(value = "maxByteSize", required = false) Long maxByteSize,
+                                        @RequestParam(value = "capturedAfter", required = false)
+                                        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime capturedAfter,
+                                        @RequestParam(value = "capturedBefore", required = false)
+                                        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime capturedBefore,
+                                        @RequestParam(value = "fields", required = false) String fields,
+                                        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                        WebRequest request, HttpServletResponse response) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            rejectRequest(String.format("Limit should be between 1 and %d", MAX_PAGE_SIZE));
+        }
+
+        ImageCursor cursor = null;
+        if (after != null) {
+            try {
+                cursor = ImageCursor.decode(after);
+            } catch (IllegalArgumentException e) {
+                rejectRequest("Cursor is not valid");
+            }
+        }
+
+        final ImageFields imageFields = fields == null ? null : parseFields(fields);
+
+        final String etag = imageCollectionVersion.entityTag(representation(accept, imageFields));
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        final ImageFilter filter = new ImageFilter(mimeType, minWidth, minHeight, maxByteSize, capturedAfter, capturedBefore);
+        final ImageCursor from = cursor;
+        final Object page = imageCollectionVersion.read(() -> imageFields == null
+                ? imageService.findPage(filter, from, limit)
+                : imageService.findPage(filter, from, limit, imageFields));
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(page);
+    }
+
+    @GetMapping(value = "/all", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll(WebRequest request) {
+        final String etag = imageCollectionVersion.entityTag("ndjson");
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+
+        // The body is written on another thread, which does not inherit the request's pin to the primary
+        final boolean onPrimary = imageCollectionVersion.readsFromPrimary();
+        final StreamingResponseBody body = outputStream -> {
+            final JsonGenerator generator = lineWriter.getFactory().createGenerator(outputStream);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            final Supplier<Void> stream = () -> {
+                imageService.streamAll(image -> {
+                    try {
+                        lineWriter.writeValue(generator, image);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                return null;
+            };
+            try {
+                if (onPrimary) {
+                    ReplicaRoutingDataSource.onPrimary(stream);
+                } else {
+                    stream.get();
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            generator.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).cacheControl(CacheControl.noCache()).body(body);
+    }
+
+    @GetMapping(value = "/search")
+    public ResponseEntity<ImageSearchResult> search(@RequestParam(value = "q", required = false) String query,
+                                                    @RequestParam(value = "added", required = false) String added,
+                                                    @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            rejectRequest(String.format("Limit should be between 1 and %d", MAX_PAGE_SIZE));
+        }
+        if (added != null && !MONTH.matcher(added).matches()) {
+            rejectRequest("Added should be a month like 2022-01");
+        }
+        return new ResponseEntity<>(imageService.search(query, added, limit), HttpStatus.OK);
     }
 
     @PostMapping(headers = ("content-type=multipart/*"))
-    public ResponseEntity<Image> create(@Valid ImageCreateForm imageCreateForm, BindingResult bindingResult, MultipartFile file) {
+    public ResponseEntity<Image> create(@Valid ImageCreateForm imageCreateForm, BindingResult bindingResult, MultipartFile file,
+                                        @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) throws IOException {
 
         if (bindingResult.hasErrors()) {
             processValidationErrors(bindingResult.getAllErrors());
         }
 
-        final Image image = imageService.createImage(file, imageCreateForm);
+        if (idempotencyKey == null) {
+            return new ResponseEntity<>(imageService.createImage(file, imageCreateForm), HttpStatus.OK);
+        }
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            rejectRequest(String.format("Idempotency-Key should have between 1 and %d characters", MAX_IDEMPOTENCY_KEY_LENGTH));
+        }
+        // Retries of a timed out request get the image created the first time instead of a second copy. Only the
+        // upload is hashed up front, the content is stored by the request that actually creates the image
+        final Image image = idempotentRequests.execute(idempotencyKey, fingerprint(file, imageCreateForm),
+                () -> imageService.createImage(file, imageCreateForm));
         return new ResponseEntity<>(image, HttpStatus.OK);
     }
 
+    @InitBinder("imageBatchCreateForm")
+    public void initBatchBinder(WebDataBinder binder) {
+        binder.setAutoGrowCollectionLimit(MAX_BATCH_SIZE);
+    }
+
+    @PostMapping(value = "/batch", headers = ("content-type=multipart/*"))
+    public ResponseEntity<List<ImageBatchResult>> createBatch(@Valid ImageBatchCreateForm imageBatchCreateForm,
+                                                              BindingResult bindingResult,
+                                                              @RequestParam("file") List<MultipartFile> files) {
+        if (files.size() > MAX_BATCH_SIZE) {
+            rejectRequest(String.format("A batch should contain at most %d files", MAX_BATCH_SIZE));
+        }
+
+        // Invalid items are reported on their own, the rest of the batch still goes through
+        final Map<Integer, String> invalidItems = new HashMap<>();
+        for (FieldError fieldError : bindingResult.getFieldErrors()) {
+            final Matcher matcher = BATCH_ITEM_FIELD.matcher(fieldError.getField());
+            if (!matcher.matches()) {
+                processValidationErrors(bindingResult.getAllErrors());
+            }
+            final int index = Integer.parseInt(matcher.group(1));
+            notificationService.addErrorMessage(fieldError.getDefaultMessage());
+            invalidItems.merge(index, fieldError.getDefaultMessage(), (first, second) -> first + "; " + second);
+        }
+
+        final List<ImageCreateForm> forms = imageBatchCreateForm.getImages();
+        final List<MultipartFile> filesToCreate = new ArrayList<>();
+        final List<ImageCreateForm> formsToCreate = new ArrayList<>();
+        final List<Integer> indexesToCreate = new ArrayList<>();
+        final ImageBatchResult[] results = new ImageBatchResult[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            if (invalidItems.containsKey(i)) {
+                results[i] = ImageBatchResult.failed(i, invalidItems.get(i));
+                continue;
+            }
+            final ImageCreateForm form = i < forms.size() && forms.get(i) != null ? forms.get(i) : new ImageCreateForm();
+            filesToCreate.add(files.get(i));
+            formsToCreate.add(form);
+            indexesToCreate.add(i);
+        }
+
+        for (ImageBatchResult result : imageService.createImages(filesToCreate, formsToCreate)) {
+            final int index = indexesToCreate.get(result.getIndex());
+            result.setIndex(index);
+            results[index] = result;
+        }
+        return new ResponseEntity<>(List.of(results), HttpStatus.OK);
+    }
+
     @PutMapping(headers = ("content-type=multipart/*"))
     public ResponseEntity<Image> update(@Valid ImageUpdateForm imageUpdateForm, BindingResult bindingResult, MultipartFile file) {
 
@@ -65,7 +309,135 @@ public class ImageRestController {
         // Add validation here
         final UUID identifier = UUID.fromString(uuid);
         final Image image = imageService.getImage(identifier);
-        return new ResponseEntity<>(image, HttpStatus.OK);
+        if (image == null) {
+            return new ResponseEntity<>(null, HttpStatus.OK);
+        }
+
+        // With these headers Spring answers If-None-Match and If-Modified-Since with 304 before serializing the image
+        final ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(image.getUuid() + "-" + image.getVersion())
+                .cacheControl(CacheControl.noCache());
+        final long lastModified = lastModified(image);
+        if (lastModified >= 0) {
+            response.lastModified(lastModified);
+        }
+        return response.body(image);
+    }
+
+    @GetMapping(value = "/{uuid}/similar")
+    public ResponseEntity<List<SimilarImage>> getSimilarImages(@PathVariable("uuid") String uuid,
+                                                               @RequestParam(value = "distance", defaultValue = "8") int distance,
+                                                               @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        if (distance < 0 || distance > PerceptualHashIndex.MAX_DISTANCE) {
+            rejectRequest(String.format("Distance should be between 0 and %d", PerceptualHashIndex.MAX_DISTANCE));
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            rejectRequest(String.format("Limit should be between 1 and %d", MAX_PAGE_SIZE));
+        }
+
+        final UUID identifier = UUID.fromString(uuid);
+        final List<SimilarImage> similarImages = imageService.findSimilar(identifier, distance, limit);
+        if (similarImages == null) {
+            throw new ImageNotFoundException(String.format("Image with uuid [%s] is not found", uuid));
+        }
+        return new ResponseEntity<>(similarImages, HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/{uuid}/content")
+    public void getImageContent(@PathVariable("uuid") String uuid,
+                                HttpServletRequest request, HttpServletResponse response) throws IOException {
+        final UUID identifier = UUID.fromString(uuid);
+        final Image image = imageService.getImage(identifier);
+        if (image == null) {
+            throw new ImageNotFoundException(String.format("Image with uuid [%s] is not found", uuid));
+        }
+
+        // Shared caches have to keep the representations for different Accept headers apart, also when the
+        // uploaded file is served
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        final Optional<String> format = imageFormatNegotiator.negotiate(image, request.getHeader(HttpHeaders.ACCEPT));
+        final String uploadedEtag = contentEtag(image, uploadedFormat(image));
+        final String etag = format.map(name -> contentEtag(image, name)).orElse(uploadedEtag);
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified(image))) {
+            return;
+        }
+
+        final BlobLocation content = imageService.findContent(image)
+                .orElseThrow(() -> new ImageNotFoundException(String.format("Content of image with uuid [%s] is not found", uuid)));
+        if (format.isPresent()) {
+            // Cached files may be evicted once closed, so they are written out before that
+            try (TransformCache.Entry transcoded = imageTransformer.transcode(image, content, format.get())) {
+                blobContentWriter.writeNow(transcoded.getLocation(),
+                        ImageEncoder.mimeType(transcoded.getFormat()).orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE),
+                        etag, request, response);
+                return;
+            } catch (UnsupportedImageException | TranscodeRejectedException e) {
+                // The uploaded file is still good to serve when it cannot be decoded again or not right now, tagged
+                // as what it is rather than as the transcode that was given up
+                response.setHeader(HttpHeaders.ETAG, uploadedEtag);
+                if (new ServletWebRequest(request, response).checkNotModified(uploadedEtag, lastModified(image))) {
+                    return;
+                }
+            }
+        }
+        final String mimeType = image.getMimeType() == null ? MediaType.APPLICATION_OCTET_STREAM_VALUE : image.getMimeType();
+        blobContentWriter.write(content, mimeType, uploadedEtag, request, response);
+    }
+
+    @GetMapping(value = "/{uuid}/variant/{name}")
+    public void getImageVariant(@PathVariable("uuid") String uuid, @PathVariable("name") String name,
+                                HttpServletRequest request, HttpServletResponse response) throws IOException {
+        final UUID identifier = UUID.fromString(uuid);
+        final ImageVariant variant = imageVariantService.findVariant(identifier, name)
+                .orElseThrow(() -> new ImageNotFoundException(String.format("Variant [%s] of image with uuid [%s] is not found", name, uuid)));
+
+        final String etag = "\"" + variant.getPath() + "\"";
+        final long lastModified = variant.getDateCreated().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        final BlobLocation content = imageVariantService.findContent(variant)
+                .orElseThrow(() -> new ImageNotFoundException(String.format("Content of variant [%s] of image with uuid [%s] is not found", name, uuid)));
+        blobContentWriter.write(content, variant.getMimeType(), etag, request, response);
+    }
+
+    @GetMapping(value = "/{uuid}/transform")
+    public void getTransformedImage(@PathVariable("uuid") String uuid,
+                                    @RequestParam(value = "w", defaultValue = "0") int width,
+                                    @RequestParam(value = "h", defaultValue = "0") int height,
+                                    @RequestParam(value = "fit", defaultValue = "contain") String fit,
+                                    HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ResizeFit resizeFit = null;
+        try {
+            resizeFit = ResizeFit.valueOf(fit.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            rejectRequest("Fit should be one of contain, cover or fill");
+        }
+        final ImageTransform transform = new ImageTransform(width, height, resizeFit);
+        final String error = transform.validate();
+        if (error != null) {
+            rejectRequest(error);
+        }
+
+        final UUID identifier = UUID.fromString(uuid);
+        final Image image = imageService.getImage(identifier);
+        if (image == null) {
+            throw new ImageNotFoundException(String.format("Image with uuid [%s] is not found", uuid));
+        }
+
+        final String etag = "\"" + transform.cacheKey(image) + "\"";
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified(image))) {
+            return;
+        }
+
+        final BlobLocation content = imageService.findContent(image)
+                .orElseThrow(() -> new ImageNotFoundException(String.format("Content of image with uuid [%s] is not found", uuid)));
+        try (TransformCache.Entry transformed = imageTransformer.transform(image, content, transform)) {
+            blobContentWriter.writeNow(transformed.getLocation(),
+                    ImageEncoder.mimeType(transformed.getFormat()).orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE),
+                    etag, request, response);
+        }
     }
 
     @DeleteMapping(value = "/{uuid}")
@@ -74,6 +446,99 @@ public class ImageRestController {
         imageService.deleteImage(identifier);
     }
 
+    @DeleteMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<UUID> deleteAll(@RequestBody List<UUID> uuids) {
+        if (uuids.isEmpty() || uuids.size() > MAX_BATCH_SIZE) {
+            rejectRequest(String.format("Between 1 and %d image uuids should be given", MAX_BATCH_SIZE));
+        }
+        return imageService.deleteImages(new LinkedHashSet<>(uuids));
+    }
+
+    private static String fingerprint(MultipartFile file, ImageCreateForm imageCreateForm) throws IOException {
+        final MessageDigest digest = BlobKeys.newDigest();
+        final String fields = String.join("\n", String.valueOf(imageCreateForm.getTitle()),
+                String.valueOf(imageCreateForm.getDescription()), String.valueOf(imageCreateForm.isRejectNearDuplicate()),
+                String.valueOf(file.getOriginalFilename()), "");
+        digest.update(fields.getBytes(StandardCharsets.UTF_8));
+        try (InputStream content = file.getInputStream()) {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return BlobKeys.toHex(digest.digest());
+    }
+
+    /**
+     * The path is the hash of the content, so it makes a strong validator on its own. The format keeps the
+     * representations of the same content apart, the uploaded one included.
+     */
+    private static String contentEtag(Image image, String format) {
+        return "\"" + image.getPath() + (format == null ? "" : "." + format) + "\"";
+    }
+
+    private static String uploadedFormat(Image image) {
+        if (image.getMimeType() == null) {
+            return null;
+        }
+        try {
+            return MediaType.parseMediaType(image.getMimeType()).getSubtype();
+        } catch (InvalidMediaTypeException e) {
+            return null;
+        }
+    }
+
+    private static long lastModified(Image image) {
+        return image.getDateUpdated() == null ? -1
+                : image.getDateUpdated().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private ImageFields parseFields(String fields) {
+        try {
+            return ImageFields.parse(fields);
+        } catch (IllegalArgumentException e) {
+            rejectRequest(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Names the body a listing is written as, so JSON, CBOR and Smile responses and every projection get their
+     * own entity tag. Follows the order in which Spring MVC picks the message converter for the Accept header.
+     */
+    private static String representation(String accept, ImageFields fields) {
+        final String projection = fields == null ? "" : ";" + fields.key();
+        if (accept == null) {
+            return "json" + projection;
+        }
+        try {
+            final List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+            MediaType.sortBySpecificityAndQuality(accepted);
+            for (MediaType mediaType : accepted) {
+                if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                    return "json" + projection;
+                }
+                if (mediaType.isCompatibleWith(MediaType.APPLICATION_CBOR)) {
+                    return "cbor" + projection;
+                }
+                if (mediaType.isCompatibleWith(BinaryFormatConfiguration.APPLICATION_SMILE)) {
+                    return "smile" + projection;
+                }
+            }
+        } catch (InvalidMediaTypeException e) {
+            // Answered with 406 once the body is written
+        }
+        return "json" + projection;
+    }
+
+    private void rejectRequest(String message) {
+        notificationService.addErrorMessage(message);
+        final ApiErrorException apiErrorException = new ApiErrorException();
+        apiErrorException.addError(new ApiErrorModel(message));
+        throw apiErrorException;
+    }
+
     private void processValidationErrors(Iterable<? extends ObjectError> errors) {
         ApiErrorException apiErrorException = new ApiErrorException();
         errors.forEach(objectError -> {
@@ -0,0 +1,121 @@
+package com.images.restcontroller;
+
+import com.images.domain.Image;
+import com.images.error.ApiErrorModel;
+import com.images.exception.ApiErrorException;
+import com.images.exception.UploadNotFoundException;
+import com.images.forms.ImageCreateForm;
+import com.images.notification.NotificationService;
+import com.images.services.ImageService;
+import com.images.uploads.UploadSession;
+import com.images.uploads.UploadSessionManager;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.ObjectError;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.UUID;
+
+/**
+ * Resumable uploads, see {@link UploadSessionManager}. A client creates an upload with {@code Upload-Length},
+ * sends the content in {@code PATCH} requests at {@code Upload-Offset}, asks for the offset with {@code HEAD}
+ * after a connection failure, and finally completes the upload into an image.
+ */
+@RestController
+@RequestMapping("/image/upload")
+public class ImageUploadRestController {
+
+    static final String UPLOAD_LENGTH = "Upload-Length";
+    static final String UPLOAD_OFFSET = "Upload-Offset";
+    static final String CHUNK_CONTENT_TYPE = "application/offset+octet-stream";
+
+    private final UploadSessionManager uploadSessionManager;
+    private final ImageService imageService;
+    private final NotificationService notificationService;
+
+    @Autowired
+    public ImageUploadRestController(UploadSessionManager uploadSessionManager, ImageService imageService,
+                                     NotificationService notificationService) {
+        this.uploadSessionManager = uploadSessionManager;
+        this.imageService = imageService;
+        this.notificationService = notificationService;
+    }
+
+    @PostMapping
+    public ResponseEntity<Void> create(@RequestHeader(UPLOAD_LENGTH) long length) {
+        if (length < 0 || length > uploadSessionManager.getMaxLength()) {
+            rejectRequest(String.format("Upload-Length should be between 0 and %d", uploadSessionManager.getMaxLength()));
+        }
+        final UploadSession session = uploadSessionManager.create(length);
+        return ResponseEntity.created(URI.create("/image/upload/" + session.getId()))
+                .header(UPLOAD_OFFSET, "0")
+                .header(UPLOAD_LENGTH, String.valueOf(length))
+                .build();
+    }
+
+    @RequestMapping(value = "/{id}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> offset(@PathVariable("id") String id) {
+        final UploadSession session = uploadSessionManager.find(UUID.fromString(id))
+                .orElseThrow(() -> new UploadNotFoundException(String.format("Upload [%s] is not found", id)));
+        return ResponseEntity.ok()
+                .header(UPLOAD_OFFSET, String.valueOf(session.getOffset()))
+                .header(UPLOAD_LENGTH, String.valueOf(session.getLength()))
+                .header("Cache-Control", "no-store")
+                .build();
+    }
+
+    @PatchMapping(value = "/{id}", consumes = CHUNK_CONTENT_TYPE)
+    public ResponseEntity<Void> append(@PathVariable("id") String id, @RequestHeader(UPLOAD_OFFSET) long offset,
+                                       HttpServletRequest request) throws IOException {
+        final long newOffset;
+        try (InputStream chunk = request.getInputStream()) {
+            newOffset = uploadSessionManager.append(UUID.fromString(id), offset, chunk);
+        }
+        return ResponseEntity.noContent().header(UPLOAD_OFFSET, String.valueOf(newOffset)).build();
+    }
+
+    @PostMapping(value = "/{id}/complete")
+    public ResponseEntity<Image> complete(@PathVariable("id") String id,
+                                          @Valid ImageCreateForm imageCreateForm, BindingResult bindingResult) {
+        if (bindingResult.hasErrors()) {
+            processValidationErrors(bindingResult.getAllErrors());
+        }
+
+        // The upload only counts as completed once the image is committed, a retry after a failure or a lost
+        // response gets that same image
+        final Image image = uploadSessionManager.complete(UUID.fromString(id),
+                blob -> imageService.createImage(blob, imageCreateForm));
+        return new ResponseEntity<>(image, HttpStatus.OK);
+    }
+
+    @DeleteMapping(value = "/{id}")
+    public ResponseEntity<Void> cancel(@PathVariable("id") String id) {
+        uploadSessionManager.cancel(UUID.fromString(id));
+        return ResponseEntity.noContent().build();
+    }
+
+    private void rejectRequest(String message) {
+        notificationService.addErrorMessage(message);
+        final ApiErrorException apiErrorException = new ApiErrorException();
+        apiErrorException.addError(new ApiErrorModel(message));
+        throw apiErrorException;
+    }
+
+    private void processValidationErrors(Iterable<? extends ObjectError> errors) {
+        final ApiErrorException apiErrorException = new ApiErrorException();
+        errors.forEach(objectError -> {
+            final String message = objectError.getDefaultMessage();
+            notificationService.addErrorMessage(message);
+            apiErrorException.addError(new ApiErrorModel(message));
+        });
+        throw apiErrorException;
+    }
+}
@@ -0,0 +1,27 @@
+package com.images.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@Getter
+@AllArgsConstructor
+@ToString
+public class ImageSearchHits {
+
+    private final long total;
+
+    /**
+     * Matching images, best match first.
+     */
+    private final List<UUID> uuids;
+
+    /**
+     * Number of matching images per month they were added, as {@code yyyy-MM}.
+     */
+    private final Map<String, Long> added;
+}
@@ -0,0 +1,294 @@
+package com.images.search;
+
+import com.images.domain.Image;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.DrillDownQuery;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lucene index of image titles and descriptions on local disk under {@code images.search.index-root}.
+ *
+ * <p>Every word of a query has to match the title or the description, the last word also as a prefix so
+ * results show up while the user is still typing. Title matches weigh twice as much as description matches and
+ * results are ranked with BM25. Images are counted per month they were added, and a month can be used to drill
+ * down. Changes become searchable, and are committed to disk, on the next refresh, every
+ * {@code images.search.refresh-interval-ms}.</p>
+ */
+@Component
+public class ImageSearchIndex {
+
+    private static final Logger logger = LogManager.getLogger(ImageSearchIndex.class);
+
+    static final String FIELD_UUID = "uuid";
+    static final String FIELD_TITLE = "title";
+    static final String FIELD_DESCRIPTION = "description";
+    static final String FACET_ADDED = "added";
+    private static final float TITLE_BOOST = 2f;
+    private static final int MAX_FACET_VALUES = 24;
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final FacetsConfig facetsConfig = new FacetsConfig();
+    private final FSDirectory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final AtomicBoolean changed = new AtomicBoolean();
+    private volatile AddedFacetState addedFacetState;
+
+    @Autowired
+    public ImageSearchIndex(@Value("${images.search.index-root:data/search-index}") String root) {
+        try {
+            this.directory = FSDirectory.open(Paths.get(root).toAbsolutePath());
+            this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer)
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+            this.searcherManager = new SearcherManager(writer, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Search index [%s] could not be opened", root), e);
+        }
+    }
+
+    public void index(Image image) {
+        final Document document = new Document();
+        document.add(new StringField(FIELD_UUID, image.getUuid().toString(), Field.Store.YES));
+        if (image.getTitle() != null) {
+            document.add(new TextField(FIELD_TITLE, image.getTitle(), Field.Store.NO));
+        }
+        if (image.getDescription() != null) {
+            document.add(new TextField(FIELD_DESCRIPTION, image.getDescription(), Field.Store.NO));
+        }
+        if (image.getDateAdded() != null) {
+            document.add(new SortedSetDocValuesFacetField(FACET_ADDED, MONTH.format(image.getDateAdded())));
+        }
+        try {
+            writer.updateDocument(uuidTerm(image.getUuid()), facetsConfig.build(document));
+            changed.set(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void delete(UUID uuid) {
+        try {
+            writer.deleteDocuments(uuidTerm(uuid));
+            changed.set(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Removes every image, for rebuilding the index from the table.
+     */
+    public void clear() {
+        try {
+            writer.deleteAll();
+            changed.set(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the number of indexed images, counting changes that are not searchable yet
+     */
+    public long size() {
+        return writer.getDocStats().numDocs;
+    }
+
+    /**
+     * @return whether the image is searchable, changes since the last refresh are not seen
+     */
+    public boolean contains(UUID uuid) throws IOException {
+        final IndexSearcher searcher = searcherManager.acquire();
+        try {
+            return searcher.count(new TermQuery(uuidTerm(uuid))) > 0;
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * @param query words to look for, everything matches when blank
+     * @param added month in {@code yyyy-MM} form to restrict the results to, or {@code null}
+     */
+    public ImageSearchHits search(String query, String added, int limit) throws IOException {
+        Query luceneQuery = parse(query);
+        if (added != null) {
+            final DrillDownQuery drillDown = new DrillDownQuery(facetsConfig, luceneQuery);
+            drillDown.add(FACET_ADDED, added);
+            luceneQuery = drillDown;
+        }
+
+        final IndexSearcher searcher = searcherManager.acquire();
+        try {
+            final FacetsCollector facetsCollector = new FacetsCollector();
+            final TopDocs topDocs = FacetsCollector.search(searcher, luceneQuery, limit, facetsCollector);
+
+            final List<UUID> uuids = new ArrayList<>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                uuids.add(UUID.fromString(searcher.doc(scoreDoc.doc).get(FIELD_UUID)));
+            }
+            return new ImageSearchHits(topDocs.totalHits.value, uuids, addedFacet(searcher, facetsCollector));
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Commits pending changes and makes them visible to searches.
+     */
+    @Scheduled(fixedDelayString = "${images.search.refresh-interval-ms:1000}")
+    public void refresh() {
+        if (!changed.getAndSet(false)) {
+            return;
+        }
+        try {
+            writer.commit();
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            changed.set(true);
+            logger.error("Search index could not be refreshed", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        refresh();
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    private Query parse(String query) throws IOException {
+        final List<String> words = new ArrayList<>();
+        if (query != null) {
+            try (TokenStream tokens = analyzer.tokenStream(FIELD_TITLE, query)) {
+                final CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+                tokens.reset();
+                while (tokens.incrementToken()) {
+                    words.add(term.toString());
+                }
+                tokens.end();
+            }
+        }
+        if (words.isEmpty()) {
+            return new MatchAllDocsQuery();
+        }
+
+        final BooleanQuery.Builder all = new BooleanQuery.Builder();
+        for (int i = 0; i < words.size(); i++) {
+            final String word = words.get(i);
+            final BooleanQuery.Builder either = new BooleanQuery.Builder()
+                    .add(new BoostQuery(new TermQuery(new Term(FIELD_TITLE, word)), TITLE_BOOST), BooleanClause.Occur.SHOULD)
+                    .add(new TermQuery(new Term(FIELD_DESCRIPTION, word)), BooleanClause.Occur.SHOULD);
+            if (i == words.size() - 1) {
+                either.add(new BoostQuery(new PrefixQuery(new Term(FIELD_TITLE, word)), TITLE_BOOST), BooleanClause.Occur.SHOULD)
+                        .add(new PrefixQuery(new Term(FIELD_DESCRIPTION, word)), BooleanClause.Occur.SHOULD);
+            }
+            all.add(either.build(), BooleanClause.Occur.MUST);
+        }
+        return all.build();
+    }
+
+    private Map<String, Long> addedFacet(IndexSearcher searcher, FacetsCollector facetsCollector) throws IOException {
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        final DefaultSortedSetDocValuesReaderState state = addedFacetState(searcher.getIndexReader());
+        if (state == null) {
+            return counts;
+        }
+        final FacetResult result = new SortedSetDocValuesFacetCounts(state, facetsCollector)
+                .getTopChildren(MAX_FACET_VALUES, FACET_ADDED);
+        if (result != null) {
+            for (LabelAndValue labelAndValue : result.labelValues) {
+                counts.put(labelAndValue.label, labelAndValue.value.longValue());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Maps the facet ordinals of every segment, which reads all facet values. Done once per refreshed reader
+     * rather than per search.
+     *
+     * @return {@code null} when no document carries the facet
+     */
+    private DefaultSortedSetDocValuesReaderState addedFacetState(IndexReader reader) throws IOException {
+        final AddedFacetState cached = addedFacetState;
+        if (cached != null && cached.reader == reader) {
+            return cached.state;
+        }
+        DefaultSortedSetDocValuesReaderState state = null;
+        if (reader.numDocs() > 0) {
+            try {
+                state = new DefaultSortedSetDocValuesReaderState(reader);
+            } catch (IllegalArgumentException e) {
+                // No document carries the facet yet
+                state = null;
+            }
+        }
+        addedFacetState = new AddedFacetState(reader, state);
+        return state;
+    }
+
+    private static Term uuidTerm(UUID uuid) {
+        return new Term(FIELD_UUID, uuid.toString());
+    }
+
+    private static final class AddedFacetState {
+
+        private final IndexReader reader;
+        private final DefaultSortedSetDocValuesReaderState state;
+
+        private AddedFacetState(IndexReader reader, DefaultSortedSetDocValuesReaderState state) {
+            this.reader = reader;
+            this.state = state;
+        }
+    }
+}
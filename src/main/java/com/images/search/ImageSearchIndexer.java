@@ -0,0 +1,112 @@
+package com.images.search;
+
+import com.images.datasource.ReplicaRoutingDataSource;
+import com.images.domain.Image;
+import com.images.events.ImageChangeType;
+import com.images.events.ImageChangedEvent;
+import com.images.repository.ImageRepository;
+import com.images.services.ImageService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the {@link ImageSearchIndex} in step with the database: images are indexed or removed once the
+ * transaction changing them commits. Changes that could not be applied are retried every
+ * {@code images.search.retry-interval-ms} from the current row. At startup the index is rebuilt from the table
+ * when it does not hold as many images as the table or misses the newest one, as after a first start, a removed
+ * index directory or a crash before the last refresh.
+ */
+@Component
+public class ImageSearchIndexer {
+
+    private static final Logger logger = LogManager.getLogger(ImageSearchIndexer.class);
+
+    private final ImageSearchIndex imageSearchIndex;
+    private final ImageService imageService;
+    private final ImageRepository imageRepository;
+    private final Set<UUID> failed = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public ImageSearchIndexer(ImageSearchIndex imageSearchIndex, ImageService imageService, ImageRepository imageRepository) {
+        this.imageSearchIndex = imageSearchIndex;
+        this.imageService = imageService;
+        this.imageRepository = imageRepository;
+    }
+
+    @TransactionalEventListener
+    public void onImageChanged(ImageChangedEvent event) {
+        try {
+            if (event.getType() == ImageChangeType.DELETED) {
+                imageSearchIndex.delete(event.getUuid());
+            } else {
+                imageSearchIndex.index(event.getImage());
+            }
+        } catch (RuntimeException e) {
+            failed.add(event.getUuid());
+            logger.error(String.format("Search index could not be updated for image [%s], it is retried", event.getUuid()), e);
+        }
+    }
+
+    /**
+     * Indexes the images whose change could not be applied as they are in the table now, or removes them when they
+     * are gone.
+     */
+    @Scheduled(fixedDelayString = "${images.search.retry-interval-ms:10000}")
+    public void retryFailed() {
+        final List<UUID> uuids = new ArrayList<>(failed);
+        for (UUID uuid : uuids) {
+            failed.remove(uuid);
+            try {
+                // The change was just committed, a replica may not have it yet
+                final Optional<Image> image = ReplicaRoutingDataSource.onPrimary(() -> imageRepository.findById(uuid));
+                if (image.isPresent()) {
+                    imageSearchIndex.index(image.get());
+                } else {
+                    imageSearchIndex.delete(uuid);
+                }
+            } catch (RuntimeException e) {
+                failed.add(uuid);
+                logger.error(String.format("Search index could not be updated for image [%s], it is retried", uuid), e);
+            }
+        }
+    }
+
+    int failedCount() {
+        return failed.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcile() throws IOException {
+        final long images = ReplicaRoutingDataSource.onPrimary(imageRepository::count);
+        final List<UUID> newest = ReplicaRoutingDataSource.onPrimary(() -> imageRepository.findNewestUuids(PageRequest.of(0, 1)));
+        final long indexed = imageSearchIndex.size();
+        if (indexed == images && (newest.isEmpty() || imageSearchIndex.contains(newest.get(0)))) {
+            return;
+        }
+
+        imageSearchIndex.clear();
+        final AtomicLong rebuilt = new AtomicLong();
+        imageService.streamAll(image -> {
+            imageSearchIndex.index(image);
+            rebuilt.incrementAndGet();
+        });
+        imageSearchIndex.refresh();
+        logger.info(String.format("Search index rebuilt with [%d] images, it held [%d] of [%d]", rebuilt.get(), indexed, images));
+    }
+}
@@ -0,0 +1,31 @@
+package com.images.services;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.images.domain.Image;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Outcome of one item of a batch upload. Exactly one of {@code image} and {@code error} is set.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImageBatchResult {
+
+    private int index;
+    private Image image;
+    private String error;
+
+    public static ImageBatchResult created(int index, Image image) {
+        return new ImageBatchResult(index, image, null);
+    }
+
+    public static ImageBatchResult failed(int index, String error) {
+        return new ImageBatchResult(index, null, error);
+    }
+}
@@ -0,0 +1,52 @@
+package com.images.services;
+
+import com.images.domain.Image;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in the image listing, ordered by {@code (dateAdded, uuid)}. Clients only ever see the opaque
+ * token produced by {@link #encode()}.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class ImageCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final LocalDateTime dateAdded;
+    private final UUID uuid;
+
+    public static ImageCursor of(Image image) {
+        return new ImageCursor(image.getDateAdded(), image.getUuid());
+    }
+
+    public static ImageCursor decode(String token) {
+        try {
+            final String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            final int separator = value.indexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new IllegalArgumentException(String.format("Cursor [%s] is not valid", token));
+            }
+            return new ImageCursor(LocalDateTime.parse(value.substring(0, separator)),
+                    UUID.fromString(value.substring(separator + 1)));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(String.format("Cursor [%s] is not valid", token), e);
+        }
+    }
+
+    public String encode() {
+        final String value = dateAdded + SEPARATOR + uuid;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
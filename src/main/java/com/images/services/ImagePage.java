@@ -0,0 +1,23 @@
+package com.images.services;
+
+import com.images.domain.Image;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImagePage {
+
+    private List<Image> images;
+
+    /**
+     * Cursor to pass as {@code after} to get the next page, {@code null} on the last page.
+     */
+    private String next;
+}
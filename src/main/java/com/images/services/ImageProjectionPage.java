@@ -0,0 +1,26 @@
+package com.images.services;
+
+import com.images.repository.ImageProjection;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Like {@link ImagePage}, with only the fields the client asked for.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImageProjectionPage {
+
+    private List<ImageProjection> images;
+
+    /**
+     * Cursor to pass as {@code after} to get the next page, {@code null} on the last page.
+     */
+    private String next;
+}
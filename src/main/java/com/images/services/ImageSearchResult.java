@@ -0,0 +1,32 @@
+package com.images.services;
+
+import com.images.domain.Image;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImageSearchResult {
+
+    /**
+     * Number of matching images, which can be more than the images returned.
+     */
+    private long total;
+
+    /**
+     * Best matches first.
+     */
+    private List<Image> images;
+
+    /**
+     * Number of matching images per month they were added, as {@code yyyy-MM}.
+     */
+    private Map<String, Long> added;
+}
@@ -3,20 +3,80 @@ package com.images.services;
 import com.images.domain.Image;
 import com.images.forms.ImageCreateForm;
 import com.images.forms.ImageUpdateForm;
+import com.images.repository.ImageFields;
+import com.images.repository.ImageFilter;
+import com.images.repository.ImageProjection;
+import com.images.storage.BlobLocation;
+import com.images.storage.StoredBlob;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public interface ImageService {
 
     List<Image> findAll();
 
+    ImagePage findPage(ImageCursor after, int limit);
+
+    /**
+     * Like {@link #findPage(ImageCursor, int)}, only over the images matching the filter.
+     */
+    ImagePage findPage(ImageFilter filter, ImageCursor after, int limit);
+
+    /**
+     * Like {@link #findAll()}, reading only the given fields of every image.
+     */
+    List<ImageProjection> findAll(ImageFields fields);
+
+    /**
+     * Like {@link #findPage(ImageFilter, ImageCursor, int)}, reading only the given fields of the images.
+     */
+    ImageProjectionPage findPage(ImageFilter filter, ImageCursor after, int limit, ImageFields fields);
+
+    void streamAll(Consumer<Image> action);
+
+    /**
+     * Full-text search over title and description, see {@link com.images.search.ImageSearchIndex}.
+     *
+     * @param added month in {@code yyyy-MM} form to restrict the results to, or {@code null}
+     */
+    ImageSearchResult search(String query, String added, int limit);
+
+    /**
+     * Images that look like the given one, closest first, see {@link com.images.similarity.PerceptualHashIndex}.
+     *
+     * @return {@code null} when the image does not exist
+     */
+    List<SimilarImage> findSimilar(UUID uuid, int maxDistance, int limit);
+
     Image createImage(MultipartFile file, ImageCreateForm imageCreateForm);
 
+    /**
+     * Creates an image for content already in the {@link com.images.storage.BlobStore}, like a finished
+     * resumable upload.
+     */
+    Image createImage(StoredBlob blob, ImageCreateForm imageCreateForm);
+
+    /**
+     * Creates one image per file, pairing files and forms by position. Items fail independently of each other.
+     */
+    List<ImageBatchResult> createImages(List<MultipartFile> files, List<ImageCreateForm> imageCreateForms);
+
     Image updateImage(MultipartFile file, ImageUpdateForm imageCreateForm);
 
     Image getImage(UUID uuid);
 
     void deleteImage(UUID uuid);
+
+    /**
+     * Marks all given images as deleted at once and returns the ids of those that existed. Rows and blobs are
+     * removed later in the background.
+     */
+    List<UUID> deleteImages(Collection<UUID> uuids);
+
+    Optional<BlobLocation> findContent(Image image);
 }
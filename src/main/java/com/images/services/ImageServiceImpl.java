@@ -1,21 +1,67 @@
 package com.images.services;
 
+import com.images.cache.ImageCache;
+import com.images.datasource.ReplicaRoutingDataSource;
 import com.images.domain.Image;
+import com.images.events.ImageChangedEvent;
 import com.images.exception.DatabaseOperationException;
+import com.images.exception.DuplicateImageException;
 import com.images.forms.ImageCreateForm;
 import com.images.forms.ImageUpdateForm;
+import com.images.imaging.ImageDecoder;
+import com.images.imaging.ImageInfo;
+import com.images.imaging.ImageInfoReader;
+import com.images.imaging.PerceptualHash;
+import com.images.metrics.ImageMetrics;
 import com.images.notification.NotificationService;
+import com.images.repository.ImageFields;
+import com.images.repository.ImageFilter;
+import com.images.repository.ImageProjection;
 import com.images.repository.ImageRepository;
+import com.images.repository.OrphanBlobRepository;
+import com.images.search.ImageSearchHits;
+import com.images.search.ImageSearchIndex;
+import com.images.similarity.PerceptualHashIndex;
+import com.images.similarity.SimilarityMatch;
+import com.images.storage.BlobLocation;
+import com.images.storage.BlobStore;
+import com.images.storage.BlobStoreExecutor;
+import com.images.storage.StoredBlob;
 import org.apache.commons.collections4.CollectionUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -23,98 +69,468 @@ import java.util.stream.StreamSupport;
 @Transactional
 public class ImageServiceImpl implements ImageService {
 
-    private static final String IMAGE_STORAGE_PREFIX="/images/";
     private final ImageRepository imageRepository;
     private final NotificationService notificationService;
+    private final BlobStore blobStore;
+    private final BlobStoreExecutor blobStoreExecutor;
+    private final ImageCache imageCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ImageMetrics imageMetrics;
+    private final ImageSearchIndex imageSearchIndex;
+    private final PerceptualHashIndex perceptualHashIndex;
+    private final OrphanBlobRepository orphanBlobRepository;
+    private final TransactionTemplate newTransaction;
+    private final int duplicateDistance;
 
     @Autowired
     public ImageServiceImpl(
-            ImageRepository imageRepository, NotificationService notificationService) {
+            ImageRepository imageRepository, NotificationService notificationService, BlobStore blobStore,
+            BlobStoreExecutor blobStoreExecutor, ImageCache imageCache, ApplicationEventPublisher eventPublisher,
+            ImageMetrics imageMetrics, ImageSearchIndex imageSearchIndex, PerceptualHashIndex perceptualHashIndex,
+            OrphanBlobRepository orphanBlobRepository, PlatformTransactionManager transactionManager,
+            @Value("${images.similarity.duplicate-distance:4}") int duplicateDistance) {
         this.imageRepository = imageRepository;
+        this.orphanBlobRepository = orphanBlobRepository;
         this.notificationService = notificationService;
+        this.blobStore = blobStore;
+        this.blobStoreExecutor = blobStoreExecutor;
+        this.imageCache = imageCache;
+        this.eventPublisher = eventPublisher;
+        this.imageMetrics = imageMetrics;
+        this.imageSearchIndex = imageSearchIndex;
+        this.perceptualHashIndex = perceptualHashIndex;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.duplicateDistance = duplicateDistance;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<Image> findAll() {
-        Iterable<Image> imagesIterable = imageRepository.findAll();
-        List<Image> images =
-                StreamSupport.stream(imagesIterable.spliterator(), false)
-                        .collect(Collectors.toList());
+        return imageMetrics.time("findAll", () -> {
+            Iterable<Image> imagesIterable = imageRepository.findAll();
+            List<Image> images =
+                    StreamSupport.stream(imagesIterable.spliterator(), false)
+                            .collect(Collectors.toList());
 
-        if (CollectionUtils.isEmpty(images)) {
-            notificationService.addErrorMessage("No images found");
+            if (CollectionUtils.isEmpty(images)) {
+                notificationService.addErrorMessage("No images found");
+            }
+
+            return images;
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ImagePage findPage(ImageCursor after, int limit) {
+        return findPage(ImageFilter.NONE, after, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ImagePage findPage(ImageFilter filter, ImageCursor after, int limit) {
+        // One extra row tells whether there is a next page without a count query
+        final PageRequest pageRequest = PageRequest.of(0, limit + 1);
+        final List<Image> images;
+        if (!filter.isEmpty()) {
+            images = imageRepository.findPage(filter, after == null ? null : after.getDateAdded(),
+                    after == null ? null : after.getUuid(), limit + 1);
+        } else if (after == null) {
+            images = imageRepository.findFirstPage(pageRequest);
+        } else {
+            images = imageRepository.findPageAfter(after.getDateAdded(), after.getUuid(), pageRequest);
         }
 
-        return images;
+        if (images.size() <= limit) {
+            return new ImagePage(images, null);
+        }
+        final List<Image> page = new ArrayList<>(images.subList(0, limit));
+        return new ImagePage(page, ImageCursor.of(page.get(limit - 1)).encode());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ImageProjection> findAll(ImageFields fields) {
+        return imageMetrics.time("findAll", () -> {
+            final List<ImageProjection> images = imageRepository.findProjections(fields, ImageFilter.NONE, null, null, 0);
+            if (images.isEmpty()) {
+                notificationService.addErrorMessage("No images found");
+            }
+            return images;
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ImageProjectionPage findPage(ImageFilter filter, ImageCursor after, int limit, ImageFields fields) {
+        final List<ImageProjection> images = imageRepository.findProjections(fields, filter,
+                after == null ? null : after.getDateAdded(), after == null ? null : after.getUuid(), limit + 1);
+        if (images.size() <= limit) {
+            return new ImageProjectionPage(images, null);
+        }
+        final List<ImageProjection> page = new ArrayList<>(images.subList(0, limit));
+        final ImageProjection last = page.get(limit - 1);
+        return new ImageProjectionPage(page, new ImageCursor(last.getDateAdded(), last.getUuid()).encode());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<Image> action) {
+        imageRepository.forEachImage(action);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ImageSearchResult search(String query, String added, int limit) {
+        return imageMetrics.time("search", () -> {
+            final ImageSearchHits hits;
+            try {
+                hits = imageSearchIndex.search(query, added, limit);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            // The index can briefly list images deleted since its last refresh, those are left out
+            final Map<UUID, Image> images = new HashMap<>();
+            imageRepository.findAllById(hits.getUuids()).forEach(image -> images.put(image.getUuid(), image));
+            final List<Image> ranked = hits.getUuids().stream()
+                    .map(images::get)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            return new ImageSearchResult(hits.getTotal(), ranked, hits.getAdded());
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<SimilarImage> findSimilar(UUID uuid, int maxDistance, int limit) {
+        return imageMetrics.time("similar", () -> {
+            final Optional<Image> image = imageRepository.findById(uuid);
+            if (!image.isPresent()) {
+                notificationService.addErrorMessage(String.format("Image with uuid [%s] is not found", uuid));
+                return null;
+            }
+            if (image.get().getPerceptualHash() == null) {
+                return new ArrayList<SimilarImage>();
+            }
+
+            final List<SimilarityMatch> matches = perceptualHashIndex.search(image.get().getPerceptualHash(), maxDistance, limit, uuid);
+            final Map<UUID, Image> images = new HashMap<>();
+            imageRepository.findAllById(matches.stream().map(SimilarityMatch::getUuid).collect(Collectors.toList()))
+                    .forEach(match -> images.put(match.getUuid(), match));
+            return matches.stream()
+                    .filter(match -> images.containsKey(match.getUuid()))
+                    .map(match -> new SimilarImage(images.get(match.getUuid()), match.getDistance()))
+                    .collect(Collectors.toList());
+        });
     }
 
     @Override
     public Image createImage(MultipartFile file, ImageCreateForm imageCreateForm) {
+        return imageMetrics.time("create", () -> saveImage(blobStore.store(file), imageCreateForm));
+    }
+
+    @Override
+    public Image createImage(StoredBlob blob, ImageCreateForm imageCreateForm) {
+        return imageMetrics.time("create", () -> saveImage(blob, imageCreateForm));
+    }
+
+    /**
+     * Runs outside a transaction: the rows are flushed in a transaction of their own, so a row the database refuses
+     * rolls back only that transaction and can be reported for its item.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<ImageBatchResult> createImages(List<MultipartFile> files, List<ImageCreateForm> imageCreateForms) {
+        return imageMetrics.time("createBatch", () -> {
+            final List<CompletableFuture<StoredBlob>> blobs = new ArrayList<>(files.size());
+            files.forEach(file -> blobs.add(blobStoreExecutor.store(file)));
+
+            final ImageBatchResult[] results = new ImageBatchResult[files.size()];
+            final List<Image> imagesToCreate = new ArrayList<>(files.size());
+            final List<Integer> indexesToCreate = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    final StoredBlob blob = blobs.get(i).join();
+                    imageMetrics.recordUploaded(blob.getSize());
+                    final ImageCreateForm imageCreateForm = imageCreateForms.get(i);
+                    final Long perceptualHash = perceptualHash(blob);
+                    final Optional<UUID> duplicate = findDuplicate(perceptualHash, imageCreateForm);
+                    if (duplicate.isPresent()) {
+                        notificationService.addErrorMessage(String.format("Image [%d] looks the same as image [%s]", i, duplicate.get()));
+                        results[i] = ImageBatchResult.failed(i, String.format("Image looks the same as image [%s]", duplicate.get()));
+                        releaseContent(blob.getKey());
+                        continue;
+                    }
+                    final Image imageToCreate = Image.builder()
+                            .title(imageCreateForm.getTitle())
+                            .description(imageCreateForm.getDescription())
+                            .perceptualHash(perceptualHash)
+                            .build();
+                    describeContent(imageToCreate, blob);
+                    imagesToCreate.add(imageToCreate);
+                    indexesToCreate.add(i);
+                } catch (CompletionException e) {
+                    notificationService.addErrorMessage(String.format("Image [%d] content could not be stored: %s", i, e.getCause().getMessage()));
+                    results[i] = ImageBatchResult.failed(i, "Image content could not be stored");
+                }
+            }
+            if (imagesToCreate.isEmpty()) {
+                return Arrays.asList(results);
+            }
+
+            try {
+                // One statement batch for all rows, see hibernate.jdbc.batch_size
+                final List<Image> createdImages = newTransaction.execute(status -> {
+                    final List<Image> saved = new ArrayList<>(imagesToCreate.size());
+                    imageRepository.saveAll(imagesToCreate).forEach(saved::add);
+                    imageRepository.flush();
+                    saved.forEach(image -> eventPublisher.publishEvent(ImageChangedEvent.created(image)));
+                    return saved;
+                });
+                for (int created = 0; created < createdImages.size(); created++) {
+                    final int index = indexesToCreate.get(created);
+                    results[index] = ImageBatchResult.created(index, createdImages.get(created));
+                }
+                notificationService.addInfoMessage(String.format("[%d] images have been created successfully", createdImages.size()));
+            } catch (IllegalArgumentException | DataAccessException | TransactionException e) {
+                // Any refused row rolls the batch back, the rows are saved one by one to tell which items failed
+                int created = 0;
+                for (int i = 0; i < imagesToCreate.size(); i++) {
+                    final int index = indexesToCreate.get(i);
+                    final ImageBatchResult result = createOne(index, imagesToCreate.get(i));
+                    results[index] = result;
+                    if (result.getImage() != null) {
+                        created++;
+                    }
+                }
+                notificationService.addInfoMessage(String.format("[%d] images have been created successfully", created));
+            }
+            return Arrays.asList(results);
+        });
+    }
+
+    @Override
+    public Image updateImage(MultipartFile file, ImageUpdateForm imageUpdateForm) {
+        return imageMetrics.time("update", () -> {
+            final Optional<Image> imageFromDb = imageRepository.findById(imageUpdateForm.getUuid());
+
+            if (!imageFromDb.isPresent()) {
+                notificationService.addErrorMessage("Image has not been found in database");
+                return null;
+            }
+
+            final Image imageToUpdate = imageFromDb.get();
+            final String previousPath = imageToUpdate.getPath();
+            final StoredBlob blob = blobStore.store(file);
+            imageMetrics.recordUploaded(blob.getSize());
 
-        final String fileLocation = IMAGE_STORAGE_PREFIX + file.getOriginalFilename();
+            try {
+                // Maybe introduce mapper to easier obtain image
+                imageToUpdate.setTitle(imageUpdateForm.getTitle());
+                imageToUpdate.setDescription(imageUpdateForm.getDescription());
+                describeContent(imageToUpdate, blob);
+                imageToUpdate.setPerceptualHash(perceptualHash(blob));
+                Image savedImage = imageRepository.save(imageToUpdate);
+                if (previousPath != null && !previousPath.equals(blob.getKey())) {
+                    // Other images may share the content, the collector decides whether the blob can go
+                    orphanBlobRepository.record(Collections.singleton(previousPath));
+                }
+                imageCache.invalidate(imageToUpdate.getUuid());
+                eventPublisher.publishEvent(ImageChangedEvent.updated(savedImage));
+                notificationService.addInfoMessage("Image updated successfully");
+                return savedImage;
+
+            } catch (IllegalArgumentException e) {
+                notificationService.addErrorMessage("Error occurred: " + e.getMessage());
+                return null;
+            }
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Image getImage(UUID uuid) {
+        return imageMetrics.time("get", () -> {
+            // a miss is loaded from the primary, a lagging replica would leave an old row in the cache
+            final Image image = imageCache.get(uuid, key ->
+                    ReplicaRoutingDataSource.onPrimary(() -> imageRepository.findById(key).orElse(null)));
+            if (image == null) {
+                notificationService.addErrorMessage(String.format("Image with uuid [%s] is not found", uuid));
+            }
+            return image;
+        });
+    }
+
+    @Override
+    public void deleteImage(UUID uuid) {
+        imageMetrics.time("delete", () -> {
+            try {
+                if (imageRepository.markDeleted(Collections.singleton(uuid), LocalDateTime.now()) == 0) {
+                    throw new EmptyResultDataAccessException(String.format("No image with uuid [%s] exists", uuid), 1);
+                }
+                imageCache.invalidate(uuid);
+                eventPublisher.publishEvent(ImageChangedEvent.deleted(uuid));
+                notificationService.addInfoMessage(String.format("Successfully deleted an image with uuid [%s]", uuid));
+            } catch (DataAccessException e) {
+                notificationService.addErrorMessage(String.format("Image could not be deleted - reason [%s]", e.getMessage()));
+                throw new DatabaseOperationException("Image could not be deleted");
+            }
+        });
+    }
+
+    @Override
+    public List<UUID> deleteImages(Collection<UUID> uuids) {
+        return imageMetrics.time("deleteBatch", () -> {
+            try {
+                final List<UUID> deleted = imageRepository.findExistingUuids(uuids);
+                if (!deleted.isEmpty()) {
+                    imageRepository.markDeleted(deleted, LocalDateTime.now());
+                }
+                for (UUID uuid : deleted) {
+                    imageCache.invalidate(uuid);
+                    eventPublisher.publishEvent(ImageChangedEvent.deleted(uuid));
+                }
+                notificationService.addInfoMessage(String.format("Successfully deleted [%d] of [%d] images", deleted.size(), uuids.size()));
+                return deleted;
+            } catch (DataAccessException e) {
+                notificationService.addErrorMessage(String.format("Images could not be deleted - reason [%s]", e.getMessage()));
+                throw new DatabaseOperationException("Images could not be deleted");
+            }
+        });
+    }
+
+    @Override
+    public Optional<BlobLocation> findContent(Image image) {
+        return blobStore.locate(image.getPath());
+    }
+
+    private Image saveImage(StoredBlob blob, ImageCreateForm imageCreateForm) {
+        imageMetrics.recordUploaded(blob.getSize());
+        final Long perceptualHash = perceptualHash(blob);
+        final Optional<UUID> duplicate = findDuplicate(perceptualHash, imageCreateForm);
+        if (duplicate.isPresent()) {
+            final String message = String.format("Image looks the same as image [%s]", duplicate.get());
+            notificationService.addErrorMessage(message);
+            releaseContent(blob.getKey());
+            throw new DuplicateImageException(message);
+        }
         final Image imageToCreate = Image.builder()
                 .title(imageCreateForm.getTitle())
                 .description(imageCreateForm.getDescription())
-                .path(fileLocation)
+                .perceptualHash(perceptualHash)
                 .build();
+        describeContent(imageToCreate, blob);
+        releaseContentOnRollback(blob.getKey());
 
         try {
             Image createdImage = imageRepository.save(imageToCreate);
+            eventPublisher.publishEvent(ImageChangedEvent.created(createdImage));
             notificationService.addInfoMessage("Image has been created successfully");
             return createdImage;
         } catch (IllegalArgumentException e) {
             notificationService.addErrorMessage("Database operation failed with message: " + e.getMessage());
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                releaseContent(blob.getKey());
+            }
             throw new DatabaseOperationException("Database operation failed");
         }
     }
 
-    @Override
-    public Image updateImage(MultipartFile file, ImageUpdateForm imageUpdateForm) {
-
-        final String fileLocation = IMAGE_STORAGE_PREFIX + file.getOriginalFilename();
-        final Optional<Image> imageFromDb = imageRepository.findById(imageUpdateForm.getUuid());
-
-        if (!imageFromDb.isPresent()) {
-            notificationService.addErrorMessage("Image has not been found in database");
-            return null;
+    private ImageBatchResult createOne(int index, Image imageToCreate) {
+        // A rolled back persist leaves the generated id and version on the entity, it would be merged instead
+        imageToCreate.setUuid(null);
+        imageToCreate.setVersion(null);
+        try {
+            final Image createdImage = newTransaction.execute(status -> {
+                final Image saved = imageRepository.saveAndFlush(imageToCreate);
+                eventPublisher.publishEvent(ImageChangedEvent.created(saved));
+                return saved;
+            });
+            return ImageBatchResult.created(index, createdImage);
+        } catch (IllegalArgumentException | DataAccessException | TransactionException e) {
+            notificationService.addErrorMessage(String.format("Image [%d] database operation failed with message: %s", index, e.getMessage()));
+            releaseContent(imageToCreate.getPath());
+            return ImageBatchResult.failed(index, "Database operation failed");
         }
+    }
 
-        final Image imageToUpdate = imageFromDb.get();
+    /**
+     * Releases the content if the surrounding transaction does not commit, whether the save, a flush or the commit
+     * itself fails, like {@link #createOne} does for a single row of a batch.
+     */
+    private void releaseContentOnRollback(String key) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        releaseContent(key);
+                    }
+                }
+            });
+        }
+    }
 
+    /**
+     * Hands content no image was created for to the orphan collector. Blobs are shared by content, so it is only
+     * deleted when no other image references it.
+     */
+    private void releaseContent(String key) {
         try {
-            // Maybe introduce mapper to easier obtain image
-            imageToUpdate.setTitle(imageUpdateForm.getTitle());
-            imageToUpdate.setDescription(imageUpdateForm.getDescription());
-            imageToUpdate.setPath(fileLocation);
-            Image savedImage = imageRepository.save(imageToUpdate);
-            notificationService.addInfoMessage("Image updated successfully");
-            return savedImage;
+            newTransaction.executeWithoutResult(status -> orphanBlobRepository.record(Collections.singleton(key)));
+        } catch (DataAccessException | TransactionException e) {
+            notificationService.addErrorMessage(String.format("Content [%s] could not be released: %s", key, e.getMessage()));
+        }
+    }
 
-        } catch (IllegalArgumentException e) {
-            notificationService.addErrorMessage("Error occurred: " + e.getMessage());
-            return null;
+    private Optional<UUID> findDuplicate(Long perceptualHash, ImageCreateForm imageCreateForm) {
+        if (!imageCreateForm.isRejectNearDuplicate() || perceptualHash == null) {
+            return Optional.empty();
         }
+        return perceptualHashIndex.search(perceptualHash, duplicateDistance, 1, null).stream()
+                .map(SimilarityMatch::getUuid)
+                .findFirst();
     }
 
-    @Override
-    public Image getImage(UUID uuid) {
-        Optional<Image> image = imageRepository.findById(uuid);
-        if (image.isPresent()) {
-            return image.get();
-        } else {
-            notificationService.addErrorMessage(String.format("Image with uuid [%s] is not found", uuid));
-            return null;
+    /**
+     * Points the image at the stored content and copies what the file headers say about it. Unreadable headers
+     * leave those columns empty rather than failing the upload.
+     */
+    private void describeContent(Image image, StoredBlob blob) {
+        image.setPath(blob.getKey());
+        image.setByteSize(blob.getSize());
+        ImageInfo info = ImageInfo.UNKNOWN;
+        final Optional<BlobLocation> content = blobStore.locate(blob.getKey());
+        if (content.isPresent()) {
+            try {
+                info = ImageInfoReader.read(content.get());
+            } catch (IOException | RuntimeException e) {
+                info = ImageInfo.UNKNOWN;
+            }
         }
+        image.setWidth(info.getWidth());
+        image.setHeight(info.getHeight());
+        image.setMimeType(info.getMimeType());
+        image.setOrientation(info.getOrientation());
+        image.setCapturedAt(info.getCapturedAt());
     }
 
-    @Override
-    public void deleteImage(UUID uuid) {
+    /**
+     * Hashes the stored content, which is decoded at reduced size. Content that is not a readable image
+     * simply gets no hash.
+     */
+    private Long perceptualHash(StoredBlob blob) {
+        final Optional<BlobLocation> content = blobStore.locate(blob.getKey());
+        if (!content.isPresent()) {
+            return null;
+        }
         try {
-            imageRepository.deleteById(uuid);
-            notificationService.addInfoMessage(String.format("Successfully deleted an image with uuid [%s]", uuid));
-        } catch (DataAccessException e) {
-            notificationService.addErrorMessage(String.format("Image could not be deleted - reason [%s]", e.getMessage()));
-            throw new DatabaseOperationException("Image could not be deleted");
+            final BufferedImage decoded = ImageDecoder.decode(content.get(), PerceptualHash.DECODE_SIZE, PerceptualHash.DECODE_SIZE);
+            return decoded == null ? null : PerceptualHash.dHash(decoded);
+        } catch (IOException | RuntimeException e) {
+            return null;
         }
     }
 }
@@ -0,0 +1,25 @@
+package com.images.services;
+
+import com.images.domain.ImageVariant;
+import com.images.storage.BlobLocation;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface ImageVariantService {
+
+    Optional<ImageVariant> findVariant(UUID imageUuid, String name);
+
+    List<ImageVariant> findVariants(UUID imageUuid);
+
+    /**
+     * Replaces every variant of the image, unless the image was deleted or its content changed since the
+     * variants were generated from {@code sourcePath}.
+     *
+     * @return whether the variants were saved
+     */
+    boolean replaceVariants(UUID imageUuid, String sourcePath, List<ImageVariant> variants);
+
+    Optional<BlobLocation> findContent(ImageVariant variant);
+}
@@ -0,0 +1,78 @@
+package com.images.services;
+
+import com.images.domain.Image;
+import com.images.domain.ImageVariant;
+import com.images.repository.ImageRepository;
+import com.images.repository.ImageVariantRepository;
+import com.images.repository.OrphanBlobRepository;
+import com.images.storage.BlobLocation;
+import com.images.storage.BlobStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+@Service
+@Transactional
+public class ImageVariantServiceImpl implements ImageVariantService {
+
+    private final ImageRepository imageRepository;
+    private final ImageVariantRepository imageVariantRepository;
+    private final OrphanBlobRepository orphanBlobRepository;
+    private final BlobStore blobStore;
+
+    @Autowired
+    public ImageVariantServiceImpl(ImageRepository imageRepository, ImageVariantRepository imageVariantRepository,
+                                   OrphanBlobRepository orphanBlobRepository, BlobStore blobStore) {
+        this.imageRepository = imageRepository;
+        this.imageVariantRepository = imageVariantRepository;
+        this.orphanBlobRepository = orphanBlobRepository;
+        this.blobStore = blobStore;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<ImageVariant> findVariant(UUID imageUuid, String name) {
+        return imageVariantRepository.findByImageUuidAndName(imageUuid, name);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ImageVariant> findVariants(UUID imageUuid) {
+        return imageVariantRepository.findByImageUuid(imageUuid);
+    }
+
+    // Runs after the commit of the change, on the request thread when the variant queue is full
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean replaceVariants(UUID imageUuid, String sourcePath, List<ImageVariant> variants) {
+        final Optional<Image> image = imageRepository.findById(imageUuid);
+        if (!image.isPresent() || !sourcePath.equals(image.get().getPath())) {
+            return false;
+        }
+
+        final Set<String> replaced = imageVariantRepository.findByImageUuid(imageUuid).stream()
+                .map(ImageVariant::getPath)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        variants.forEach(variant -> replaced.remove(variant.getPath()));
+
+        imageVariantRepository.deleteByImageUuid(imageUuid);
+        variants.forEach(variant -> variant.setImage(image.get()));
+        imageVariantRepository.saveAll(variants);
+        // Other images may share the content, the collector decides whether the blobs can go
+        orphanBlobRepository.record(replaced);
+        return true;
+    }
+
+    @Override
+    public Optional<BlobLocation> findContent(ImageVariant variant) {
+        return blobStore.locate(variant.getPath());
+    }
+}
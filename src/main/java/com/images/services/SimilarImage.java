@@ -0,0 +1,21 @@
+package com.images.services;
+
+import com.images.domain.Image;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class SimilarImage {
+
+    private Image image;
+
+    /**
+     * Number of differing bits between the perceptual hashes, 0 for images that look the same.
+     */
+    private int distance;
+}
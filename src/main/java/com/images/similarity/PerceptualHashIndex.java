@@ -0,0 +1,219 @@
+package com.images.similarity;
+
+import com.images.imaging.PerceptualHash;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * In memory multi-index hashing over 64 bit perceptual hashes. Every hash is split into four 16 bit chunks
+ * and filed under each chunk value in its own table. Two hashes within distance {@code d} agree on at least
+ * one chunk up to {@code d / 4} bits, so a lookup only probes the buckets of chunk values that close and
+ * checks the full distance of the few images found there, instead of scanning every image.
+ *
+ * <p>Images are kept in numbered slots and buckets hold slot numbers in plain {@code int} arrays, which
+ * keeps the index at a few dozen bytes per image. The number of indexed images is published as
+ * {@code images.similarity.indexed}.</p>
+ */
+@Component
+public class PerceptualHashIndex implements MeterBinder {
+
+    private static final int TABLES = 4;
+    private static final int CHUNK_BITS = 16;
+    private static final int BUCKETS = 1 << CHUNK_BITS;
+
+    /**
+     * Lookups probe chunk values up to two bits away, which covers distances up to 11.
+     */
+    public static final int MAX_DISTANCE = TABLES * 3 - 1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<UUID, Integer> slots = new HashMap<>();
+    private final int[][][] buckets = new int[TABLES][BUCKETS][];
+    private final int[][] bucketSizes = new int[TABLES][BUCKETS];
+    private long[] slotHashes = new long[1024];
+    private UUID[] slotUuids = new UUID[1024];
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int nextSlot;
+
+    public void put(UUID uuid, long hash) {
+        lock.writeLock().lock();
+        try {
+            final Integer existing = slots.get(uuid);
+            if (existing != null) {
+                if (slotHashes[existing] == hash) {
+                    return;
+                }
+                removeSlot(existing);
+            }
+            final int slot = allocateSlot();
+            slotHashes[slot] = hash;
+            slotUuids[slot] = uuid;
+            slots.put(uuid, slot);
+            for (int table = 0; table < TABLES; table++) {
+                addToBucket(table, chunk(hash, table), slot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(UUID uuid) {
+        lock.writeLock().lock();
+        try {
+            final Integer slot = slots.get(uuid);
+            if (slot != null) {
+                removeSlot(slot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds images whose hash is at most {@code maxDistance} bits away, closest first.
+     *
+     * @param exclude image left out of the result, usually the one the hash belongs to, or {@code null}
+     */
+    public List<SimilarityMatch> search(long hash, int maxDistance, int limit, UUID exclude) {
+        if (maxDistance < 0 || maxDistance > MAX_DISTANCE) {
+            throw new IllegalArgumentException(String.format("Distance should be between 0 and %d", MAX_DISTANCE));
+        }
+        final int chunkDistance = maxDistance / TABLES;
+        final List<SimilarityMatch> matches = new ArrayList<>();
+        final Set<Integer> checked = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            for (int table = 0; table < TABLES; table++) {
+                final int chunk = chunk(hash, table);
+                probe(table, chunk, hash, maxDistance, exclude, checked, matches);
+                for (int i = 0; i < CHUNK_BITS && chunkDistance >= 1; i++) {
+                    probe(table, chunk ^ (1 << i), hash, maxDistance, exclude, checked, matches);
+                    for (int j = i + 1; j < CHUNK_BITS && chunkDistance >= 2; j++) {
+                        probe(table, chunk ^ (1 << i) ^ (1 << j), hash, maxDistance, exclude, checked, matches);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches.stream()
+                .sorted(Comparator.comparingInt(SimilarityMatch::getDistance))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            slots.clear();
+            for (int table = 0; table < TABLES; table++) {
+                Arrays.fill(buckets[table], null);
+                Arrays.fill(bucketSizes[table], 0);
+            }
+            Arrays.fill(slotUuids, null);
+            freeCount = 0;
+            nextSlot = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("images.similarity.indexed", this, PerceptualHashIndex::size).register(registry);
+    }
+
+    private void probe(int table, int chunk, long hash, int maxDistance, UUID exclude,
+                       Set<Integer> checked, List<SimilarityMatch> matches) {
+        final int[] bucket = buckets[table][chunk];
+        final int size = bucketSizes[table][chunk];
+        for (int i = 0; i < size; i++) {
+            final int slot = bucket[i];
+            if (!checked.add(slot)) {
+                continue;
+            }
+            final int distance = PerceptualHash.distance(hash, slotHashes[slot]);
+            if (distance <= maxDistance && !slotUuids[slot].equals(exclude)) {
+                matches.add(new SimilarityMatch(slotUuids[slot], distance));
+            }
+        }
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (nextSlot == slotHashes.length) {
+            slotHashes = Arrays.copyOf(slotHashes, slotHashes.length * 2);
+            slotUuids = Arrays.copyOf(slotUuids, slotUuids.length * 2);
+        }
+        return nextSlot++;
+    }
+
+    private void removeSlot(int slot) {
+        final long hash = slotHashes[slot];
+        for (int table = 0; table < TABLES; table++) {
+            removeFromBucket(table, chunk(hash, table), slot);
+        }
+        slots.remove(slotUuids[slot]);
+        slotUuids[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void addToBucket(int table, int chunk, int slot) {
+        int[] bucket = buckets[table][chunk];
+        final int size = bucketSizes[table][chunk];
+        if (bucket == null) {
+            bucket = new int[2];
+        } else if (size == bucket.length) {
+            bucket = Arrays.copyOf(bucket, size * 2);
+        }
+        bucket[size] = slot;
+        buckets[table][chunk] = bucket;
+        bucketSizes[table][chunk] = size + 1;
+    }
+
+    private void removeFromBucket(int table, int chunk, int slot) {
+        final int[] bucket = buckets[table][chunk];
+        final int size = bucketSizes[table][chunk];
+        for (int i = 0; i < size; i++) {
+            if (bucket[i] == slot) {
+                bucket[i] = bucket[size - 1];
+                bucketSizes[table][chunk] = size - 1;
+                return;
+            }
+        }
+    }
+
+    private static int chunk(long hash, int table) {
+        return (int) (hash >>> (table * CHUNK_BITS)) & (BUCKETS - 1);
+    }
+}
@@ -0,0 +1,57 @@
+package com.images.similarity;
+
+import com.images.domain.Image;
+import com.images.events.ImageChangeType;
+import com.images.events.ImageChangedEvent;
+import com.images.services.ImageService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Keeps the {@link PerceptualHashIndex} in step with the database. The index only lives in memory, so it is
+ * filled from the table at every startup and then follows committed changes.
+ */
+@Component
+public class PerceptualHashIndexer {
+
+    private static final Logger logger = LogManager.getLogger(PerceptualHashIndexer.class);
+
+    private final PerceptualHashIndex perceptualHashIndex;
+    private final ImageService imageService;
+
+    @Autowired
+    public PerceptualHashIndexer(PerceptualHashIndex perceptualHashIndex, ImageService imageService) {
+        this.perceptualHashIndex = perceptualHashIndex;
+        this.imageService = imageService;
+    }
+
+    @TransactionalEventListener
+    public void onImageChanged(ImageChangedEvent event) {
+        if (event.getType() == ImageChangeType.DELETED) {
+            perceptualHashIndex.remove(event.getUuid());
+        } else {
+            index(event.getImage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        perceptualHashIndex.clear();
+        imageService.streamAll(this::index);
+        logger.info(String.format("Perceptual hash index built with [%d] images", perceptualHashIndex.size()));
+    }
+
+    private void index(Image image) {
+        if (image.getPerceptualHash() == null) {
+            // Content that is not a decodable image has no hash, and an update can replace an image with such content
+            perceptualHashIndex.remove(image.getUuid());
+        } else {
+            perceptualHashIndex.put(image.getUuid(), image.getPerceptualHash());
+        }
+    }
+}
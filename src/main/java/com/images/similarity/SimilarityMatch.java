@@ -0,0 +1,22 @@
+package com.images.similarity;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.UUID;
+
+@Getter
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class SimilarityMatch {
+
+    private final UUID uuid;
+
+    /**
+     * Number of differing bits between the perceptual hashes, 0 for images that look the same.
+     */
+    private final int distance;
+}
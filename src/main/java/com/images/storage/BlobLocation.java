@@ -0,0 +1,44 @@
+package com.images.storage;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Region of a file on disk holding the content of a blob. A blob does not have to own the whole file,
+ * which lets a store keep many blobs in one file and still serve them with a single positioned read.
+ * Stores that keep the file mapped also hand out the region as a buffer, so readers can skip the system calls.
+ */
+@Getter
+@ToString
+public class BlobLocation {
+
+    private final Path file;
+    private final long offset;
+    private final long length;
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final ByteBuffer mapped;
+
+    public BlobLocation(Path file, long offset, long length) {
+        this(file, offset, length, null);
+    }
+
+    public BlobLocation(Path file, long offset, long length, ByteBuffer mapped) {
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.mapped = mapped;
+    }
+
+    /**
+     * The content as a read-only buffer of its own, positioned at the start of the blob, when the file is mapped.
+     */
+    public Optional<ByteBuffer> mapped() {
+        return mapped == null ? Optional.empty() : Optional.of(mapped.asReadOnlyBuffer());
+    }
+}
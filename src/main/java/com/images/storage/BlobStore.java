@@ -0,0 +1,62 @@
+package com.images.storage;
+
+import com.images.exception.BlobStoreException;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Content addressed storage for image bytes. Implementations must stream the content and never
+ * buffer a whole file in memory.
+ */
+public interface BlobStore {
+
+    StoredBlob store(InputStream content);
+
+    default StoredBlob store(MultipartFile file) {
+        try (InputStream content = file.getInputStream()) {
+            return store(content);
+        } catch (IOException e) {
+            throw new BlobStoreException("Uploaded file could not be read", e);
+        }
+    }
+
+    /**
+     * Takes over a complete file whose content hashes to {@code key}, for content that was already written and
+     * hashed elsewhere. The file is gone afterwards. The default streams it through {@link #store(InputStream)}.
+     */
+    default StoredBlob importFile(Path file, String key) {
+        try (InputStream content = Files.newInputStream(file)) {
+            return store(content);
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("File [%s] could not be imported", file), e);
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Left behind for the owner of the file to clean up
+            }
+        }
+    }
+
+    boolean exists(String key);
+
+    Optional<BlobLocation> locate(String key);
+
+    void delete(String key);
+
+    /**
+     * Deletes the blob unless it was stored after {@code storedBefore}, an upload of content that is already stored
+     * counting as storing it again. Runs exclusively with the duplicate check of {@link #store(InputStream)}, so a
+     * concurrent upload of the same content either finds the blob gone and writes it again, or marks it as stored
+     * before it can be deleted.
+     *
+     * @return whether the blob was deleted
+     */
+    boolean deleteUnlessStoredSince(String key, Instant storedBefore);
+}
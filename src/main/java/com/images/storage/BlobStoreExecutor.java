@@ -0,0 +1,76 @@
+package com.images.storage;
+
+import com.images.execution.VirtualThreads;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores several blobs concurrently on a small, bounded pool. When the pool and its queue are full the caller
+ * stores the blob itself, which slows a large batch down instead of queueing it without limit.
+ *
+ * <p>In virtual execution mode every blob gets its own virtual thread instead, and a semaphore keeps the number
+ * of blobs written at the same time to {@code images.storage.io-threads}.</p>
+ */
+@Component
+public class BlobStoreExecutor {
+
+    private final BlobStore blobStore;
+    private final Executor executor;
+    private final Semaphore permits;
+
+    public BlobStoreExecutor(BlobStore blobStore, int threads, int queueSize) {
+        this(blobStore, new VirtualThreads("platform"), threads, queueSize);
+    }
+
+    @Autowired
+    public BlobStoreExecutor(BlobStore blobStore, VirtualThreads virtualThreads,
+                             @Value("${images.storage.io-threads:4}") int threads,
+                             @Value("${images.storage.io-queue-size:64}") int queueSize) {
+        this.blobStore = blobStore;
+        this.permits = new Semaphore(threads);
+        this.executor = virtualThreads.getExecutor()
+                .map(Executor.class::cast)
+                .orElseGet(() -> newPool(threads, queueSize));
+    }
+
+    public CompletableFuture<StoredBlob> store(MultipartFile file) {
+        return CompletableFuture.supplyAsync(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                return blobStore.store(file);
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) executor).shutdown();
+        }
+    }
+
+    private static ThreadPoolExecutor newPool(int threads, int queueSize) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "blob-io-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
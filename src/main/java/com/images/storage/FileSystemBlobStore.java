@@ -0,0 +1,241 @@
+package com.images.storage;
+
+import com.images.exception.BlobStoreException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Stores blobs as plain files under {@code images.storage.root}, fanned out by the first two bytes of the hash
+ * ({@code ab/cd/abcd...}). Content is streamed through a fixed size buffer into a temporary file while the
+ * SHA-256 is computed, then moved into place. If the target already exists the upload is a duplicate, the
+ * temporary file is simply dropped and the target touched, so the modification time of a blob is when its content
+ * was last stored. Free and total space of the volume holding the root are published as
+ * {@code images.storage.disk.free} and {@code images.storage.disk.total}.
+ */
+@Component
+@ConditionalOnProperty(name = "images.storage.engine", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemBlobStore implements BlobStore, MeterBinder {
+
+    private static final Logger logger = LogManager.getLogger(FileSystemBlobStore.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final Path incoming;
+    private final Object[] keyLocks = new Object[256];
+
+    public FileSystemBlobStore(@Value("${images.storage.root:data/images}") String root) {
+        this.root = Paths.get(root).toAbsolutePath();
+        this.incoming = this.root.resolve("incoming");
+        for (int i = 0; i < keyLocks.length; i++) {
+            keyLocks[i] = new Object();
+        }
+        try {
+            Files.createDirectories(incoming);
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Blob storage directory [%s] could not be created", this.root), e);
+        }
+    }
+
+    @Override
+    public StoredBlob store(InputStream content) {
+        final MessageDigest digest = BlobKeys.newDigest();
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(incoming, "upload-", ".tmp");
+            long size = 0;
+            try (ReadableByteChannel source = Channels.newChannel(content);
+                 FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                while (source.read(buffer) != -1) {
+                    buffer.flip();
+                    size += buffer.remaining();
+                    digest.update(buffer);
+                    buffer.rewind();
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+
+            final String key = BlobKeys.toHex(digest.digest());
+            final Path blob = pathOf(key);
+            synchronized (lockOf(key)) {
+                if (Files.exists(blob)) {
+                    logger.debug(String.format("Blob [%s] already stored, dropping duplicate upload", key));
+                    touch(blob);
+                } else {
+                    Files.createDirectories(blob.getParent());
+                    try {
+                        Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (FileAlreadyExistsException e) {
+                        logger.debug(String.format("Blob [%s] stored concurrently, dropping duplicate upload", key));
+                        touch(blob);
+                    }
+                }
+            }
+            return new StoredBlob(key, size);
+        } catch (IOException e) {
+            throw new BlobStoreException("Blob could not be stored", e);
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Moves the file into place instead of copying it. Falls back to {@link #store(InputStream)} when the file
+     * is on another volume than the store and cannot be moved atomically.
+     */
+    @Override
+    public StoredBlob importFile(Path file, String key) {
+        if (!BlobKeys.isValid(key)) {
+            throw new BlobStoreException(String.format("Blob key [%s] is not valid", key));
+        }
+        try {
+            final long size = Files.size(file);
+            final Path blob = pathOf(key);
+            synchronized (lockOf(key)) {
+                if (Files.exists(blob)) {
+                    logger.debug(String.format("Blob [%s] already stored, dropping imported file", key));
+                    touch(blob);
+                    Files.delete(file);
+                    return new StoredBlob(key, size);
+                }
+                Files.createDirectories(blob.getParent());
+                try {
+                    Files.move(file, blob, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    logger.debug(String.format("Blob [%s] stored concurrently, dropping imported file", key));
+                    touch(blob);
+                    Files.delete(file);
+                } catch (AtomicMoveNotSupportedException e) {
+                    // Copied below instead, store takes the lock itself
+                }
+            }
+            if (Files.exists(file)) {
+                return BlobStore.super.importFile(file, key);
+            }
+            return new StoredBlob(key, size);
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("File [%s] could not be imported", file), e);
+        }
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return BlobKeys.isValid(key) && Files.exists(pathOf(key));
+    }
+
+    @Override
+    public Optional<BlobLocation> locate(String key) {
+        if (!BlobKeys.isValid(key)) {
+            return Optional.empty();
+        }
+        final Path blob = pathOf(key);
+        try {
+            return Optional.of(new BlobLocation(blob, 0, Files.size(blob)));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Blob [%s] could not be located", key), e);
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        if (!BlobKeys.isValid(key)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(pathOf(key));
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Blob [%s] could not be deleted", key), e);
+        }
+    }
+
+    @Override
+    public boolean deleteUnlessStoredSince(String key, Instant storedBefore) {
+        if (!BlobKeys.isValid(key)) {
+            return false;
+        }
+        final Path blob = pathOf(key);
+        synchronized (lockOf(key)) {
+            try {
+                if (Files.getLastModifiedTime(blob).toInstant().isAfter(storedBefore)) {
+                    return false;
+                }
+                Files.delete(blob);
+                return true;
+            } catch (NoSuchFileException e) {
+                return false;
+            } catch (IOException e) {
+                throw new BlobStoreException(String.format("Blob [%s] could not be deleted", key), e);
+            }
+        }
+    }
+
+    // One lock per value of the first key byte, taken around the duplicate check and around deletes
+    private Object lockOf(String key) {
+        return keyLocks[Integer.parseInt(key.substring(0, 2), 16)];
+    }
+
+    private Path pathOf(String key) {
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("images.storage.disk.free", this, store -> store.root.toFile().getUsableSpace())
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("images.storage.disk.total", this, store -> store.root.toFile().getTotalSpace())
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    // The modification time of a blob is when it was last stored, see deleteUnlessStoredSince
+    private static void touch(Path blob) throws IOException {
+        try {
+            Files.setLastModifiedTime(blob, FileTime.from(Instant.now()));
+        } catch (NoSuchFileException e) {
+            // Deleted with a plain delete, which does not take part in the locking
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn(String.format("Temporary file [%s] could not be deleted", path), e);
+        }
+    }
+}
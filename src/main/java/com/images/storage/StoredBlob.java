@@ -0,0 +1,20 @@
+package com.images.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Result of storing content in a {@link BlobStore}. The key is the hex encoded SHA-256 of the content,
+ * so two uploads of the same bytes end up with the same key.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class StoredBlob {
+
+    private final String key;
+    private final long size;
+}
@@ -0,0 +1,34 @@
+package com.images.storage.pack;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Where a blob lives in a {@link PackStore}: the segment, the offset of its record and the length of the stored,
+ * possibly deflated, data that follows the record header.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class PackEntry {
+
+    private final long segmentId;
+    private final long offset;
+    private final long length;
+    private final byte flags;
+
+    public long getDataOffset() {
+        return offset + PackSegment.HEADER_SIZE;
+    }
+
+    public long getRecordSize() {
+        return PackSegment.HEADER_SIZE + length;
+    }
+
+    public boolean isDeflated() {
+        return (flags & PackSegment.FLAG_DEFLATED) != 0;
+    }
+}
@@ -0,0 +1,289 @@
+package com.images.storage.pack;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * One append-only file of a {@link PackStore}. Every record is a fixed size header - magic, flags, the 32 byte
+ * key, the data length and a CRC32 of the data - followed by the data. The file system may persist the header of
+ * an append without all of its data, so a scan that verifies the checksums cuts off a record torn by a crash.
+ * Appends are not thread safe, the store serializes them; reads are positional and may run at any time.
+ * Once sealed, a segment never changes again and is read through a shared read-only mapping. Streams over the
+ * segment hold a reference to it, a retired segment is only closed once the last of them is done.
+ */
+final class PackSegment implements Closeable {
+
+    static final int HEADER_SIZE = 4 + 1 + 32 + 8 + 4;
+    static final byte FLAG_TOMBSTONE = 1;
+    static final byte FLAG_DEFLATED = 2;
+
+    private static final Logger logger = LogManager.getLogger(PackSegment.class);
+
+    private static final int MAGIC = 0x494d4750;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long id;
+    private final Path file;
+    private final FileChannel channel;
+    private final AtomicLong deadBytes = new AtomicLong();
+    // Number of open streams, -1 once the segment is closed
+    private final AtomicInteger readers = new AtomicInteger();
+    private volatile long size;
+    private volatile boolean sealed;
+    private volatile MappedByteBuffer mapped;
+
+    private PackSegment(long id, Path file, FileChannel channel) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    static PackSegment open(long id, Path file) throws IOException {
+        return new PackSegment(id, file, FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    long getId() {
+        return id;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    long size() {
+        return size;
+    }
+
+    long deadBytes() {
+        return deadBytes.get();
+    }
+
+    void addDeadBytes(long bytes) {
+        deadBytes.addAndGet(bytes);
+    }
+
+    PackEntry append(byte[] key, InputStream content, boolean deflate) throws IOException {
+        final long offset = size;
+        final long start = offset + HEADER_SIZE;
+        channel.position(start);
+        final CRC32 checksum = new CRC32();
+        final OutputStream target = new CheckedOutputStream(new FilterOutputStream(Channels.newOutputStream(channel)) {
+            @Override
+            public void write(byte[] bytes, int off, int len) throws IOException {
+                out.write(bytes, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        }, checksum);
+        final Deflater deflater = deflate ? new Deflater(Deflater.BEST_SPEED) : null;
+        try (OutputStream out = deflate ? new DeflaterOutputStream(target, deflater, BUFFER_SIZE) : target) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.truncate(offset);
+            throw e;
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        return finish(key, deflate ? FLAG_DEFLATED : 0, offset, channel.position() - start, (int) checksum.getValue());
+    }
+
+    PackEntry appendTombstone(byte[] key) throws IOException {
+        return finish(key, FLAG_TOMBSTONE, size, 0, (int) new CRC32().getValue());
+    }
+
+    /**
+     * Copies a whole record, header included, from another segment to the end of this one.
+     */
+    PackEntry copy(PackSegment source, PackEntry entry) throws IOException {
+        final long offset = size;
+        channel.position(offset);
+        long copied = 0;
+        while (copied < entry.getRecordSize()) {
+            copied += source.channel.transferTo(entry.getOffset() + copied, entry.getRecordSize() - copied, channel);
+        }
+        size = offset + entry.getRecordSize();
+        return new PackEntry(id, offset, entry.getLength(), entry.getFlags());
+    }
+
+    /**
+     * Marks the segment as complete. Nothing is appended to a sealed segment any more, which makes it safe to map.
+     */
+    void seal() {
+        sealed = true;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * The whole segment mapped read-only, or {@code null} while it is still written to or when it is too large
+     * for a single mapping. The mapping is created on first use and shared by all readers.
+     */
+    ByteBuffer mapped() throws IOException {
+        if (!sealed || size > Integer.MAX_VALUE) {
+            return null;
+        }
+        MappedByteBuffer buffer = mapped;
+        if (buffer == null) {
+            synchronized (this) {
+                buffer = mapped;
+                if (buffer == null) {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    mapped = buffer;
+                }
+            }
+        }
+        return buffer;
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Visits every complete record in file order and truncates the file after the last one. With {@code verify}
+     * the data of every record is read and checked against its checksum as well, which is only needed for the
+     * segment that was written to last: the others were forced to disk before they were sealed.
+     */
+    void scan(RecordVisitor visitor, boolean verify) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        final byte[] key = new byte[32];
+        final long fileSize = channel.size();
+        long offset = 0;
+        while (offset + HEADER_SIZE <= fileSize) {
+            header.clear();
+            readFully(header, offset);
+            header.flip();
+            final int magic = header.getInt();
+            final byte flags = header.get();
+            header.get(key);
+            final long length = header.getLong();
+            final int crc = header.getInt();
+            if (magic != MAGIC || length < 0 || offset + HEADER_SIZE + length > fileSize) {
+                break;
+            }
+            if (verify && checksum(offset + HEADER_SIZE, length) != crc) {
+                logger.warn(String.format("Record at [%d] of segment [%s] does not match its checksum", offset, file));
+                break;
+            }
+            visitor.visit(key.clone(), new PackEntry(id, offset, length, flags));
+            offset += HEADER_SIZE + length;
+        }
+        if (offset < fileSize) {
+            logger.warn(String.format("Segment [%s] ends with an incomplete record, truncating [%d] bytes",
+                    file, fileSize - offset));
+            channel.truncate(offset);
+        }
+        size = offset;
+    }
+
+    /**
+     * Registers a stream over the segment, see {@link #release()}.
+     *
+     * @return false when the segment is already closed
+     */
+    boolean acquire() {
+        while (true) {
+            final int current = readers.get();
+            if (current < 0) {
+                return false;
+            }
+            if (readers.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        readers.decrementAndGet();
+    }
+
+    /**
+     * Closes the segment unless a stream over it is still open.
+     *
+     * @return whether the segment is closed
+     */
+    boolean closeIfUnused() throws IOException {
+        if (readers.get() >= 0 && !readers.compareAndSet(0, -1)) {
+            return false;
+        }
+        channel.close();
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        readers.set(-1);
+        channel.close();
+    }
+
+    private int checksum(long position, long length) throws IOException {
+        final CRC32 checksum = new CRC32();
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long read = 0;
+        while (read < length) {
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, length - read));
+            readFully(buffer, position + read);
+            buffer.flip();
+            read += buffer.remaining();
+            checksum.update(buffer);
+        }
+        return (int) checksum.getValue();
+    }
+
+    private PackEntry finish(byte[] key, byte flags, long offset, long length, int crc) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).put(flags).put(key).putLong(length).putInt(crc).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, offset + header.position());
+        }
+        size = offset + HEADER_SIZE + length;
+        return new PackEntry(id, offset, length, flags);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException(String.format("Unexpected end of segment [%s]", file));
+            }
+        }
+    }
+
+    interface RecordVisitor {
+        void visit(byte[] key, PackEntry entry) throws IOException;
+    }
+}
@@ -0,0 +1,454 @@
+package com.images.storage.pack;
+
+import com.images.exception.BlobStoreException;
+import com.images.storage.BlobKeys;
+import com.images.storage.BlobLocation;
+import com.images.storage.StoredBlob;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Keeps many blobs in a few large append-only segment files under one directory. The index from key to record
+ * lives in memory and is rebuilt at startup by scanning the segments, later records winning over earlier ones.
+ * Deleting appends a tombstone; the space of deleted and replaced records is reclaimed by {@link #compact(double)},
+ * which copies the live records of mostly dead segments to the end of the store and retires the old files.
+ * Retired files are only removed on a following compaction once no stream reads them any more, so a reader
+ * holding an older entry can finish. Appends are forced to disk before they return.
+ */
+public class PackStore implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(PackStore.class);
+
+    private static final long PRUNE_INTERVAL_MS = 60_000;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("(\\d{12})\\.pack");
+    private static final String STAGED_SUFFIX = ".staged";
+
+    private final Path root;
+    private final long maxSegmentSize;
+    private final ConcurrentHashMap<String, PackEntry> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, PackSegment> segments = new ConcurrentSkipListMap<>();
+    private final List<PackSegment> retired = new ArrayList<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // When each blob was last appended or stored, guarded by the write lock
+    private final Map<String, Long> storedAt = new HashMap<>();
+    private long prunedBefore;
+    private PackSegment active;
+
+    public PackStore(Path root, long maxSegmentSize) {
+        this.root = root.toAbsolutePath();
+        // A sealed segment is mapped as a whole, and a single mapping cannot be larger than this
+        this.maxSegmentSize = Math.min(maxSegmentSize, Integer.MAX_VALUE);
+        try {
+            Files.createDirectories(this.root);
+            removeStaged();
+            final List<Path> files = segmentFiles();
+            for (int i = 0; i < files.size(); i++) {
+                final PackSegment segment = PackSegment.open(segmentId(files.get(i)), files.get(i));
+                segments.put(segment.getId(), segment);
+                // Only the last segment may end with an append a crash tore
+                segment.scan((key, entry) -> load(segment, BlobKeys.toHex(key), entry), i == files.size() - 1);
+            }
+            active = segments.isEmpty() ? openSegment(1) : segments.lastEntry().getValue();
+            segments.headMap(active.getId()).values().forEach(PackSegment::seal);
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Pack store [%s] could not be opened", this.root), e);
+        }
+        logger.info(String.format("Opened pack store [%s] with [%d] blobs in [%d] segments",
+                this.root, index.size(), segments.size()));
+    }
+
+    /**
+     * Appends the content under {@code key}, which the caller has already checked to be the content's hash.
+     * Content that is already stored is not written again.
+     */
+    public PackEntry append(String key, InputStream content, boolean deflate) {
+        final PackEntry entry;
+        writeLock.lock();
+        try {
+            storedAt.put(key, System.currentTimeMillis());
+            final PackEntry existing = index.get(key);
+            if (existing != null) {
+                entry = existing;
+            } else {
+                rollIfFull();
+                entry = active.append(BlobKeys.fromHex(key), content, deflate);
+                index.put(key, entry);
+            }
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Blob [%s] could not be appended to [%s]", key, root), e);
+        } finally {
+            writeLock.unlock();
+        }
+        // Outside the lock, so other appends go on while this one waits for the disk
+        force(entry);
+        return entry;
+    }
+
+    /**
+     * Appends the content and keys it by its hash. The content is staged in a file of its own and hashed on the
+     * way, so the lock is only held to copy it into the segment; content that is already stored is not copied.
+     */
+    public StoredBlob store(InputStream content) {
+        final MessageDigest digest = BlobKeys.newDigest();
+        Path staged = null;
+        try {
+            staged = Files.createTempFile(root, "upload-", STAGED_SUFFIX);
+            final long length = Files.copy(new DigestInputStream(content, digest), staged, StandardCopyOption.REPLACE_EXISTING);
+            final String key = BlobKeys.toHex(digest.digest());
+            try (InputStream stagedContent = Files.newInputStream(staged)) {
+                append(key, stagedContent, false);
+            }
+            return new StoredBlob(key, length);
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Blob could not be appended to [%s]", root), e);
+        } finally {
+            deleteStaged(staged);
+        }
+    }
+
+    public Optional<PackEntry> find(String key) {
+        return Optional.ofNullable(index.get(key));
+    }
+
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Opens the content of an entry, inflating it when it was stored deflated.
+     */
+    public InputStream open(PackEntry entry) {
+        final PackSegment segment = segmentOf(entry);
+        if (!segment.acquire()) {
+            throw new BlobStoreException(String.format("Segment [%d] of [%s] no longer exists", entry.getSegmentId(), root));
+        }
+        final InputStream data = new SegmentInputStream(segment, entry.getDataOffset(), entry.getLength());
+        return entry.isDeflated() ? new InflaterInputStream(data) : data;
+    }
+
+    /**
+     * Where the stored bytes of an entry are, with a view of the mapped segment once the segment is sealed. Unlike
+     * a stream the location does not hold on to the segment: the mapping stays valid after the segment is closed,
+     * and a reader that opens the file itself has until the compaction after next before it is removed.
+     */
+    public BlobLocation locationOf(PackEntry entry) {
+        final PackSegment segment = segmentOf(entry);
+        final ByteBuffer mapped;
+        try {
+            mapped = segment.mapped();
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Segment [%s] could not be mapped", segment.getFile()), e);
+        }
+        if (mapped == null) {
+            return new BlobLocation(segment.getFile(), entry.getDataOffset(), entry.getLength());
+        }
+        final ByteBuffer region = mapped.duplicate();
+        region.limit((int) (entry.getDataOffset() + entry.getLength()));
+        region.position((int) entry.getDataOffset());
+        return new BlobLocation(segment.getFile(), entry.getDataOffset(), entry.getLength(), region.slice());
+    }
+
+    public boolean delete(String key) {
+        writeLock.lock();
+        try {
+            final PackEntry entry = index.remove(key);
+            if (entry == null) {
+                return false;
+            }
+            markDead(entry);
+            rollIfFull();
+            markDead(active.appendTombstone(BlobKeys.fromHex(key)));
+            return true;
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Blob [%s] could not be deleted from [%s]", key, root), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the blob unless it was appended or stored again after {@code storedBefore}, see
+     * {@link com.images.storage.BlobStore#deleteUnlessStoredSince}. Store times are only kept in memory: uploads
+     * in flight do not survive a restart either.
+     */
+    public boolean deleteUnlessStoredSince(String key, Instant storedBefore) {
+        writeLock.lock();
+        try {
+            final Long stored = storedAt.get(key);
+            if (stored != null && stored > storedBefore.toEpochMilli()) {
+                return false;
+            }
+            storedAt.remove(key);
+            if (storedBefore.toEpochMilli() - prunedBefore > PRUNE_INTERVAL_MS) {
+                storedAt.values().removeIf(time -> time <= storedBefore.toEpochMilli());
+                prunedBefore = storedBefore.toEpochMilli();
+            }
+            return delete(key);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Marks a stored blob as stored again, like an upload of the same content would.
+     *
+     * @return whether the blob is stored
+     */
+    public boolean touch(String key) {
+        writeLock.lock();
+        try {
+            if (!index.containsKey(key)) {
+                return false;
+            }
+            storedAt.put(key, System.currentTimeMillis());
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Makes every append so far durable. Callers that remove the only other copy of a blob must call this first.
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            active.force();
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Pack store [%s] could not be flushed", root), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Rewrites every sealed segment whose share of dead bytes is at least {@code minDeadRatio} and returns the
+     * number of bytes reclaimed by that.
+     */
+    public long compact(double minDeadRatio) {
+        deleteRetired();
+        final List<PackSegment> candidates = segments.values().stream()
+                .filter(segment -> segment.isSealed() && segment.size() > 0
+                        && segment.deadBytes() >= segment.size() * minDeadRatio)
+                .collect(Collectors.toList());
+        long reclaimed = 0;
+        for (PackSegment segment : candidates) {
+            try {
+                segment.scan((key, entry) -> carryOver(segment, BlobKeys.toHex(key), key, entry), false);
+                flush();
+                reclaimed += segment.deadBytes();
+                segments.remove(segment.getId());
+                synchronized (retired) {
+                    retired.add(segment);
+                }
+                logger.info(String.format("Compacted segment [%s], [%d] bytes reclaimed",
+                        segment.getFile(), segment.deadBytes()));
+            } catch (IOException | RuntimeException e) {
+                logger.error(String.format("Segment [%s] could not be compacted", segment.getFile()), e);
+            }
+        }
+        return reclaimed;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public long totalBytes() {
+        return segments.values().stream().mapToLong(PackSegment::size).sum();
+    }
+
+    public long deadBytes() {
+        return segments.values().stream().mapToLong(PackSegment::deadBytes).sum();
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            // Streams still open at shutdown fail, their segments are removed like any other retired one
+            synchronized (retired) {
+                retired.forEach(PackStore::closeQuietly);
+            }
+            deleteRetired();
+            for (PackSegment segment : segments.values()) {
+                closeQuietly(segment);
+            }
+            segments.clear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void carryOver(PackSegment source, String hexKey, byte[] key, PackEntry entry) throws IOException {
+        writeLock.lock();
+        try {
+            if ((entry.getFlags() & PackSegment.FLAG_TOMBSTONE) != 0) {
+                // Only needed while an older segment may still hold a record the tombstone hides
+                if (!index.containsKey(hexKey) && segments.firstKey() < source.getId()) {
+                    rollIfFull();
+                    markDead(active.appendTombstone(key));
+                }
+            } else if (entry.equals(index.get(hexKey))) {
+                rollIfFull();
+                index.put(hexKey, active.copy(source, entry));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void load(PackSegment segment, String key, PackEntry entry) {
+        final PackEntry previous = (entry.getFlags() & PackSegment.FLAG_TOMBSTONE) != 0
+                ? index.remove(key)
+                : index.put(key, entry);
+        if (previous != null) {
+            markDead(previous);
+        }
+        if ((entry.getFlags() & PackSegment.FLAG_TOMBSTONE) != 0) {
+            segment.addDeadBytes(entry.getRecordSize());
+        }
+    }
+
+    private void markDead(PackEntry entry) {
+        final PackSegment segment = segments.get(entry.getSegmentId());
+        if (segment != null) {
+            segment.addDeadBytes(entry.getRecordSize());
+        }
+    }
+
+    private void rollIfFull() throws IOException {
+        if (active.size() < maxSegmentSize) {
+            return;
+        }
+        active.force();
+        active.seal();
+        active = openSegment(active.getId() + 1);
+    }
+
+    private PackSegment openSegment(long id) throws IOException {
+        final PackSegment segment = PackSegment.open(id, root.resolve(String.format("%012d.pack", id)));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private PackSegment segmentOf(PackEntry entry) {
+        PackSegment segment = segments.get(entry.getSegmentId());
+        if (segment == null) {
+            synchronized (retired) {
+                segment = retired.stream().filter(s -> s.getId() == entry.getSegmentId()).findFirst().orElse(null);
+            }
+        }
+        if (segment == null) {
+            throw new BlobStoreException(String.format("Segment [%d] of [%s] no longer exists", entry.getSegmentId(), root));
+        }
+        return segment;
+    }
+
+    private void deleteRetired() {
+        synchronized (retired) {
+            final Iterator<PackSegment> pending = retired.iterator();
+            while (pending.hasNext()) {
+                final PackSegment segment = pending.next();
+                try {
+                    if (!segment.closeIfUnused()) {
+                        logger.debug(String.format("Retired segment [%s] is still read, keeping it", segment.getFile()));
+                        continue;
+                    }
+                    Files.deleteIfExists(segment.getFile());
+                } catch (IOException e) {
+                    logger.warn(String.format("Retired segment [%s] could not be deleted", segment.getFile()), e);
+                }
+                pending.remove();
+            }
+        }
+    }
+
+    private void force(PackEntry entry) {
+        final PackSegment segment = segments.get(entry.getSegmentId());
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.force();
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Segment [%s] could not be forced to disk", segment.getFile()), e);
+        }
+    }
+
+    private void removeStaged() throws IOException {
+        try (Stream<Path> files = Files.list(root)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(STAGED_SUFFIX)).collect(Collectors.toList())) {
+                deleteStaged(file);
+            }
+        }
+    }
+
+    private static void deleteStaged(Path staged) {
+        if (staged == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(staged);
+        } catch (IOException e) {
+            logger.warn(String.format("Staged upload [%s] could not be deleted", staged), e);
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(root)) {
+            return files.filter(file -> SEGMENT_NAME.matcher(file.getFileName().toString()).matches())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long segmentId(Path file) {
+        final Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException(String.format("[%s] is not a segment file", file));
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private static void closeQuietly(PackSegment segment) {
+        try {
+            segment.close();
+        } catch (IOException e) {
+            logger.warn(String.format("Segment [%s] could not be closed", segment.getFile()), e);
+        }
+    }
+}
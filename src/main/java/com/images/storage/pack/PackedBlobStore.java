@@ -0,0 +1,137 @@
+package com.images.storage.pack;
+
+import com.images.exception.BlobStoreException;
+import com.images.storage.BlobKeys;
+import com.images.storage.BlobLocation;
+import com.images.storage.BlobStore;
+import com.images.storage.StoredBlob;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Keeps every blob as a record in large segment files instead of a file of its own, so millions of small images
+ * cost a handful of inodes. The in-memory index gives the segment, offset and length of any blob, which is then
+ * served with a single positioned read or straight from the mapped segment. Space of deleted blobs is reclaimed
+ * by a periodic compaction of the segments that are at least {@code images.storage.packed.compact-dead-ratio} dead.
+ */
+@Component
+@ConditionalOnProperty(name = "images.storage.engine", havingValue = "packed")
+public class PackedBlobStore implements BlobStore, MeterBinder {
+
+    private static final Logger logger = LogManager.getLogger(PackedBlobStore.class);
+
+    private final PackStore packStore;
+    private final Path root;
+    private final double compactDeadRatio;
+
+    @Autowired
+    public PackedBlobStore(@Value("${images.storage.root:data/images}") String root,
+                           @Value("${images.storage.packed.segment-size-mb:1024}") long segmentSizeMb,
+                           @Value("${images.storage.packed.compact-dead-ratio:0.3}") double compactDeadRatio) {
+        this(new PackStore(Paths.get(root).resolve("segments"), segmentSizeMb * 1024 * 1024), compactDeadRatio);
+    }
+
+    public PackedBlobStore(PackStore packStore, double compactDeadRatio) {
+        this.packStore = packStore;
+        this.root = packStore.getRoot();
+        this.compactDeadRatio = compactDeadRatio;
+    }
+
+    @Override
+    public StoredBlob store(InputStream content) {
+        return packStore.store(content);
+    }
+
+    @Override
+    public StoredBlob importFile(Path file, String key) {
+        if (!BlobKeys.isValid(key)) {
+            throw new BlobStoreException(String.format("Blob key [%s] is not valid", key));
+        }
+        try {
+            try (InputStream content = Files.newInputStream(file)) {
+                final PackEntry entry = packStore.append(key, content, false);
+                return new StoredBlob(key, entry.getLength());
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("File [%s] could not be imported", file), e);
+        }
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return BlobKeys.isValid(key) && packStore.contains(key);
+    }
+
+    @Override
+    public Optional<BlobLocation> locate(String key) {
+        if (!BlobKeys.isValid(key)) {
+            return Optional.empty();
+        }
+        return packStore.find(key).map(packStore::locationOf);
+    }
+
+    @Override
+    public void delete(String key) {
+        if (BlobKeys.isValid(key)) {
+            packStore.delete(key);
+        }
+    }
+
+    @Override
+    public boolean deleteUnlessStoredSince(String key, Instant storedBefore) {
+        return BlobKeys.isValid(key) && packStore.deleteUnlessStoredSince(key, storedBefore);
+    }
+
+    @Scheduled(fixedDelayString = "${images.storage.packed.compact-interval-ms:300000}")
+    public long compact() {
+        final long reclaimed = packStore.compact(compactDeadRatio);
+        if (reclaimed > 0) {
+            logger.info(String.format("Compaction of [%s] reclaimed [%d] bytes", root, reclaimed));
+        }
+        return reclaimed;
+    }
+
+    @PreDestroy
+    public void close() {
+        packStore.close();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("images.storage.disk.free", this, store -> store.root.toFile().getUsableSpace())
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("images.storage.disk.total", this, store -> store.root.toFile().getTotalSpace())
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("images.storage.packed.blobs", this, store -> store.packStore.size())
+                .register(registry);
+        Gauge.builder("images.storage.packed.segments", this, store -> store.packStore.segmentCount())
+                .register(registry);
+        Gauge.builder("images.storage.packed.size", this, store -> store.packStore.totalBytes())
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("images.storage.packed.dead", this, store -> store.packStore.deadBytes())
+                .baseUnit("bytes")
+                .register(registry);
+    }
+}
@@ -0,0 +1,62 @@
+package com.images.storage.pack;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a region of a segment with positional reads, so any number of readers can share the channel. The stream
+ * takes over a reference the caller {@link PackSegment#acquire() acquired} and releases it when closed.
+ */
+class SegmentInputStream extends InputStream {
+
+    private final PackSegment segment;
+    private final long end;
+    private long position;
+    private boolean closed;
+
+    SegmentInputStream(PackSegment segment, long offset, long length) {
+        this.segment = segment;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int off, int len) throws IOException {
+        if (position >= end) {
+            return -1;
+        }
+        final int wanted = (int) Math.min(len, end - position);
+        final int read = segment.getChannel().read(ByteBuffer.wrap(buffer, off, wanted), position);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) {
+        final long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            segment.release();
+        }
+    }
+}
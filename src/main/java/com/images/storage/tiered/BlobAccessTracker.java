@@ -0,0 +1,154 @@
+package com.images.storage.tiered;
+
+import com.images.domain.BlobAccessStats;
+import com.images.domain.BlobTier;
+import com.images.repository.BlobAccessStatsRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Counts blob reads in memory and writes them to {@code blob_access_stats} in batches. Every blob has a
+ * {@link LongAdder}, whose cells spread concurrent reads of a popular blob over several counters, inside a
+ * {@link ConcurrentHashMap}, so recording a read never takes a lock shared with other blobs or touches the database.
+ * A blob stays in memory for one more flush after its last read, which lets the mover see very recent reads
+ * that the database does not know about yet.
+ */
+@Component
+@ConditionalOnProperty(name = "images.storage.engine", havingValue = "tiered")
+public class BlobAccessTracker implements MeterBinder {
+
+    private static final Logger logger = LogManager.getLogger(BlobAccessTracker.class);
+
+    private final ConcurrentHashMap<String, Access> accesses = new ConcurrentHashMap<>();
+    private final BlobAccessStatsRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public BlobAccessTracker(BlobAccessStatsRepository repository, PlatformTransactionManager transactionManager,
+                             @Value("${images.storage.tiers.access-batch-size:500}") int batchSize) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    public void record(String key) {
+        Access access = accesses.get(key);
+        if (access == null) {
+            access = accesses.computeIfAbsent(key, k -> new Access());
+        }
+        access.hit(System.currentTimeMillis());
+    }
+
+    public boolean accessedSince(String key, Instant since) {
+        final Access access = accesses.get(key);
+        return access != null && access.lastAccess >= since.toEpochMilli();
+    }
+
+    @Scheduled(fixedDelayString = "${images.storage.tiers.access-flush-interval-ms:10000}")
+    public synchronized int flush() {
+        final List<Pending> pending = new ArrayList<>();
+        for (Map.Entry<String, Access> entry : accesses.entrySet()) {
+            final long count = entry.getValue().count.sumThenReset();
+            if (count == 0) {
+                accesses.remove(entry.getKey(), entry.getValue());
+            } else {
+                pending.add(new Pending(entry.getKey(), count, entry.getValue().lastAccess));
+            }
+        }
+
+        int flushed = 0;
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            final List<Pending> batch = pending.subList(from, Math.min(pending.size(), from + batchSize));
+            try {
+                transactionTemplate.executeWithoutResult(status -> write(batch));
+                flushed += batch.size();
+            } catch (RuntimeException e) {
+                logger.warn(String.format("Access counts of [%d] blobs could not be written, retrying on the next flush",
+                        batch.size()), e);
+                batch.forEach(this::restore);
+            }
+        }
+        return flushed;
+    }
+
+    private void write(List<Pending> batch) {
+        final Map<String, BlobAccessStats> existing = StreamSupport.stream(
+                        repository.findAllById(batch.stream().map(Pending::getKey).collect(Collectors.toList()))
+                                .spliterator(), false)
+                .collect(Collectors.toMap(BlobAccessStats::getBlobKey, Function.identity()));
+        final List<BlobAccessStats> changed = new ArrayList<>(batch.size());
+        for (Pending access : batch) {
+            final BlobAccessStats stats = existing.getOrDefault(access.getKey(), BlobAccessStats.builder()
+                    .blobKey(access.getKey())
+                    .build());
+            stats.setAccessCount(stats.getAccessCount() + access.getCount());
+            final Instant lastAccessed = Instant.ofEpochMilli(access.getLastAccess());
+            if (stats.getLastAccessed() == null || stats.getLastAccessed().isBefore(lastAccessed)) {
+                stats.setLastAccessed(lastAccessed);
+            }
+            // Reading a cold blob promotes it, so whatever was read is hot now
+            stats.setTier(BlobTier.HOT);
+            changed.add(stats);
+        }
+        repository.saveAll(changed);
+    }
+
+    private void restore(Pending pending) {
+        final Access access = accesses.computeIfAbsent(pending.getKey(), k -> new Access());
+        access.count.add(pending.getCount());
+        if (access.lastAccess < pending.getLastAccess()) {
+            access.lastAccess = pending.getLastAccess();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("images.storage.access.pending", this, tracker -> tracker.accesses.size())
+                .register(registry);
+    }
+
+    private static class Access {
+
+        private final LongAdder count = new LongAdder();
+        private volatile long lastAccess;
+
+        void hit(long now) {
+            count.increment();
+            // Writing the shared field on every read would make the cores fight over its cache line
+            if (now - lastAccess >= 1000) {
+                lastAccess = now;
+            }
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Pending {
+        private final String key;
+        private final long count;
+        private final long lastAccess;
+    }
+}
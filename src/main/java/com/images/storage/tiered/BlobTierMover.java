@@ -0,0 +1,77 @@
+package com.images.storage.tiered;
+
+import com.images.domain.BlobTier;
+import com.images.repository.BlobAccessStatsRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Moves blobs that were not read for {@code images.storage.tiers.demote-after-hours} to the cold tier, a batch at
+ * a time, and compacts the cold tier afterwards. Blobs come back to the hot tier when they are read.
+ */
+@Component
+@ConditionalOnProperty(name = "images.storage.engine", havingValue = "tiered")
+public class BlobTierMover {
+
+    private static final Logger logger = LogManager.getLogger(BlobTierMover.class);
+
+    private final TieredBlobStore blobStore;
+    private final BlobAccessStatsRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration demoteAfter;
+    private final int batchSize;
+    private final double compactDeadRatio;
+
+    @Autowired
+    public BlobTierMover(TieredBlobStore blobStore, BlobAccessStatsRepository repository,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${images.storage.tiers.demote-after-hours:168}") long demoteAfterHours,
+                         @Value("${images.storage.tiers.move-batch-size:100}") int batchSize,
+                         @Value("${images.storage.tiers.cold.compact-dead-ratio:0.5}") double compactDeadRatio) {
+        this.blobStore = blobStore;
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.demoteAfter = Duration.ofHours(demoteAfterHours);
+        this.batchSize = batchSize;
+        this.compactDeadRatio = compactDeadRatio;
+    }
+
+    @Scheduled(fixedDelayString = "${images.storage.tiers.move-interval-ms:60000}")
+    public void move() {
+        final long demoted = demote(Instant.now().minus(demoteAfter));
+        final long reclaimed = blobStore.compactColdTier(compactDeadRatio);
+        if (demoted > 0 || reclaimed > 0) {
+            logger.info(String.format("Moved [%d] blobs to the cold tier, reclaimed [%d] bytes", demoted, reclaimed));
+        }
+    }
+
+    synchronized long demote(Instant accessedBefore) {
+        long demoted = 0;
+        while (true) {
+            final List<String> keys = repository.findKeysByTierAccessedBefore(BlobTier.HOT, accessedBefore,
+                    PageRequest.of(0, batchSize));
+            final List<String> moved = keys.isEmpty() ? keys : blobStore.demote(keys, accessedBefore);
+            // Blobs that were read meanwhile or could not be moved stay in the query, stop once a batch holds only those
+            if (moved.isEmpty()) {
+                return demoted;
+            }
+            transactionTemplate.executeWithoutResult(status -> repository.updateTier(moved, BlobTier.COLD));
+            demoted += moved.size();
+            if (keys.size() < batchSize) {
+                return demoted;
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.images.storage.tiered;
+
+import com.images.exception.BlobStoreException;
+import com.images.storage.BlobKeys;
+import com.images.storage.BlobLocation;
+import com.images.storage.BlobStore;
+import com.images.storage.FileSystemBlobStore;
+import com.images.storage.StoredBlob;
+import com.images.storage.pack.PackEntry;
+import com.images.storage.pack.PackStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Two tier blob storage. New content goes to the hot tier, plain files on fast local disk laid out like
+ * {@link FileSystemBlobStore}. Blobs that were not read for a while are moved by {@link BlobTierMover} to the
+ * cold tier, deflated records in the append-only segment files of a {@link PackStore}, usually on cheaper disk.
+ * Reading a cold blob copies it back to the hot tier first, so callers always get a plain file, and storing
+ * content that is cold drops the cold copy. Reads and moves of the same key are serialized, so a file handed to a
+ * reader has its access recorded before a demotion decides whether to remove it.
+ * Every read and write is counted by the {@link BlobAccessTracker}.
+ */
+@Component
+@ConditionalOnProperty(name = "images.storage.engine", havingValue = "tiered")
+public class TieredBlobStore implements BlobStore, MeterBinder {
+
+    private static final Logger logger = LogManager.getLogger(TieredBlobStore.class);
+
+    private final FileSystemBlobStore hot;
+    private final PackStore cold;
+    private final BlobAccessTracker accessTracker;
+    private final Object[] keyLocks = new Object[256];
+    private Counter promotedCounter;
+    private Counter demotedCounter;
+
+    @Autowired
+    public TieredBlobStore(@Value("${images.storage.tiers.hot.root:${images.storage.root:data/images}}") String hotRoot,
+                           @Value("${images.storage.tiers.cold.root:${images.storage.root:data/images}/cold}") String coldRoot,
+                           @Value("${images.storage.tiers.cold.segment-size-mb:256}") long segmentSizeMb,
+                           BlobAccessTracker accessTracker) {
+        this(new FileSystemBlobStore(hotRoot), new PackStore(Paths.get(coldRoot), segmentSizeMb * 1024 * 1024),
+                accessTracker);
+    }
+
+    public TieredBlobStore(FileSystemBlobStore hot, PackStore cold, BlobAccessTracker accessTracker) {
+        this.hot = hot;
+        this.cold = cold;
+        this.accessTracker = accessTracker;
+        for (int i = 0; i < keyLocks.length; i++) {
+            keyLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public StoredBlob store(InputStream content) {
+        return stored(hot.store(content));
+    }
+
+    @Override
+    public StoredBlob importFile(Path file, String key) {
+        return stored(hot.importFile(file, key));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return hot.exists(key) || cold.contains(key);
+    }
+
+    @Override
+    public Optional<BlobLocation> locate(String key) {
+        if (!BlobKeys.isValid(key)) {
+            return Optional.empty();
+        }
+        // The access is recorded before the lock is released, so a demotion running next keeps the hot file
+        synchronized (lockOf(key)) {
+            Optional<BlobLocation> location = hot.locate(key);
+            if (!location.isPresent()) {
+                location = promote(key);
+            }
+            if (location.isPresent()) {
+                accessTracker.record(key);
+            }
+            return location;
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        hot.delete(key);
+        if (BlobKeys.isValid(key)) {
+            cold.delete(key);
+        }
+    }
+
+    /**
+     * A blob stored again after {@code storedBefore} has a recent hot copy, which keeps both copies.
+     */
+    @Override
+    public boolean deleteUnlessStoredSince(String key, Instant storedBefore) {
+        if (!BlobKeys.isValid(key)) {
+            return false;
+        }
+        final boolean hotDeleted = hot.deleteUnlessStoredSince(key, storedBefore);
+        if (hot.exists(key)) {
+            return false;
+        }
+        return cold.deleteUnlessStoredSince(key, storedBefore) || hotDeleted;
+    }
+
+    /**
+     * Moves the given hot blobs to the cold tier unless they were read after {@code accessedBefore}, and returns
+     * the keys that are no longer in the hot tier. The hot files are removed only once the whole batch is durable in the cold tier.
+     */
+    public List<String> demote(List<String> keys, Instant accessedBefore) {
+        final List<String> copied = new ArrayList<>(keys.size());
+        final List<String> demoted = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            if (!BlobKeys.isValid(key) || accessTracker.accessedSince(key, accessedBefore)) {
+                continue;
+            }
+            final Optional<BlobLocation> location = hot.locate(key);
+            if (!location.isPresent()) {
+                demoted.add(key);
+                continue;
+            }
+            try (InputStream content = Files.newInputStream(location.get().getFile())) {
+                cold.append(key, content, true);
+                copied.add(key);
+            } catch (IOException | BlobStoreException e) {
+                logger.warn(String.format("Blob [%s] could not be moved to the cold tier", key), e);
+            }
+        }
+        if (copied.isEmpty()) {
+            return demoted;
+        }
+
+        cold.flush();
+        for (String key : copied) {
+            synchronized (lockOf(key)) {
+                if (accessTracker.accessedSince(key, accessedBefore)) {
+                    // Read or stored again while it was copied, keep it hot
+                    cold.delete(key);
+                    continue;
+                }
+                hot.delete(key);
+            }
+            demoted.add(key);
+            if (demotedCounter != null) {
+                demotedCounter.increment();
+            }
+        }
+        return demoted;
+    }
+
+    public long compactColdTier(double minDeadRatio) {
+        return cold.compact(minDeadRatio);
+    }
+
+    /**
+     * Content stored again while it is cold has a fresh hot copy now, the cold one would only take up space.
+     */
+    private StoredBlob stored(StoredBlob blob) {
+        synchronized (lockOf(blob.getKey())) {
+            accessTracker.record(blob.getKey());
+            if (cold.delete(blob.getKey())) {
+                logger.debug(String.format("Blob [%s] stored again, dropping the cold copy", blob.getKey()));
+            }
+        }
+        return blob;
+    }
+
+    private Optional<BlobLocation> promote(String key) {
+        final Optional<PackEntry> entry = cold.find(key);
+        if (!entry.isPresent()) {
+            return Optional.empty();
+        }
+        try (InputStream content = cold.open(entry.get())) {
+            final StoredBlob blob = hot.store(content);
+            if (!blob.getKey().equals(key)) {
+                hot.delete(blob.getKey());
+                throw new BlobStoreException(String.format("Cold copy of blob [%s] is corrupt", key));
+            }
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Blob [%s] could not be moved to the hot tier", key), e);
+        }
+        cold.delete(key);
+        if (promotedCounter != null) {
+            promotedCounter.increment();
+        }
+        logger.debug(String.format("Blob [%s] moved back to the hot tier", key));
+        return hot.locate(key);
+    }
+
+    // One lock per value of the first key byte, taken around moves between the tiers and around reads of the hot tier
+    private Object lockOf(String key) {
+        return keyLocks[Integer.parseInt(key.substring(0, 2), 16)];
+    }
+
+    @PreDestroy
+    public void close() {
+        cold.close();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        hot.bindTo(registry);
+        Gauge.builder("images.storage.cold.blobs", this, store -> store.cold.size())
+                .register(registry);
+        Gauge.builder("images.storage.cold.size", this, store -> store.cold.totalBytes())
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("images.storage.cold.dead", this, store -> store.cold.deadBytes())
+                .baseUnit("bytes")
+                .register(registry);
+        promotedCounter = Counter.builder("images.storage.promoted").register(registry);
+        demotedCounter = Counter.builder("images.storage.demoted").register(registry);
+    }
+}
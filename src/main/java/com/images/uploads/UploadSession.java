@@ -0,0 +1,64 @@
+package com.images.uploads;
+
+import com.images.storage.StoredBlob;
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One resumable upload: the part file received so far and the digest of exactly those bytes. Chunks and the
+ * final completion hold the lock, readers of the offset do not need it. Once the content has been moved to the
+ * blob store the session keeps the stored blob, and once completed what the completion returned.
+ */
+@Getter
+public class UploadSession {
+
+    private final UUID id;
+    private final long length;
+    private final Path file;
+    private final MessageDigest digest;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile long offset;
+    private volatile Instant lastActivity;
+    private volatile boolean closed;
+    private volatile StoredBlob blob;
+    private volatile Object result;
+
+    UploadSession(UUID id, long length, Path file, MessageDigest digest, Instant created) {
+        this.id = id;
+        this.length = length;
+        this.file = file;
+        this.digest = digest;
+        this.lastActivity = created;
+    }
+
+    void advance(long bytes, Instant now) {
+        offset += bytes;
+        lastActivity = now;
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    void imported(StoredBlob blob) {
+        this.blob = blob;
+    }
+
+    void completed(Object result, Instant now) {
+        this.result = result;
+        lastActivity = now;
+    }
+
+    public boolean isComplete() {
+        return offset == length;
+    }
+
+    public boolean isCompleted() {
+        return result != null;
+    }
+}
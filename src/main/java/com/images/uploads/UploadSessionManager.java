@@ -0,0 +1,326 @@
+package com.images.uploads;
+
+import com.images.exception.BlobStoreException;
+import com.images.exception.UploadConflictException;
+import com.images.exception.UploadNotFoundException;
+import com.images.storage.BlobKeys;
+import com.images.storage.BlobStore;
+import com.images.storage.StoredBlob;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Resumable uploads in the spirit of the tus protocol. A session is created with the total length, chunks are
+ * appended at the current offset straight to a part file under {@code images.uploads.root} while the SHA-256 is
+ * updated, and a complete session is handed to the {@link BlobStore} without reading the content again.
+ *
+ * <p>Sessions live in memory, next to every part file a small info file keeps the length of the upload. At
+ * startup the sessions of part files with an info file are restored, hashing what they received so far, and
+ * anything else in the directory is removed. Sessions idle for longer than {@code images.uploads.expire-after-seconds}
+ * are dropped together with their files. A completed session is kept for that long as well, so completing it again
+ * returns the same result, but not across a restart. The number of open sessions is published as
+ * {@code images.uploads.active}.</p>
+ */
+@Component
+public class UploadSessionManager implements MeterBinder {
+
+    private static final Logger logger = LogManager.getLogger(UploadSessionManager.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String PART_SUFFIX = ".part";
+    private static final String INFO_SUFFIX = ".info";
+    private static final String LENGTH_PROPERTY = "length";
+
+    private final BlobStore blobStore;
+    private final Path root;
+    private final long maxLength;
+    private final Duration expireAfter;
+    private final Map<UUID, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public UploadSessionManager(BlobStore blobStore,
+                                @Value("${images.uploads.root:data/uploads}") String root,
+                                @Value("${images.uploads.max-length:1073741824}") long maxLength,
+                                @Value("${images.uploads.expire-after-seconds:86400}") long expireAfterSeconds) {
+        this.blobStore = blobStore;
+        this.root = Paths.get(root).toAbsolutePath();
+        this.maxLength = maxLength;
+        this.expireAfter = Duration.ofSeconds(expireAfterSeconds);
+        try {
+            Files.createDirectories(this.root);
+            restoreSessions();
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Upload directory [%s] could not be prepared", this.root), e);
+        }
+    }
+
+    public long getMaxLength() {
+        return maxLength;
+    }
+
+    public UploadSession create(long length) {
+        if (length < 0 || length > maxLength) {
+            throw new IllegalArgumentException(String.format("Upload length should be between 0 and %d", maxLength));
+        }
+        final UUID id = UUID.randomUUID();
+        final Path file = root.resolve(id + PART_SUFFIX);
+        try {
+            final Properties info = new Properties();
+            info.setProperty(LENGTH_PROPERTY, String.valueOf(length));
+            try (OutputStream output = Files.newOutputStream(infoFile(id))) {
+                info.store(output, null);
+            }
+            Files.createFile(file);
+        } catch (IOException e) {
+            deleteQuietly(infoFile(id));
+            throw new BlobStoreException(String.format("Upload [%s] could not be created", id), e);
+        }
+        final UploadSession session = new UploadSession(id, length, file, BlobKeys.newDigest(), Instant.now());
+        sessions.put(id, session);
+        return session;
+    }
+
+    public Optional<UploadSession> find(UUID id) {
+        return Optional.ofNullable(sessions.get(id));
+    }
+
+    /**
+     * Appends a chunk that has to start at the current offset. Bytes received before the client went away are
+     * kept, so the client can ask for the offset and carry on from there.
+     *
+     * @return offset after the chunk
+     */
+    public long append(UUID id, long offset, InputStream chunk) throws IOException {
+        final UploadSession session = lock(id);
+        try {
+            if (offset != session.getOffset()) {
+                throw new UploadConflictException(String.format("Upload [%s] is at offset [%d], not [%d]",
+                        id, session.getOffset(), offset));
+            }
+            try (ReadableByteChannel source = Channels.newChannel(chunk);
+                 FileChannel target = FileChannel.open(session.getFile(), StandardOpenOption.WRITE)) {
+                target.position(offset);
+                final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                while (source.read(buffer) != -1) {
+                    buffer.flip();
+                    final int bytes = buffer.remaining();
+                    if (session.getOffset() + bytes > session.getLength()) {
+                        throw new UploadConflictException(String.format("Chunk goes past the length [%d] of upload [%s]",
+                                session.getLength(), id));
+                    }
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                    // Digest and offset only move once the bytes are on disk, so both still match after a failure
+                    buffer.rewind();
+                    session.getDigest().update(buffer);
+                    session.advance(bytes, Instant.now());
+                    buffer.clear();
+                }
+            }
+            return session.getOffset();
+        } finally {
+            session.getLock().unlock();
+        }
+    }
+
+    /**
+     * Completes a session that received all its bytes: moves the content into the {@link BlobStore} and hands the
+     * stored blob to {@code commit}, which e.g. creates the image. The session only counts as completed once
+     * {@code commit} returns; when it fails the stored blob stays with the session and completing again retries
+     * {@code commit} alone. Completing a completed session returns what {@code commit} returned the first time.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T complete(UUID id, Function<StoredBlob, T> commit) {
+        final UploadSession session = lock(id);
+        try {
+            if (session.isCompleted()) {
+                return (T) session.getResult();
+            }
+            if (!session.isComplete()) {
+                throw new UploadConflictException(String.format("Upload [%s] has [%d] of [%d] bytes",
+                        id, session.getOffset(), session.getLength()));
+            }
+            if (session.getBlob() == null) {
+                session.imported(blobStore.importFile(session.getFile(), BlobKeys.toHex(session.getDigest().digest())));
+                deleteQuietly(session.getFile());
+            }
+            final T result = commit.apply(session.getBlob());
+            session.completed(result, Instant.now());
+            deleteQuietly(infoFile(id));
+            return result;
+        } finally {
+            session.getLock().unlock();
+        }
+    }
+
+    public void cancel(UUID id) {
+        final UploadSession session = lock(id);
+        try {
+            close(session);
+        } finally {
+            session.getLock().unlock();
+            deleteFiles(session);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${images.uploads.cleanup-interval-ms:60000}")
+    public void expireIdleSessions() {
+        expireIdleSessions(Instant.now());
+    }
+
+    int expireIdleSessions(Instant now) {
+        final Instant idleSince = now.minus(expireAfter);
+        int expired = 0;
+        for (UploadSession session : sessions.values()) {
+            // A session busy with a chunk is not idle, whatever its last activity says
+            if (session.getLastActivity().isBefore(idleSince) && session.getLock().tryLock()) {
+                try {
+                    close(session);
+                } finally {
+                    session.getLock().unlock();
+                }
+                deleteFiles(session);
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            logger.info(String.format("Expired [%d] idle uploads", expired));
+        }
+        return expired;
+    }
+
+    int size() {
+        return (int) sessions.values().stream().filter(session -> !session.isCompleted()).count();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("images.uploads.active", this, UploadSessionManager::size).register(registry);
+    }
+
+    private UploadSession lock(UUID id) {
+        final UploadSession session = sessions.get(id);
+        if (session == null) {
+            throw new UploadNotFoundException(String.format("Upload [%s] is not found", id));
+        }
+        if (!session.getLock().tryLock()) {
+            throw new UploadConflictException(String.format("Upload [%s] is busy with another request", id));
+        }
+        if (session.isClosed()) {
+            session.getLock().unlock();
+            throw new UploadNotFoundException(String.format("Upload [%s] is not found", id));
+        }
+        return session;
+    }
+
+    private void close(UploadSession session) {
+        session.close();
+        sessions.remove(session.getId());
+    }
+
+    private void restoreSessions() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+            stream.forEach(files::add);
+        }
+        for (Path file : files) {
+            final String name = file.getFileName().toString();
+            if (name.endsWith(PART_SUFFIX)) {
+                final String id = name.substring(0, name.length() - PART_SUFFIX.length());
+                if (!restore(file, id)) {
+                    deleteQuietly(file);
+                    deleteQuietly(root.resolve(id + INFO_SUFFIX));
+                }
+            } else if (!name.endsWith(INFO_SUFFIX)
+                    || !Files.exists(root.resolve(name.substring(0, name.length() - INFO_SUFFIX.length()) + PART_SUFFIX))) {
+                deleteQuietly(file);
+            }
+        }
+        if (!sessions.isEmpty()) {
+            logger.info(String.format("Restored [%d] unfinished uploads from [%s]", sessions.size(), root));
+        }
+    }
+
+    /**
+     * Restores the session of a part file, its idle time starting now.
+     *
+     * @return false when the part file does not belong to a session that can be carried on
+     */
+    private boolean restore(Path file, String name) throws IOException {
+        final UUID id;
+        final long length;
+        try {
+            id = UUID.fromString(name);
+            final Properties info = new Properties();
+            try (InputStream input = Files.newInputStream(infoFile(id))) {
+                info.load(input);
+            }
+            length = Long.parseLong(info.getProperty(LENGTH_PROPERTY));
+        } catch (IllegalArgumentException | IOException e) {
+            logger.warn(String.format("Upload file [%s] has no valid session info, removing it", file));
+            return false;
+        }
+        final long offset = Files.size(file);
+        if (offset > length) {
+            return false;
+        }
+        final MessageDigest digest = BlobKeys.newDigest();
+        try (InputStream content = new DigestInputStream(Files.newInputStream(file), digest)) {
+            content.transferTo(OutputStream.nullOutputStream());
+        }
+        final UploadSession session = new UploadSession(id, length, file, digest, Instant.now());
+        session.advance(offset, Instant.now());
+        sessions.put(id, session);
+        return true;
+    }
+
+    private Path infoFile(UUID id) {
+        return root.resolve(id + INFO_SUFFIX);
+    }
+
+    private void deleteFiles(UploadSession session) {
+        deleteQuietly(session.getFile());
+        deleteQuietly(infoFile(session.getId()));
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn(String.format("Upload file [%s] could not be deleted", path), e);
+        }
+    }
+}
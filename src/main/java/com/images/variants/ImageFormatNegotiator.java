@@ -0,0 +1,106 @@
+package com.images.variants;
+
+import com.images.domain.Image;
+import com.images.imaging.ImageEncoder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Picks the format {@code GET /image/{uuid}/content} is served in from the {@code Accept} header.
+ *
+ * <p>Formats from {@code images.content.formats} are offered in that order, but only when an ImageIO writer for
+ * them is installed and the client names their media type explicitly: {@code image/*} or {@code *}{@code /*}
+ * say nothing about what a client decodes best, so they keep the uploaded file. Gifs may be animated and very
+ * large images are too expensive to decode on request, both are always served as uploaded.</p>
+ */
+@Component
+public class ImageFormatNegotiator {
+
+    private static final Logger logger = LogManager.getLogger(ImageFormatNegotiator.class);
+
+    // Format by media type, in order of preference
+    private final Map<String, String> formats = new LinkedHashMap<>();
+    private final long maxPixels;
+
+    @Autowired
+    public ImageFormatNegotiator(@Value("${images.content.formats:avif,webp}") String formats,
+                                 @Value("${images.content.max-transcode-pixels:${images.transform.max-pixels:40000000}}") long maxPixels) {
+        this.maxPixels = maxPixels;
+        // Writers like webp come from jars, scanning again finds them also when ImageIO was first used with another class loader
+        ImageIO.scanForPlugins();
+        for (String format : formats.split(",")) {
+            final String name = format.trim().toLowerCase(Locale.ROOT);
+            if (name.isEmpty()) {
+                continue;
+            }
+            final Optional<String> mimeType = ImageEncoder.mimeType(name);
+            if (mimeType.isPresent()) {
+                this.formats.put(mimeType.get().toLowerCase(Locale.ROOT), name);
+            } else {
+                logger.info(String.format("No image writer for format [%s], content is not transcoded to it", name));
+            }
+        }
+    }
+
+    public List<String> getFormats() {
+        return Collections.unmodifiableList(new ArrayList<>(formats.values()));
+    }
+
+    /**
+     * @return the format to transcode the image to, or empty when the uploaded content should be served
+     */
+    public Optional<String> negotiate(Image image, String accept) {
+        if (formats.isEmpty() || accept == null || !isTranscodable(image)) {
+            return Optional.empty();
+        }
+        final List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return Optional.empty();
+        }
+
+        String bestMimeType = null;
+        double bestQuality = 0;
+        for (String mimeType : formats.keySet()) {
+            final double quality = quality(accepted, MediaType.parseMediaType(mimeType));
+            if (quality > bestQuality) {
+                bestMimeType = mimeType;
+                bestQuality = quality;
+            }
+        }
+        if (bestMimeType == null || bestMimeType.equalsIgnoreCase(image.getMimeType())) {
+            return Optional.empty();
+        }
+        return Optional.of(formats.get(bestMimeType));
+    }
+
+    private boolean isTranscodable(Image image) {
+        return image.getMimeType() != null && image.getWidth() != null && image.getHeight() != null
+                && !MediaType.IMAGE_GIF_VALUE.equalsIgnoreCase(image.getMimeType())
+                && (long) image.getWidth() * image.getHeight() <= maxPixels;
+    }
+
+    private static double quality(List<MediaType> accepted, MediaType mimeType) {
+        for (MediaType mediaType : accepted) {
+            if (!mediaType.isWildcardType() && !mediaType.isWildcardSubtype() && mediaType.equalsTypeAndSubtype(mimeType)) {
+                return mediaType.getQualityValue();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,55 @@
+package com.images.variants;
+
+import com.images.domain.Image;
+import com.images.imaging.ResizeFit;
+import com.images.storage.BlobKeys;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Resize requested through {@code GET /image/{uuid}/transform}. A size of 0 leaves that dimension free.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class ImageTransform {
+
+    public static final int MAX_SIZE = 4096;
+
+    private final int width;
+    private final int height;
+    private final ResizeFit fit;
+
+    /**
+     * @return a description of what is wrong with the transform, or {@code null} when it is valid
+     */
+    public String validate() {
+        if (width < 0 || width > MAX_SIZE || height < 0 || height > MAX_SIZE) {
+            return String.format("Width and height should be between 1 and %d", MAX_SIZE);
+        }
+        if (width == 0 && height == 0) {
+            return "Width or height should be given";
+        }
+        if (fit != ResizeFit.CONTAIN && (width == 0 || height == 0)) {
+            return String.format("Both width and height should be given to %s", fit.name().toLowerCase());
+        }
+        return null;
+    }
+
+    /**
+     * Key of the transformed content in the {@link com.images.cache.TransformCache}. It changes whenever the
+     * image is updated, so stale entries are never served and simply age out of the cache.
+     */
+    public String cacheKey(Image image) {
+        final String source = String.join("|", image.getUuid().toString(), String.valueOf(image.getDateUpdated()),
+                image.getPath(), String.valueOf(width), String.valueOf(height), fit.name());
+        final MessageDigest digest = BlobKeys.newDigest();
+        return BlobKeys.toHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+    }
+}
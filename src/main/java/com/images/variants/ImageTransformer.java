@@ -0,0 +1,113 @@
+package com.images.variants;
+
+import com.images.cache.TransformCache;
+import com.images.domain.Image;
+import com.images.exception.TranscodeRejectedException;
+import com.images.exception.UnsupportedImageException;
+import com.images.imaging.ImageDecoder;
+import com.images.imaging.ImageEncoder;
+import com.images.imaging.ImageResizer;
+import com.images.storage.BlobKeys;
+import com.images.storage.BlobLocation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Resizes and transcodes images on request. Results go through the {@link TransformCache}, so an image is only decoded
+ * and encoded the first time a given transform of it is asked for, however many requests arrive at once. Images with
+ * more than {@code images.transform.max-pixels} pixels are refused before they are decoded. At most
+ * {@code images.content.max-concurrent-transcodes} decodes run at once, resizes and transcodes together, so the
+ * memory they take stays within that many pixel budgets.
+ */
+@Component
+public class ImageTransformer {
+
+    private final TransformCache transformCache;
+    private final float quality;
+    private final long maxPixels;
+    private final Semaphore decodes;
+
+    @Autowired
+    public ImageTransformer(TransformCache transformCache, @Value("${images.transform.quality:85}") int quality,
+                            @Value("${images.transform.max-pixels:40000000}") long maxPixels,
+                            @Value("${images.content.max-concurrent-transcodes:2}") int maxConcurrentTranscodes) {
+        this.transformCache = transformCache;
+        this.quality = quality / 100f;
+        this.maxPixels = maxPixels;
+        this.decodes = new Semaphore(maxConcurrentTranscodes);
+    }
+
+    /**
+     * Waits for a running decode to finish when as many as allowed are running, there is nothing else to serve.
+     *
+     * @return the resized file, to be closed once it has been read
+     * @throws com.images.exception.ImageTooLargeException when the image has more pixels than allowed
+     */
+    public TransformCache.Entry transform(Image image, BlobLocation source, ImageTransform transform) throws IOException {
+        return transformCache.get(transform.cacheKey(image), output -> {
+            try {
+                decodes.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(String.format("Interrupted waiting to transform image with uuid [%s]", image.getUuid()));
+            }
+            try {
+                final BufferedImage decoded = ImageDecoder.decode(source, transform.getWidth(), transform.getHeight(), maxPixels);
+                if (decoded == null) {
+                    throw new UnsupportedImageException(String.format("Content of image with uuid [%s] is not a supported image", image.getUuid()));
+                }
+                // Transparent images stay png, everything else becomes jpeg
+                final String format = decoded.getColorModel().hasAlpha() ? "png" : "jpeg";
+                final BufferedImage resized = ImageResizer.resize(decoded, transform.getWidth(), transform.getHeight(),
+                        transform.getFit(), ImageEncoder.supportsAlpha(format));
+                ImageEncoder.encode(resized, format, quality, output);
+                return format;
+            } finally {
+                decodes.release();
+            }
+        });
+    }
+
+    /**
+     * Re-encodes the content of an image in another format at its full size. The result is keyed by the content
+     * hash, so images sharing content share the transcoded file too.
+     *
+     * @return the transcoded file, to be closed once it has been read
+     * @throws TranscodeRejectedException when the file is not cached and as many decodes as allowed are running,
+     *                                    the uploaded content can be served instead
+     */
+    public TransformCache.Entry transcode(Image image, BlobLocation source, String format) throws IOException {
+        return transformCache.get(transcodeKey(image.getPath(), format), output -> {
+            if (!decodes.tryAcquire()) {
+                throw new TranscodeRejectedException(String.format("Image with uuid [%s] is not transcoded, too many decodes are running", image.getUuid()));
+            }
+            try {
+                final BufferedImage decoded = ImageDecoder.decode(source, 0, 0, maxPixels);
+                if (decoded == null) {
+                    throw new UnsupportedImageException(String.format("Content of image with uuid [%s] is not a supported image", image.getUuid()));
+                }
+                final BufferedImage encodable = decoded.getColorModel().hasAlpha() && !ImageEncoder.supportsAlpha(format)
+                        ? ImageResizer.scale(decoded, decoded.getWidth(), decoded.getHeight(), false)
+                        : decoded;
+                ImageEncoder.encode(encodable, format, quality, output);
+                return format;
+            } finally {
+                decodes.release();
+            }
+        });
+    }
+
+    private String transcodeKey(String path, String format) {
+        final MessageDigest digest = BlobKeys.newDigest();
+        digest.update(String.join("|", path, format, String.valueOf(quality)).getBytes(StandardCharsets.UTF_8));
+        return BlobKeys.toHex(digest.digest());
+    }
+}
@@ -0,0 +1,201 @@
+package com.images.variants;
+
+import com.images.domain.ImageVariant;
+import com.images.events.ImageChangeType;
+import com.images.events.ImageChangedEvent;
+import com.images.imaging.ImageDecoder;
+import com.images.imaging.ImageEncoder;
+import com.images.imaging.ImageResizer;
+import com.images.services.ImageVariantService;
+import com.images.storage.BlobLocation;
+import com.images.storage.BlobStore;
+import com.images.storage.StoredBlob;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Generates the configured variants of an image once the transaction that created or updated it commits.
+ *
+ * <p>Work runs on a fixed pool with a bounded queue, never on the thread that committed the change. When the queue
+ * is full the image is deferred instead, counted as {@code images.variants.deferred}, and submitted again every
+ * {@code images.variants.retry-interval-ms} while the queue has room. At most {@code images.variants.max-deferred}
+ * images wait like that, further ones are counted as {@code images.variants.dropped} and get their variants on
+ * their next update, as do deferred images when the application stops. Each original is decoded once, subsampled
+ * to what the largest variant needs, and every variant is resized from that decoded image.</p>
+ */
+@Component
+public class ImageVariantPipeline {
+
+    private static final Logger logger = LogManager.getLogger(ImageVariantPipeline.class);
+    private static final String FALLBACK_FORMAT = "jpeg";
+
+    private final BlobStore blobStore;
+    private final ImageVariantService imageVariantService;
+    private final List<VariantSpec> specs;
+    private final ThreadPoolExecutor executor;
+    // Path of the content to generate the variants from by image, the latest change wins
+    private final Map<UUID, String> deferred = new ConcurrentHashMap<>();
+    private final int maxDeferred;
+    private final Counter deferredCounter;
+    private final Counter droppedCounter;
+    private final Counter generatedCounter;
+
+    @Autowired
+    public ImageVariantPipeline(BlobStore blobStore, ImageVariantService imageVariantService, MeterRegistry meterRegistry,
+                                @Value("${images.variants.specs:}") String specs,
+                                @Value("${images.variants.workers:2}") int workers,
+                                @Value("${images.variants.queue-size:100}") int queueSize,
+                                @Value("${images.variants.max-deferred:10000}") int maxDeferred) {
+        this.blobStore = blobStore;
+        this.imageVariantService = imageVariantService;
+        this.specs = VariantSpec.parseAll(specs).stream()
+                .map(ImageVariantPipeline::supportedSpec)
+                .collect(Collectors.toList());
+        this.maxDeferred = maxDeferred;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "image-variants-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+        this.deferredCounter = Counter.builder("images.variants.deferred").register(meterRegistry);
+        this.droppedCounter = Counter.builder("images.variants.dropped").register(meterRegistry);
+        this.generatedCounter = Counter.builder("images.variants.generated").register(meterRegistry);
+    }
+
+    @TransactionalEventListener
+    public void onImageChanged(ImageChangedEvent event) {
+        if (event.getType() == ImageChangeType.DELETED || specs.isEmpty()) {
+            return;
+        }
+
+        submit(event.getUuid(), event.getImage().getPath());
+    }
+
+    /**
+     * Submits deferred images again, as many as the queue takes.
+     */
+    @Scheduled(fixedDelayString = "${images.variants.retry-interval-ms:5000}")
+    public void submitDeferred() {
+        for (Map.Entry<UUID, String> entry : deferred.entrySet()) {
+            if (executor.getQueue().remainingCapacity() == 0) {
+                return;
+            }
+            if (deferred.remove(entry.getKey(), entry.getValue())) {
+                submit(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    int deferredCount() {
+        return deferred.size();
+    }
+
+    private void submit(UUID uuid, String path) {
+        try {
+            executor.execute(() -> generateVariants(uuid, path));
+        } catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                return;
+            }
+            if (deferred.size() < maxDeferred || deferred.containsKey(uuid)) {
+                deferred.put(uuid, path);
+                deferredCounter.increment();
+            } else {
+                droppedCounter.increment();
+                logger.warn(String.format("Variant queue is full, variants of image [%s] are generated on its next update", uuid));
+            }
+        }
+    }
+
+    public List<VariantSpec> getSpecs() {
+        return specs;
+    }
+
+    void generateVariants(UUID uuid, String path) {
+        try {
+            final Optional<BlobLocation> location = blobStore.locate(path);
+            if (!location.isPresent()) {
+                logger.warn(String.format("Content of image [%s] is missing, no variants generated", uuid));
+                return;
+            }
+
+            final int maxWidth = specs.stream().mapToInt(VariantSpec::getWidth).max().orElse(0);
+            final int maxHeight = specs.stream().mapToInt(VariantSpec::getHeight).max().orElse(0);
+            final BufferedImage source = ImageDecoder.decode(location.get(), maxWidth, maxHeight);
+            if (source == null) {
+                logger.debug(String.format("Content of image [%s] is not a supported image, no variants generated", uuid));
+                return;
+            }
+
+            final List<ImageVariant> variants = new ArrayList<>(specs.size());
+            for (VariantSpec spec : specs) {
+                variants.add(render(source, spec));
+            }
+            if (imageVariantService.replaceVariants(uuid, path, variants)) {
+                generatedCounter.increment(variants.size());
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error(String.format("Variants of image [%s] could not be generated", uuid), e);
+        }
+    }
+
+    private ImageVariant render(BufferedImage source, VariantSpec spec) throws IOException {
+        final BufferedImage resized = ImageResizer.fitWithin(source, spec.getWidth(), spec.getHeight(),
+                ImageEncoder.supportsAlpha(spec.getFormat()));
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageEncoder.encode(resized, spec.getFormat(), spec.getQuality() / 100f, encoded);
+        final StoredBlob blob = blobStore.store(new ByteArrayInputStream(encoded.toByteArray()));
+
+        return ImageVariant.builder()
+                .name(spec.getName())
+                .path(blob.getKey())
+                .mimeType(ImageEncoder.mimeType(spec.getFormat()).orElse("application/octet-stream"))
+                .width(resized.getWidth())
+                .height(resized.getHeight())
+                .byteSize(blob.getSize())
+                .build();
+    }
+
+    private static VariantSpec supportedSpec(VariantSpec spec) {
+        if (ImageEncoder.canEncode(spec.getFormat())) {
+            return spec;
+        }
+        logger.warn(String.format("No image writer for format [%s] of variant [%s], using [%s] instead",
+                spec.getFormat(), spec.getName(), FALLBACK_FORMAT));
+        return spec.withFormat(FALLBACK_FORMAT);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
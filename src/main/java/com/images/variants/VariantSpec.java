@@ -0,0 +1,57 @@
+package com.images.variants;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rendition to generate for every image, written as {@code name:WIDTHxHEIGHT:format:quality},
+ * for example {@code thumbnail:200x200:jpeg:80}. The image is scaled to fit the box and never enlarged.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class VariantSpec {
+
+    private static final Pattern SPEC = Pattern.compile("([a-zA-Z0-9_-]+):(\\d+)x(\\d+):([a-zA-Z0-9]+):(\\d{1,3})");
+
+    private final String name;
+    private final int width;
+    private final int height;
+    private final String format;
+    private final int quality;
+
+    public static VariantSpec parse(String spec) {
+        final Matcher matcher = SPEC.matcher(spec.trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException(String.format("Variant spec [%s] should look like name:200x200:jpeg:80", spec));
+        }
+        final int quality = Integer.parseInt(matcher.group(5));
+        if (quality < 1 || quality > 100) {
+            throw new IllegalArgumentException(String.format("Quality of variant spec [%s] should be between 1 and 100", spec));
+        }
+        return new VariantSpec(matcher.group(1), Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)),
+                matcher.group(4).toLowerCase(), quality);
+    }
+
+    public static List<VariantSpec> parseAll(String specs) {
+        final List<VariantSpec> result = new ArrayList<>();
+        for (String spec : specs.split(",")) {
+            if (!spec.trim().isEmpty()) {
+                result.add(parse(spec));
+            }
+        }
+        return result;
+    }
+
+    public VariantSpec withFormat(String format) {
+        return new VariantSpec(name, width, height, format, quality);
+    }
+}
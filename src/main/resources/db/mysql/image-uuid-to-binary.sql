@@ -0,0 +1,22 @@
+-- Converts image.uuid from CHAR(36) to BINARY(16) for the uuid-binary mapping of Image.uuid.
+-- Run once against MySQL 8 with the application stopped, before starting the version that uses BINARY(16).
+-- UUID_TO_BIN without the swap flag keeps the byte order Hibernate uses, so existing ids stay the same
+-- for API clients. Existing random ids keep working; new rows get time ordered ids.
+
+ALTER TABLE image ADD COLUMN uuid_bin BINARY(16) NULL AFTER uuid;
+
+UPDATE image SET uuid_bin = UUID_TO_BIN(uuid);
+
+-- The index on (added_date, uuid) only exists where ddl-auto created it, MySQL has no DROP INDEX IF EXISTS
+SET @drop_added_uuid = (SELECT IF(COUNT(*) > 0, 'ALTER TABLE image DROP INDEX idx_image_added_uuid', 'DO 0')
+                        FROM information_schema.statistics
+                        WHERE table_schema = DATABASE() AND table_name = 'image' AND index_name = 'idx_image_added_uuid');
+PREPARE drop_added_uuid FROM @drop_added_uuid;
+EXECUTE drop_added_uuid;
+DEALLOCATE PREPARE drop_added_uuid;
+
+ALTER TABLE image DROP PRIMARY KEY, DROP COLUMN uuid;
+
+ALTER TABLE image CHANGE COLUMN uuid_bin uuid BINARY(16) NOT NULL;
+
+ALTER TABLE image ADD PRIMARY KEY (uuid), ADD INDEX idx_image_added_uuid (added_date, uuid);
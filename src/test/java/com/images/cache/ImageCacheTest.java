@@ -0,0 +1,106 @@
+package com.images.cache;
+
+import com.images.domain.Image;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class ImageCacheTest {
+
+    private ImageCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ImageCache(2, 60);
+    }
+
+    @Test
+    void testGet_whenManyThreadsRequestColdKey_thenLoaderCalledOnce() throws Exception {
+        final UUID uuid = UUID.randomUUID();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<Image>> results = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return cache.get(uuid, key -> {
+                    loads.incrementAndGet();
+                    sleep();
+                    return Image.builder().uuid(key).build();
+                });
+            }));
+        }
+        start.countDown();
+        for (Future<Image> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS).getUuid(), equalTo(uuid));
+        }
+        executor.shutdown();
+
+        assertThat(loads.get(), equalTo(1));
+    }
+
+    @Test
+    void testGet_whenLoaderFindsNothing_thenMissIsNotCached() {
+        final UUID uuid = UUID.randomUUID();
+        final AtomicInteger loads = new AtomicInteger();
+
+        cache.get(uuid, key -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        final Image result = cache.get(uuid, key -> {
+            loads.incrementAndGet();
+            return Image.builder().uuid(key).build();
+        });
+
+        assertThat(result, notNullValue());
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    @Test
+    void testInvalidate_whenEntryCached_thenNextGetLoadsAgain() {
+        final UUID uuid = UUID.randomUUID();
+        cache.get(uuid, key -> Image.builder().uuid(key).title("old").build());
+
+        cache.invalidate(uuid);
+        final Image result = cache.get(uuid, key -> Image.builder().uuid(key).title("new").build());
+
+        assertThat(result.getTitle(), equalTo("new"));
+    }
+
+    @Test
+    void testBindTo_whenCacheUsed_thenHitsAndMissesRecorded() {
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        final UUID uuid = UUID.randomUUID();
+
+        cache.get(uuid, key -> Image.builder().uuid(key).build());
+        cache.get(uuid, key -> Image.builder().uuid(key).build());
+
+        assertThat(registry.get("cache.gets").tag("result", "hit").functionCounter().count(), equalTo(1.0));
+        assertThat(registry.get("cache.gets").tag("result", "miss").functionCounter().count(), equalTo(1.0));
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.images.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TransformCacheTest {
+
+    private static final String KEY_A = key('a');
+    private static final String KEY_B = key('b');
+    private static final String KEY_C = key('c');
+
+    @TempDir
+    Path root;
+
+    @Test
+    void testGet_whenKeyIsCached_thenProducerIsNotCalledAgain() throws IOException {
+        final TransformCache cache = new TransformCache(root.toString(), 1024);
+        final AtomicInteger produced = new AtomicInteger();
+
+        final TransformCache.Entry first = cache.get(KEY_A, output -> {
+            produced.incrementAndGet();
+            output.write("resized".getBytes(StandardCharsets.UTF_8));
+            return "png";
+        });
+        final TransformCache.Entry second = cache.get(KEY_A, output -> {
+            produced.incrementAndGet();
+            return "png";
+        });
+
+        assertThat(produced.get(), equalTo(1));
+        assertThat(second.getFile(), equalTo(first.getFile()));
+        assertThat(second.getFormat(), equalTo("png"));
+        assertThat(Files.readAllBytes(second.getFile()), equalTo("resized".getBytes(StandardCharsets.UTF_8)));
+        assertThat(second.getLocation().getLength(), equalTo(7L));
+    }
+
+    @Test
+    void testGet_whenCacheIsFull_thenLeastRecentlyUsedEntryIsEvicted() throws IOException {
+        final TransformCache cache = new TransformCache(root.toString(), 20);
+        final TransformCache.Entry a = cache.get(KEY_A, output -> write(output, 10));
+        final TransformCache.Entry b = cache.get(KEY_B, output -> write(output, 10));
+        a.close();
+        b.close();
+        cache.get(KEY_A, output -> write(output, 10)).close();
+
+        cache.get(KEY_C, output -> write(output, 10)).close();
+
+        assertThat(cache.size(), equalTo(2));
+        assertThat(cache.getTotalBytes(), equalTo(20L));
+        assertThat(Files.exists(a.getFile()), equalTo(true));
+        assertThat(Files.exists(b.getFile()), equalTo(false));
+    }
+
+    @Test
+    void testGet_whenEvictedEntryIsStillOpen_thenFileIsDeletedOnlyOnceItIsClosed() throws IOException {
+        final TransformCache cache = new TransformCache(root.toString(), 10);
+        final TransformCache.Entry served = cache.get(KEY_A, output -> write(output, 10));
+
+        cache.get(KEY_B, output -> write(output, 10)).close();
+
+        assertThat(cache.size(), equalTo(1));
+        assertThat(cache.getTotalBytes(), equalTo(10L));
+        assertThat(Files.readAllBytes(served.getFile()).length, equalTo(10));
+        served.close();
+        served.close();
+        assertThat(Files.exists(served.getFile()), equalTo(false));
+    }
+
+    @Test
+    void testGet_whenSameKeyRequestedConcurrently_thenContentIsProducedOnce() throws Exception {
+        final TransformCache cache = new TransformCache(root.toString(), 1024);
+        final AtomicInteger produced = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<TransformCache.Entry>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> cache.get(KEY_A, output -> {
+                    produced.incrementAndGet();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return write(output, 10);
+                })));
+            }
+            Thread.sleep(200);
+            release.countDown();
+
+            for (Future<TransformCache.Entry> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS).getLocation().getLength(), equalTo(10L));
+            }
+            assertThat(produced.get(), equalTo(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testGet_whenProducerFails_thenNothingIsCachedAndNextCallRetries() throws IOException {
+        final TransformCache cache = new TransformCache(root.toString(), 1024);
+
+        assertThrows(IOException.class, () -> cache.get(KEY_A, output -> {
+            throw new IOException("broken");
+        }));
+        final TransformCache.Entry entry = cache.get(KEY_A, output -> write(output, 3));
+
+        assertThat(cache.size(), equalTo(1));
+        assertThat(entry.getLocation().getLength(), equalTo(3L));
+    }
+
+    @Test
+    void testConstructor_whenDirectoryHasEntries_thenIndexIsRebuiltFromDisk() throws IOException {
+        final TransformCache cache = new TransformCache(root.toString(), 1024);
+        final TransformCache.Entry entry = cache.get(KEY_A, output -> write(output, 10));
+        Files.write(root.resolve("leftover.tmp"), new byte[5]);
+
+        final TransformCache reloaded = new TransformCache(root.toString(), 1024);
+        final TransformCache.Entry cached = reloaded.get(KEY_A, output -> {
+            throw new IllegalStateException("Should be served from disk");
+        });
+
+        assertThat(reloaded.size(), equalTo(1));
+        assertThat(reloaded.getTotalBytes(), equalTo(10L));
+        assertThat(cached.getFile(), equalTo(entry.getFile()));
+        assertThat(cached.getFormat(), equalTo("jpeg"));
+        assertThat(Files.exists(root.resolve("leftover.tmp")), equalTo(false));
+    }
+
+    private static String write(OutputStream output, int size) throws IOException {
+        output.write(new byte[size]);
+        return "jpeg";
+    }
+
+    private static String key(char c) {
+        final StringBuilder key = new StringBuilder();
+        for (int i = 0; i < 64; i++) {
+            key.append(c);
+        }
+        return key.toString();
+    }
+}
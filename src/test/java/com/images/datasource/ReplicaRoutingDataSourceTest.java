@@ -0,0 +1,117 @@
+package com.images.datasource;
+
+import com.images.events.ImageCollectionVersion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+class ReplicaRoutingDataSourceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readWrite;
+    private TransactionTemplate readOnly;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() {
+        final DataSource primary = database("primary");
+        final DataSource replica = database("replica");
+        final ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replica, 5);
+        routing.afterPropertiesSet();
+        final DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        final DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest(), response));
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReplicaRoutingDataSource.clearPins();
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void testRouting_whenTransactionIsReadOnly_thenUsesReplica() {
+        assertThat(readOnly.execute(status -> instance()), equalTo("replica"));
+        assertThat(response.getCookie(ReadYourWritesFilter.COOKIE_NAME), nullValue());
+    }
+
+    @Test
+    void testRouting_whenTransactionWrites_thenUsesPrimaryAndPinsFollowingReads() {
+        final String written = readWrite.execute(status -> {
+            jdbcTemplate.update("update instance set writes = writes + 1");
+            return instance();
+        });
+
+        assertThat(written, equalTo("primary"));
+        assertThat(readOnly.execute(status -> instance()), equalTo("primary"));
+        final Cookie cookie = response.getCookie(ReadYourWritesFilter.COOKIE_NAME);
+        assertThat(cookie, notNullValue());
+        assertThat(cookie.getMaxAge(), equalTo(5));
+    }
+
+    @Test
+    void testListing_whenCollectionChangedWithinTheReplicaLag_thenItIsReadFromPrimary() {
+        final ImageCollectionVersion version = new ImageCollectionVersion(5);
+
+        assertThat(version.read(() -> readOnly.execute(status -> instance())), equalTo("replica"));
+        version.onImageChanged(null);
+        assertThat(version.readsFromPrimary(), equalTo(true));
+        assertThat(version.read(() -> readOnly.execute(status -> instance())), equalTo("primary"));
+        assertThat(new ImageCollectionVersion(0).read(() -> readOnly.execute(status -> instance())), equalTo("replica"));
+    }
+
+    @Test
+    void testRouting_whenWriteRollsBack_thenReadsStayOnReplica() {
+        readWrite.executeWithoutResult(status -> {
+            jdbcTemplate.update("update instance set writes = writes + 1");
+            status.setRollbackOnly();
+        });
+
+        assertThat(readOnly.execute(status -> instance()), equalTo("replica"));
+        assertThat(response.getCookie(ReadYourWritesFilter.COOKIE_NAME), nullValue());
+    }
+
+    @Test
+    void testOnPrimary_whenTransactionIsReadOnly_thenUsesPrimary() {
+        assertThat(readOnly.execute(status -> ReplicaRoutingDataSource.onPrimary(this::instance)), equalTo("primary"));
+        assertThat(readOnly.execute(status -> instance()), equalTo("replica"));
+    }
+
+    private String instance() {
+        return jdbcTemplate.queryForObject("select name from instance", String.class);
+    }
+
+    private static DataSource database(String name) {
+        final DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                String.format("jdbc:h2:mem:%s-%s;DB_CLOSE_DELAY=-1", name, UUID.randomUUID()));
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table instance (name varchar(20), writes int)");
+        jdbcTemplate.update("insert into instance values (?, 0)", name);
+        return dataSource;
+    }
+}
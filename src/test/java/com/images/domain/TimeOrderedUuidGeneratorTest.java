@@ -0,0 +1,40 @@
+package com.images.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class TimeOrderedUuidGeneratorTest {
+
+    @Test
+    void testNext_whenUuidGenerated_thenVersionSevenAndRfcVariantSet() {
+        final UUID uuid = TimeOrderedUuidGenerator.next();
+
+        assertThat(uuid.version(), equalTo(7));
+        assertThat(uuid.variant(), equalTo(2));
+    }
+
+    @Test
+    void testNext_whenUuidGenerated_thenTimestampIsCurrentTime() {
+        final long before = System.currentTimeMillis();
+
+        final UUID uuid = TimeOrderedUuidGenerator.next();
+
+        final long timestamp = uuid.getMostSignificantBits() >>> 16;
+        assertThat(timestamp, greaterThanOrEqualTo(before));
+        assertThat(timestamp, lessThanOrEqualTo(System.currentTimeMillis() + 1000));
+    }
+
+    @Test
+    void testNext_whenManyUuidsGeneratedQuickly_thenEachIsGreaterThanThePrevious() {
+        UUID previous = TimeOrderedUuidGenerator.next();
+        for (int i = 0; i < 10_000; i++) {
+            final UUID next = TimeOrderedUuidGenerator.next();
+            assertThat(Long.compareUnsigned(next.getMostSignificantBits(), previous.getMostSignificantBits()), greaterThan(0));
+            previous = next;
+        }
+    }
+}
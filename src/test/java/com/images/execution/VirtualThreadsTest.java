@@ -0,0 +1,53 @@
+package com.images.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VirtualThreadsTest {
+
+    @Test
+    void testGetExecutor_whenModeIsPlatform_thenNoExecutorProvided() {
+        final VirtualThreads virtualThreads = new VirtualThreads("platform");
+
+        assertThat(virtualThreads.getMode(), equalTo(ExecutionMode.PLATFORM));
+        assertThat(virtualThreads.getExecutor().isPresent(), equalTo(false));
+    }
+
+    @Test
+    void testGetExecutor_whenModeIsVirtualOnOlderRuntime_thenFallsBackToPlatformThreads() {
+        assumeTrue(Runtime.version().feature() < 21, "Runtime supports virtual threads");
+        final VirtualThreads virtualThreads = new VirtualThreads("virtual");
+
+        assertThat(virtualThreads.getMode(), equalTo(ExecutionMode.PLATFORM));
+        assertThat(virtualThreads.getExecutor().isPresent(), equalTo(false));
+    }
+
+    // Runs with ./gradlew virtualThreadsTest, which uses Java 21
+    @Test
+    void testGetExecutor_whenModeIsVirtual_thenTasksRunOnVirtualThreads() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "Virtual threads need Java 21 or newer");
+        final VirtualThreads virtualThreads = new VirtualThreads(" Virtual ");
+        try {
+            final ExecutorService executor = virtualThreads.getExecutor().orElseThrow();
+            final Future<Object> isVirtual = executor.submit(() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+
+            assertThat(virtualThreads.getMode(), equalTo(ExecutionMode.VIRTUAL));
+            assertThat(isVirtual.get(5, TimeUnit.SECONDS), equalTo(true));
+        } finally {
+            virtualThreads.shutdown();
+        }
+    }
+
+    @Test
+    void testConstructor_whenModeIsUnknown_thenIllegalArgumentExceptionThrown() {
+        assertThrows(IllegalArgumentException.class, () -> new VirtualThreads("reactive"));
+    }
+}
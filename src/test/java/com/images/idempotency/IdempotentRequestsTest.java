@@ -0,0 +1,110 @@
+package com.images.idempotency;
+
+import com.images.exception.IdempotencyKeyReusedException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IdempotentRequestsTest {
+
+    private final IdempotentRequests requests = new IdempotentRequests(100, 60);
+
+    @Test
+    void testExecute_whenKeyIsRepeated_thenFirstResultReplayed() {
+        final AtomicInteger runs = new AtomicInteger();
+
+        final String first = requests.execute("key", "fingerprint", () -> "result-" + runs.incrementAndGet());
+        final String second = requests.execute("key", "fingerprint", () -> "result-" + runs.incrementAndGet());
+
+        assertThat(first, equalTo("result-1"));
+        assertThat(second, equalTo("result-1"));
+        assertThat(runs.get(), equalTo(1));
+    }
+
+    @Test
+    void testExecute_whenKeyIsReusedForAnotherRequest_thenRefused() {
+        requests.execute("key", "fingerprint", () -> "result");
+
+        assertThrows(IdempotencyKeyReusedException.class, () -> requests.execute("key", "other", () -> "other result"));
+    }
+
+    @Test
+    void testExecute_whenRequestFailed_thenRetryRunsAgain() {
+        assertThrows(IllegalStateException.class, () -> requests.execute("key", "fingerprint", () -> {
+            throw new IllegalStateException("database down");
+        }));
+
+        assertThat(requests.execute("key", "fingerprint", () -> "result"), equalTo("result"));
+    }
+
+    @Test
+    void testExecute_whenDuplicateArrivesWhileRunning_thenItWaitsForTheResult() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+        final CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> requests.execute("key", "fingerprint", () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "result";
+        }));
+        started.await(5, TimeUnit.SECONDS);
+
+        final CompletableFuture<String> duplicate = CompletableFuture.supplyAsync(
+                () -> requests.execute("key", "fingerprint", () -> "result-" + runs.incrementAndGet()));
+        Thread.sleep(50);
+        assertThat(duplicate.isDone(), equalTo(false));
+        release.countDown();
+
+        assertThat(duplicate.get(5, TimeUnit.SECONDS), equalTo("result"));
+        assertThat(first.get(5, TimeUnit.SECONDS), equalTo("result"));
+        assertThat(runs.get(), equalTo(1));
+    }
+
+    @Test
+    void testExecute_whenCacheIsFullWhileRequestRuns_thenRunningRequestIsNotEvicted() throws Exception {
+        final IdempotentRequests bounded = new IdempotentRequests(1, 60);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+        final CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> bounded.execute("running", "fingerprint", () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "result";
+        }));
+        started.await(5, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 3; i++) {
+            final int index = i;
+            bounded.execute("done-" + i, "fingerprint", () -> "done-" + index);
+        }
+        // Eviction runs in the background, it leaves the running request and the last finished one
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (bounded.size() > 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        final CompletableFuture<String> retry = CompletableFuture.supplyAsync(
+                () -> bounded.execute("running", "fingerprint", () -> "result-" + runs.incrementAndGet()));
+        release.countDown();
+
+        assertThat(retry.get(5, TimeUnit.SECONDS), equalTo("result"));
+        assertThat(running.get(5, TimeUnit.SECONDS), equalTo("result"));
+        assertThat(runs.get(), equalTo(1));
+    }
+}
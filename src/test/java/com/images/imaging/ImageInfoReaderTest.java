@@ -0,0 +1,111 @@
+package com.images.imaging;
+
+import com.images.storage.BlobLocation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+class ImageInfoReaderTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void testRead_whenPng_thenDimensionsAndTypeRead() throws IOException {
+        final ImageInfo info = ImageInfoReader.read(location(encode(new BufferedImage(120, 80, BufferedImage.TYPE_INT_RGB), "png")));
+
+        assertThat(info.getWidth(), equalTo(120));
+        assertThat(info.getHeight(), equalTo(80));
+        assertThat(info.getMimeType(), equalTo("image/png"));
+        assertThat(info.getOrientation(), nullValue());
+        assertThat(info.getCapturedAt(), nullValue());
+    }
+
+    @Test
+    void testRead_whenJpegHasExif_thenOrientationAndCaptureTimeRead() throws IOException {
+        final byte[] jpeg = encode(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), "jpeg");
+
+        final ImageInfo info = ImageInfoReader.read(location(withExif(jpeg, 6, "2021:07:04 18:30:15")));
+
+        assertThat(info.getWidth(), equalTo(64));
+        assertThat(info.getHeight(), equalTo(48));
+        assertThat(info.getMimeType(), equalTo("image/jpeg"));
+        assertThat(info.getOrientation(), equalTo(6));
+        assertThat(info.getCapturedAt(), equalTo(LocalDateTime.of(2021, 7, 4, 18, 30, 15)));
+    }
+
+    @Test
+    void testRead_whenLocationIsMapped_thenReadsFromTheMappingWithoutTheFile() throws IOException {
+        final byte[] jpeg = withExif(encode(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), "jpeg"), 3, "2020:01:02 03:04:05");
+
+        final ImageInfo info = ImageInfoReader.read(
+                new BlobLocation(root.resolve("missing"), 0, jpeg.length, ByteBuffer.wrap(jpeg)));
+
+        assertThat(info.getWidth(), equalTo(64));
+        assertThat(info.getOrientation(), equalTo(3));
+    }
+
+    @Test
+    void testRead_whenContentIsNotAnImage_thenNothingKnown() throws IOException {
+        final ImageInfo info = ImageInfoReader.read(location("just some text".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(info.getWidth(), nullValue());
+        assertThat(info.getMimeType(), nullValue());
+    }
+
+    private BlobLocation location(byte[] content) throws IOException {
+        // Surrounded by other bytes, like a blob inside a larger file
+        final byte[] file = new byte[content.length + 20];
+        System.arraycopy(content, 0, file, 10, content.length);
+        final Path path = Files.write(root.resolve("blob"), file);
+        return new BlobLocation(path, 10, content.length);
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, format, output);
+        return output.toByteArray();
+    }
+
+    /**
+     * Inserts an APP1 segment with a little endian TIFF structure: IFD0 holds the orientation and a pointer to
+     * the EXIF IFD, which holds DateTimeOriginal.
+     */
+    private static byte[] withExif(byte[] jpeg, int orientation, String dateTimeOriginal) {
+        final ByteBuffer tiff = ByteBuffer.allocate(8 + 2 + 2 * 12 + 4 + 2 + 12 + 4 + 20).order(ByteOrder.LITTLE_ENDIAN);
+        tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+        final int exifIfd = 8 + 2 + 2 * 12 + 4;
+        final int dateOffset = exifIfd + 2 + 12 + 4;
+        tiff.putShort((short) 2);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        tiff.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(exifIfd);
+        tiff.putInt(0);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x9003).putShort((short) 2).putInt(20).putInt(dateOffset);
+        tiff.putInt(0);
+        tiff.put((dateTimeOriginal + "\0").getBytes(StandardCharsets.US_ASCII));
+
+        final byte[] header = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+        final int segmentLength = 2 + header.length + tiff.capacity();
+        final ByteBuffer result = ByteBuffer.allocate(jpeg.length + 2 + segmentLength);
+        result.put(jpeg, 0, 2);
+        result.put((byte) 0xFF).put((byte) 0xE1).putShort((short) segmentLength);
+        result.put(header).put(tiff.array());
+        result.put(jpeg, 2, jpeg.length - 2);
+        return result.array();
+    }
+}
@@ -0,0 +1,44 @@
+package com.images.imaging;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+class PerceptualHashTest {
+
+    @Test
+    void testDHash_whenImageIsRescaled_thenHashStaysClose() {
+        final BufferedImage original = scene(640, 480, false);
+        final BufferedImage rescaled = ImageResizer.resize(original, 200, 150, ResizeFit.FILL, false);
+
+        assertThat(PerceptualHash.distance(PerceptualHash.dHash(original), PerceptualHash.dHash(rescaled)), lessThanOrEqualTo(4));
+    }
+
+    @Test
+    void testDHash_whenImagesDiffer_thenHashesAreFarApart() {
+        final long first = PerceptualHash.dHash(scene(640, 480, false));
+        final long second = PerceptualHash.dHash(scene(640, 480, true));
+
+        assertThat(PerceptualHash.distance(first, second), greaterThan(16));
+    }
+
+    private static BufferedImage scene(int width, int height, boolean mirrored) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = image.createGraphics();
+        for (int x = 0; x < width; x++) {
+            final int shade = 255 * (mirrored ? width - 1 - x : x) / width;
+            graphics.setColor(new Color(shade, shade / 2, 255 - shade));
+            graphics.drawLine(x, 0, x, height);
+        }
+        graphics.setColor(Color.WHITE);
+        graphics.fillOval(mirrored ? width / 2 : width / 8, height / 4, width / 3, height / 2);
+        graphics.dispose();
+        return image;
+    }
+}
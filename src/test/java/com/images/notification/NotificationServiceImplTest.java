@@ -6,8 +6,18 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
 
 @ExtendWith(SpringExtension.class)
 class NotificationServiceImplTest {
@@ -40,5 +50,69 @@ class NotificationServiceImplTest {
         assertThat(addedNotification.getText(), equalTo(message));
     }
 
+    @Test
+    void testAddInfoMessage_whenMoreMessagesThanCapacityAdded_thenOnlyMostRecentMessagesKept() {
+        service = new NotificationServiceImpl(4);
+
+        for (int i = 0; i < 10; i++) {
+            service.addInfoMessage("Message " + i);
+        }
+
+        final List<String> texts = service.getMessages().stream()
+                .map(NotificationMessage::getText)
+                .collect(Collectors.toList());
+        assertThat(texts, contains("Message 6", "Message 7", "Message 8", "Message 9"));
+    }
+
+    @Test
+    void testDrain_whenMessagesAdded_thenEachMessageDrainedOnceInOrder() {
+        service.addInfoMessage("First");
+        service.addErrorMessage("Second");
+        final List<String> drained = new ArrayList<>();
+
+        final long dropped = service.drain(message -> drained.add(message.getText()));
+        service.drain(message -> drained.add(message.getText()));
+
+        assertThat(dropped, equalTo(0L));
+        assertThat(drained, contains("First", "Second"));
+    }
+
+    @Test
+    void testDrain_whenMessagesOverwrittenBeforeDrain_thenDroppedMessagesCounted() {
+        service = new NotificationServiceImpl(4);
+        for (int i = 0; i < 10; i++) {
+            service.addInfoMessage("Message " + i);
+        }
+        final List<String> drained = new ArrayList<>();
 
+        final long dropped = service.drain(message -> drained.add(message.getText()));
+
+        assertThat(dropped, equalTo(6L));
+        assertThat(drained, contains("Message 6", "Message 7", "Message 8", "Message 9"));
+    }
+
+    @Test
+    void testAddInfoMessage_whenAddedFromManyThreads_thenNoMessageIsLostWithinCapacity() throws InterruptedException {
+        final int threads = 8;
+        final int messagesPerThread = 100;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < messagesPerThread; i++) {
+                    service.addInfoMessage("Message");
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertThat(service.getMessages(), hasSize(threads * messagesPerThread));
+    }
 }
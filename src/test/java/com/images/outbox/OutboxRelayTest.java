@@ -0,0 +1,92 @@
+package com.images.outbox;
+
+import com.images.domain.OutboxEvent;
+import com.images.events.ImageChangeType;
+import com.images.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class OutboxRelayTest {
+
+    private OutboxRelay relay;
+    private SimpleMeterRegistry meterRegistry;
+    private InMemoryOutboxEventSink sink;
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sink = spy(new InMemoryOutboxEventSink());
+        given(transactionManager.getTransaction(any())).willReturn(new SimpleTransactionStatus());
+        relay = new OutboxRelay(outboxEventRepository, sink, transactionManager, meterRegistry, 2);
+    }
+
+    @Test
+    void testRelay_whenOutboxHoldsSeveralBatches_thenPublishesInOrderAndDeletes() {
+        given(outboxEventRepository.findOldest(any(Pageable.class)))
+                .willReturn(Arrays.asList(event(1L), event(2L)))
+                .willReturn(Collections.singletonList(event(3L)));
+
+        assertThat(relay.relay(), equalTo(3L));
+
+        assertThat(ids(sink.getEvents()), contains(1L, 2L, 3L));
+        verify(outboxEventRepository).deleteByIdIn(Arrays.asList(1L, 2L));
+        verify(outboxEventRepository).deleteByIdIn(Collections.singletonList(3L));
+        verify(outboxEventRepository, times(2)).findOldest(any(Pageable.class));
+        assertThat(meterRegistry.get("images.outbox.published").counter().count(), equalTo(3.0));
+    }
+
+    @Test
+    void testRelay_whenSinkFails_thenKeepsEventsForTheNextRun() {
+        given(outboxEventRepository.findOldest(any(Pageable.class)))
+                .willReturn(Arrays.asList(event(1L), event(2L)));
+        willThrow(new IllegalStateException("sink down")).given(sink).publish(any());
+
+        assertThat(relay.relay(), equalTo(0L));
+
+        verify(outboxEventRepository, never()).deleteByIdIn(any());
+        assertThat(meterRegistry.get("images.outbox.failed").counter().count(), equalTo(1.0));
+    }
+
+    @Test
+    void testRelay_whenOutboxIsEmpty_thenPublishesNothing() {
+        given(outboxEventRepository.findOldest(any(Pageable.class))).willReturn(Collections.emptyList());
+
+        assertThat(relay.relay(), equalTo(0L));
+
+        verify(sink, never()).publish(any());
+    }
+
+    private static OutboxEvent event(long id) {
+        return OutboxEvent.builder().id(id).imageUuid(UUID.randomUUID()).type(ImageChangeType.CREATED).build();
+    }
+
+    private static List<Long> ids(List<OutboxEvent> events) {
+        return events.stream().map(OutboxEvent::getId).collect(Collectors.toList());
+    }
+}
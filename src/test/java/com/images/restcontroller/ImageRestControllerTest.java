@@ -2,31 +2,75 @@ package com.images.restcontroller;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.images.deletion.DeletedImageCollector;
 import com.images.domain.Image;
+import com.images.domain.ImageVariant;
+import com.images.domain.OutboxEvent;
 import com.images.error.ApiErrorModel;
+import com.images.events.ImageChangeType;
+import com.images.events.ImageChangedEvent;
+import com.images.events.ImageCollectionVersion;
+import com.images.outbox.InMemoryOutboxEventSink;
+import com.images.outbox.OutboxRelay;
 import com.images.repository.ImageRepository;
+import com.images.repository.ImageVariantRepository;
+import com.images.repository.OrphanBlobRepository;
+import com.images.repository.OutboxEventRepository;
+import com.images.search.ImageSearchIndex;
+import com.images.similarity.PerceptualHashIndex;
+import com.images.services.ImageBatchResult;
+import com.images.services.ImagePage;
+import com.images.services.ImageSearchResult;
+import com.images.services.ImageVariantService;
+import com.images.services.SimilarImage;
+import com.images.storage.BlobKeys;
+import com.images.storage.BlobStore;
+import com.images.storage.StoredBlob;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
@@ -39,6 +83,39 @@ class ImageRestControllerTest {
     @Autowired
     private ImageRepository imageRepository;
 
+    @Autowired
+    private ImageVariantRepository imageVariantRepository;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private ImageSearchIndex imageSearchIndex;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private InMemoryOutboxEventSink outboxEventSink;
+
+    @Autowired
+    private PerceptualHashIndex perceptualHashIndex;
+
+    @Autowired
+    private ImageCollectionVersion imageCollectionVersion;
+
+    @Autowired
+    private DeletedImageCollector deletedImageCollector;
+
+    @Autowired
+    private OrphanBlobRepository orphanBlobRepository;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -68,6 +145,155 @@ class ImageRestControllerTest {
         assertThat(listOfImagesReturned.get(1), samePropertyValuesAs(image2));
     }
 
+    @Test
+    void testReturnPage_shouldReturnImagesPageByPageUsingCursor() throws Exception {
+        LocalDateTime added = LocalDateTime.of(2022, 1, 1, 10, 0);
+        Image image1 = imageRepository.save(Image.builder().title("Image1").path("path1").dateAdded(added).build());
+        Image image2 = imageRepository.save(Image.builder().title("Image2").path("path2").dateAdded(added.plusMinutes(1)).build());
+        Image image3 = imageRepository.save(Image.builder().title("Image3").path("path3").dateAdded(added.plusMinutes(2)).build());
+
+        String firstResult = mockMvc.perform(get("/image/all").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        ImagePage firstPage = mapper.readValue(firstResult, ImagePage.class);
+
+        assertThat(firstPage.getImages(), hasSize(2));
+        assertThat(firstPage.getImages().get(0).getUuid(), equalTo(image1.getUuid()));
+        assertThat(firstPage.getImages().get(1).getUuid(), equalTo(image2.getUuid()));
+        assertThat(firstPage.getNext(), notNullValue());
+
+        String secondResult = mockMvc.perform(get("/image/all")
+                        .param("limit", "2")
+                        .param("after", firstPage.getNext()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        ImagePage secondPage = mapper.readValue(secondResult, ImagePage.class);
+
+        assertThat(secondPage.getImages(), hasSize(1));
+        assertThat(secondPage.getImages().get(0).getUuid(), equalTo(image3.getUuid()));
+        assertThat(secondPage.getNext(), nullValue());
+    }
+
+    @Test
+    void testReturnPage_whenCursorIsNotValid_shouldReturnBadRequest() throws Exception {
+        String result = mockMvc.perform(get("/image/all")
+                        .param("limit", "2")
+                        .param("after", "not-a-cursor"))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsString();
+
+        List<ApiErrorModel> errorsReturned = mapper.readValue(result, new TypeReference<List<ApiErrorModel>>() {
+        });
+        assertThat(errorsReturned.get(0).getMessage(), equalTo("Cursor is not valid"));
+    }
+
+    @Test
+    void testReturnAll_whenFieldsAreGiven_shouldReturnOnlyThoseFields() throws Exception {
+        Image image = imageRepository.save(Image.builder().title("Image1").description("Long text").path("path1").build());
+
+        String result = mockMvc.perform(get("/image/all").param("fields", "title,uuid"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Vary", "Accept"))
+                .andReturn().getResponse().getContentAsString();
+
+        List<Map<String, Object>> images = mapper.readValue(result, new TypeReference<List<Map<String, Object>>>() {
+        });
+        assertThat(images, hasSize(1));
+        assertThat(new ArrayList<>(images.get(0).keySet()), contains("title", "uuid"));
+        assertThat(images.get(0).get("uuid"), equalTo(image.getUuid().toString()));
+        assertThat(images.get(0).get("title"), equalTo("Image1"));
+    }
+
+    @Test
+    void testReturnPage_whenFieldsAreGiven_shouldReturnProjectedPagesUsingCursor() throws Exception {
+        LocalDateTime added = LocalDateTime.of(2022, 1, 1, 10, 0);
+        imageRepository.save(Image.builder().title("Image1").path("path1").dateAdded(added).build());
+        imageRepository.save(Image.builder().title("Image2").path("path2").dateAdded(added.plusMinutes(1)).build());
+
+        String firstResult = mockMvc.perform(get("/image/all").param("limit", "1").param("fields", "title"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        Map<String, Object> firstPage = mapper.readValue(firstResult, new TypeReference<Map<String, Object>>() {
+        });
+        assertThat(firstPage.get("images"), equalTo(Collections.singletonList(Collections.singletonMap("title", "Image1"))));
+
+        String secondResult = mockMvc.perform(get("/image/all")
+                        .param("limit", "1")
+                        .param("fields", "title")
+                        .param("after", (String) firstPage.get("next")))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        Map<String, Object> secondPage = mapper.readValue(secondResult, new TypeReference<Map<String, Object>>() {
+        });
+        assertThat(secondPage.get("images"), equalTo(Collections.singletonList(Collections.singletonMap("title", "Image2"))));
+        assertThat(secondPage.get("next"), nullValue());
+    }
+
+    @Test
+    void testReturnAll_whenFieldIsNotKnown_shouldReturnBadRequest() throws Exception {
+        String result = mockMvc.perform(get("/image/all").param("fields", "title,deleted"))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsString();
+
+        List<ApiErrorModel> errorsReturned = mapper.readValue(result, new TypeReference<List<ApiErrorModel>>() {
+        });
+        assertThat(errorsReturned.get(0).getMessage(), startsWith("Field [deleted] is not known"));
+    }
+
+    @Test
+    void shouldReturnImagesAsCborOrSmileWhenAccepted() throws Exception {
+        imageRepository.save(Image.builder().title("Image1").path("path1").build());
+
+        MvcResult json = mockMvc.perform(get("/image/all").param("fields", "title"))
+                .andExpect(status().isOk())
+                .andReturn();
+        MvcResult cbor = mockMvc.perform(get("/image/all").param("fields", "title").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn();
+        MvcResult smile = mockMvc.perform(get("/image/all").param("fields", "title").accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-jackson-smile"))
+                .andReturn();
+
+        TypeReference<List<Map<String, Object>>> listOfMaps = new TypeReference<List<Map<String, Object>>>() {
+        };
+        List<Map<String, Object>> fromCbor = new ObjectMapper(new CBORFactory())
+                .readValue(cbor.getResponse().getContentAsByteArray(), listOfMaps);
+        List<Map<String, Object>> fromSmile = new ObjectMapper(new SmileFactory())
+                .readValue(smile.getResponse().getContentAsByteArray(), listOfMaps);
+        assertThat(fromCbor, equalTo(Collections.singletonList(Collections.singletonMap("title", "Image1"))));
+        assertThat(fromSmile, equalTo(fromCbor));
+        assertThat(cbor.getResponse().getContentAsByteArray().length, lessThan(json.getResponse().getContentAsByteArray().length));
+        assertThat(cbor.getResponse().getHeader("ETag"), not(equalTo(json.getResponse().getHeader("ETag"))));
+        assertThat(smile.getResponse().getHeader("ETag"), not(equalTo(cbor.getResponse().getHeader("ETag"))));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testStreamAll_shouldWriteOneImagePerLine() throws Exception {
+        // Streaming runs on another thread in its own transaction, so the rows have to be committed
+        Image image1 = imageRepository.save(Image.builder().title("Streamed1").path("path1").build());
+        Image image2 = imageRepository.save(Image.builder().title("Streamed2").path("path2").build());
+        try {
+            MvcResult asyncResult = mockMvc.perform(get("/image/all").accept(MediaType.APPLICATION_NDJSON))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+            String result = mockMvc.perform(asyncDispatch(asyncResult))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                    .andReturn().getResponse().getContentAsString();
+
+            String[] lines = result.split("\n");
+            assertThat(lines.length, equalTo(2));
+            assertThat(mapper.readValue(lines[0], Image.class).getUuid(), equalTo(image1.getUuid()));
+            assertThat(mapper.readValue(lines[1], Image.class).getUuid(), equalTo(image2.getUuid()));
+        } finally {
+            imageRepository.deleteAll();
+        }
+    }
+
     @Test
     void shouldCreateAnImage() throws Exception {
         String title = "TestingTitle";
@@ -93,6 +319,44 @@ class ImageRestControllerTest {
         assertThat(imageReturned, samePropertyValuesAs(imageInDb.get()));
     }
 
+    @Test
+    // The rows are saved in transactions of their own, so they are committed
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldCreateImagesInBatchAndReportInvalidItemsSeparately() throws Exception {
+        try {
+            String tooLongTitle = String.join("", Collections.nCopies(51, "a"));
+
+            String result = mockMvc
+                    .perform(MockMvcRequestBuilders
+                            .multipart("/image/batch")
+                            .file(new MockMultipartFile("file", "first".getBytes()))
+                            .file(new MockMultipartFile("file", "second".getBytes()))
+                            .file(new MockMultipartFile("file", "third".getBytes()))
+                            .header("content-type", "multipart/*")
+                            .param("images[0].title", "First")
+                            .param("images[1].title", tooLongTitle)
+                            .param("images[2].title", "Third")
+                            .param("images[2].description", "Third description"))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+
+            List<ImageBatchResult> results = mapper.readValue(result, new TypeReference<List<ImageBatchResult>>() {
+            });
+            assertThat(results, hasSize(3));
+            assertThat(results.get(0).getImage().getTitle(), equalTo("First"));
+            assertThat(results.get(1).getError(), equalTo("Image title's maximum size should be 50 characters"));
+            assertThat(results.get(1).getImage(), nullValue());
+            assertThat(results.get(2).getIndex(), equalTo(2));
+            assertThat(results.get(2).getImage().getDescription(), equalTo("Third description"));
+            assertThat(imageRepository.findById(results.get(2).getImage().getUuid()).isPresent(), equalTo(true));
+        } finally {
+            imageVariantRepository.deleteAll();
+            imageRepository.deleteAll();
+            orphanBlobRepository.deleteAll();
+            outboxEventRepository.deleteAll();
+        }
+    }
+
     @Test
     void shouldReturnErrorsWhenTitleAndDescriptionAreTooLong() throws Exception {
         String title = "AAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaaAAAAAaaaaaaaaaaaav";
@@ -153,6 +417,64 @@ class ImageRestControllerTest {
         assertThat(imageReturned.getUuid(), is(imageSaved.getUuid()));
     }
 
+    @Test
+    void shouldReplayCreatedImageWhenIdempotencyKeyIsRepeated() throws Exception {
+        Image first = createImageWithKey("retry-1", "same content");
+        Image retried = createImageWithKey("retry-1", "same content");
+
+        assertThat(retried.getUuid(), equalTo(first.getUuid()));
+    }
+
+    @Test
+    void shouldRefuseIdempotencyKeyReusedForAnotherImage() throws Exception {
+        createImageWithKey("retry-2", "first content");
+        // The blob store outlives the test run, the content has to be new to it
+        byte[] otherContent = ("other content " + UUID.randomUUID()).getBytes();
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .multipart("/image")
+                        .file(new MockMultipartFile("file", otherContent))
+                        .header("content-type", "multipart/*")
+                        .header("Idempotency-Key", "retry-2"))
+                .andExpect(status().isUnprocessableEntity());
+
+        MessageDigest digest = BlobKeys.newDigest();
+        assertThat("Refused uploads should not be stored",
+                blobStore.exists(BlobKeys.toHex(digest.digest(otherContent))), equalTo(false));
+    }
+
+    @Test
+    void shouldReadImageMetadataOnUpload() throws Exception {
+        byte[] content = png(120, 80);
+        Image image = createImageWithContent(content);
+
+        assertThat(image.getWidth(), equalTo(120));
+        assertThat(image.getHeight(), equalTo(80));
+        assertThat(image.getMimeType(), equalTo("image/png"));
+        assertThat(image.getByteSize(), equalTo((long) content.length));
+        mockMvc.perform(get("/image/" + image.getUuid() + "/content"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/png"));
+    }
+
+    @Test
+    void shouldFilterPageByImageMetadata() throws Exception {
+        Image large = createImageWithContent(png(400, 300));
+        createImageWithContent(png(40, 30));
+        createImageWithContent("not an image".getBytes());
+
+        String result = mockMvc.perform(get("/image/all")
+                        .param("limit", "10")
+                        .param("mimeType", "image/png")
+                        .param("minWidth", "100"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        ImagePage page = mapper.readValue(result, ImagePage.class);
+        assertThat(page.getImages().size(), equalTo(1));
+        assertThat(page.getImages().get(0).getUuid(), equalTo(large.getUuid()));
+    }
+
     @Test
     void shouldReturnAnImage() throws Exception {
         Image imageSaved = imageRepository.save(Image.builder().path("anything").build());
@@ -166,6 +488,37 @@ class ImageRestControllerTest {
         assertThat(imageReturned, samePropertyValuesAs(imageSaved));
     }
 
+    @Test
+    void shouldAnswerNotModifiedWhenImageIsUnchanged() throws Exception {
+        Image imageSaved = imageRepository.save(Image.builder().path("anything").build());
+
+        String etag = mockMvc.perform(get("/image/" + imageSaved.getUuid()))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("Last-Modified"))
+                .andExpect(header().string("Cache-Control", "no-cache"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/image/" + imageSaved.getUuid()).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void shouldAnswerNotModifiedUntilTheImageCollectionChanges() throws Exception {
+        String etag = mockMvc.perform(get("/image/all"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/image/all").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        imageCollectionVersion.onImageChanged(ImageChangedEvent.deleted(UUID.randomUUID()));
+
+        mockMvc.perform(get("/image/all").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(equalTo(etag))));
+    }
+
     @Test
     void shouldReturnErrorThatImageIsNotFound() throws Exception {
         UUID imageUuid = UUID.randomUUID();
@@ -192,6 +545,90 @@ class ImageRestControllerTest {
         assertThat(imageInDb.isPresent(), equalTo(false));
     }
 
+    @Test
+    void shouldDeleteAnImageTogetherWithItsVariants() throws Exception {
+        Image imageSaved = imageRepository.save(Image.builder().path("anything").build());
+        imageVariantRepository.save(ImageVariant.builder().image(imageSaved).name("thumbnail")
+                .path("variant").mimeType("image/jpeg").build());
+
+        mockMvc.perform(delete("/image/" + imageSaved.getUuid()))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/image/" + imageSaved.getUuid() + "/variant/thumbnail"))
+                .andExpect(status().isNotFound());
+
+        assertThat(deletedImageCollector.purgeDeletedImages(), equalTo(1));
+        assertThat(imageVariantRepository.findByImageUuid(imageSaved.getUuid()), empty());
+        assertThat(orphanBlobRepository.countByPathIn(Arrays.asList("anything", "variant")), equalTo(2L));
+    }
+
+    @Test
+    void shouldDeleteManyImagesInOneRequest() throws Exception {
+        Image first = imageRepository.save(Image.builder().path("first").build());
+        Image second = imageRepository.save(Image.builder().path("second").build());
+        Image kept = imageRepository.save(Image.builder().path("kept").build());
+        UUID missing = UUID.randomUUID();
+
+        String result = mockMvc.perform(delete("/image")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(Arrays.asList(first.getUuid(), second.getUuid(), missing))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        List<UUID> deleted = mapper.readValue(result, new TypeReference<List<UUID>>() {
+        });
+        assertThat(deleted, containsInAnyOrder(first.getUuid(), second.getUuid()));
+        assertThat(imageRepository.findById(first.getUuid()).isPresent(), equalTo(false));
+        assertThat(imageRepository.findById(second.getUuid()).isPresent(), equalTo(false));
+        assertThat(imageRepository.findById(kept.getUuid()).isPresent(), equalTo(true));
+    }
+
+    @Test
+    // Variants are replaced in a transaction of their own, which only sees committed images
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldRecordReplacedVariantContentAsOrphan() {
+        Image image = imageRepository.save(Image.builder().path("source").build());
+        try {
+            imageVariantRepository.save(ImageVariant.builder().image(image).name("thumbnail")
+                    .path("old-thumbnail").mimeType("image/jpeg").build());
+            imageVariantRepository.save(ImageVariant.builder().image(image).name("medium")
+                    .path("same-medium").mimeType("image/jpeg").build());
+
+            boolean replaced = imageVariantService.replaceVariants(image.getUuid(), "source", Arrays.asList(
+                    ImageVariant.builder().name("thumbnail").path("new-thumbnail").mimeType("image/jpeg").build(),
+                    ImageVariant.builder().name("medium").path("same-medium").mimeType("image/jpeg").build()));
+
+            assertThat(replaced, equalTo(true));
+            assertThat(orphanBlobRepository.countByPathIn(Collections.singleton("old-thumbnail")), equalTo(1L));
+            assertThat(orphanBlobRepository.countByPathIn(Arrays.asList("new-thumbnail", "same-medium")), equalTo(0L));
+        } finally {
+            imageVariantRepository.deleteAll();
+            imageRepository.deleteAll();
+            orphanBlobRepository.deleteAll();
+        }
+    }
+
+    @Test
+    void shouldReleaseSharedContentOnlyWhenTheLastImageIsPurged() throws Exception {
+        // Images created by earlier tests are rolled back, which leaves their content recorded as orphaned
+        orphanBlobRepository.deleteAll();
+        byte[] content = "content shared by two images".getBytes();
+        Image first = createImageWithContent(content);
+        Image second = createImageWithContent(content);
+        assertThat(second.getPath(), equalTo(first.getPath()));
+
+        mockMvc.perform(delete("/image/" + first.getUuid())).andExpect(status().isOk());
+        deletedImageCollector.purgeDeletedImages();
+        assertThat(deletedImageCollector.releaseOrphanBlobs(Instant.now().plusSeconds(60)), equalTo(0));
+        assertThat(blobStore.exists(first.getPath()), equalTo(true));
+
+        mockMvc.perform(delete("/image/" + second.getUuid())).andExpect(status().isOk());
+        deletedImageCollector.purgeDeletedImages();
+        // Still within the grace period
+        assertThat(deletedImageCollector.releaseOrphanBlobs(Instant.now().minusSeconds(60)), equalTo(0));
+        assertThat(deletedImageCollector.releaseOrphanBlobs(Instant.now().plusSeconds(60)), equalTo(1));
+        assertThat(blobStore.exists(first.getPath()), equalTo(false));
+    }
+
     @Test
     void shouldReturnErrorWhenDeletingNonExistingImage() throws Exception {
         UUID imageUuid = UUID.randomUUID();
@@ -204,4 +641,362 @@ class ImageRestControllerTest {
 
         assertThat(errorModel.getMessage(), equalTo("Image could not be deleted"));
     }
+
+    @Test
+    void shouldReturnImageContent() throws Exception {
+        byte[] content = "some image bytes".getBytes();
+        Image imageCreated = createImageWithContent(content);
+
+        byte[] result = mockMvc.perform(get("/image/" + imageCreated.getUuid() + "/content"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + imageCreated.getPath() + "\""))
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andExpect(header().exists("Last-Modified"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(result, equalTo(content));
+    }
+
+    @Test
+    void shouldTranscodeContentToWebpWhenAccepted() throws Exception {
+        Image imageCreated = createImageWithContent(png(40, 20));
+
+        byte[] result = mockMvc.perform(get("/image/" + imageCreated.getUuid() + "/content")
+                        .header("Accept", "image/avif,image/webp,image/*,*/*;q=0.8"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Vary", "Accept"))
+                .andExpect(header().string("ETag", "\"" + imageCreated.getPath() + ".webp\""))
+                .andExpect(content().contentType("image/webp"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(new String(result, 0, 4, StandardCharsets.US_ASCII), equalTo("RIFF"));
+        assertThat(new String(result, 8, 4, StandardCharsets.US_ASCII), equalTo("WEBP"));
+    }
+
+    @Test
+    void shouldServeUploadedContentVaryingOnAcceptWhenNoBetterFormatCanBeWritten() throws Exception {
+        byte[] content = png(40, 20);
+        Image imageCreated = createImageWithContent(content);
+
+        byte[] result = mockMvc.perform(get("/image/" + imageCreated.getUuid() + "/content")
+                        .header("Accept", "image/avif,image/*,*/*;q=0.8"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Vary", "Accept"))
+                .andExpect(header().string("ETag", "\"" + imageCreated.getPath() + ".png\""))
+                .andExpect(content().contentType("image/png"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(result, equalTo(content));
+    }
+
+    @Test
+    void shouldTagUploadedContentWithItsOwnFormatWhenTranscodeFails() throws Exception {
+        byte[] content = "claims to be a png".getBytes();
+        StoredBlob blob = blobStore.store(new ByteArrayInputStream(content));
+        Image image = imageRepository.save(Image.builder()
+                .path(blob.getKey())
+                .mimeType("image/png")
+                .width(40)
+                .height(20)
+                .build());
+        String uploadedEtag = "\"" + blob.getKey() + ".png\"";
+
+        byte[] result = mockMvc.perform(get("/image/" + image.getUuid() + "/content")
+                        .header("Accept", "image/webp,*/*;q=0.8"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", uploadedEtag))
+                .andExpect(content().contentType("image/png"))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertThat(result, equalTo(content));
+
+        mockMvc.perform(get("/image/" + image.getUuid() + "/content")
+                        .header("Accept", "image/webp,*/*;q=0.8")
+                        .header("If-None-Match", uploadedEtag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void shouldReturnPartialImageContentForRangeRequest() throws Exception {
+        byte[] content = "0123456789".getBytes();
+        Image imageCreated = createImageWithContent(content);
+
+        String result = mockMvc.perform(get("/image/" + imageCreated.getUuid() + "/content")
+                        .header("Range", "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 2-5/10"))
+                .andReturn().getResponse().getContentAsString();
+
+        assertThat(result, equalTo("2345"));
+    }
+
+    @Test
+    void shouldReturnRangeNotSatisfiableWhenRangeIsOutsideContent() throws Exception {
+        Image imageCreated = createImageWithContent("0123456789".getBytes());
+
+        mockMvc.perform(get("/image/" + imageCreated.getUuid() + "/content")
+                        .header("Range", "bytes=20-30"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string("Content-Range", "bytes */10"));
+    }
+
+    @Test
+    void shouldReturnRangeNotSatisfiableWhenSuffixRangeIsEmpty() throws Exception {
+        Image imageCreated = createImageWithContent("0123456789".getBytes());
+
+        mockMvc.perform(get("/image/" + imageCreated.getUuid() + "/content")
+                        .header("Range", "bytes=-0"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string("Content-Range", "bytes */10"));
+    }
+
+    @Test
+    void shouldIgnoreRangeHeaderThatDoesNotParse() throws Exception {
+        Image imageCreated = createImageWithContent("0123456789".getBytes());
+
+        for (String range : Arrays.asList("bytes=5-2", "bytes=abc", "items=0-3")) {
+            String result = mockMvc.perform(get("/image/" + imageCreated.getUuid() + "/content")
+                            .header("Range", range))
+                    .andExpect(status().isOk())
+                    .andExpect(header().doesNotExist("Content-Range"))
+                    .andReturn().getResponse().getContentAsString();
+
+            assertThat(result, equalTo("0123456789"));
+        }
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenImageContentEtagMatches() throws Exception {
+        Image imageCreated = createImageWithContent("cached bytes".getBytes());
+
+        String result = mockMvc.perform(get("/image/" + imageCreated.getUuid() + "/content")
+                        .header("If-None-Match", "\"" + imageCreated.getPath() + "\""))
+                .andExpect(status().isNotModified())
+                .andReturn().getResponse().getContentAsString();
+
+        assertThat(result, isEmptyString());
+    }
+
+    @Test
+    void shouldReturnNotFoundWhenImageContentIsRequestedForMissingImage() throws Exception {
+        mockMvc.perform(get("/image/" + UUID.randomUUID() + "/content"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldReturnImageVariantContent() throws Exception {
+        byte[] content = "thumbnail bytes".getBytes();
+        StoredBlob blob = blobStore.store(new ByteArrayInputStream(content));
+        Image image = imageRepository.save(Image.builder().path("anything").build());
+        imageVariantRepository.save(ImageVariant.builder()
+                .image(image)
+                .name("thumbnail")
+                .path(blob.getKey())
+                .mimeType("image/jpeg")
+                .width(200)
+                .height(100)
+                .byteSize(blob.getSize())
+                .build());
+
+        byte[] result = mockMvc.perform(get("/image/" + image.getUuid() + "/variant/thumbnail"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/jpeg"))
+                .andExpect(header().string("ETag", "\"" + blob.getKey() + "\""))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(result, equalTo(content));
+    }
+
+    @Test
+    void shouldReturnNotFoundWhenImageVariantDoesNotExist() throws Exception {
+        Image image = imageRepository.save(Image.builder().path("anything").build());
+
+        mockMvc.perform(get("/image/" + image.getUuid() + "/variant/thumbnail"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldReturnResizedImageCroppedToTheBoxWhenFitIsCover() throws Exception {
+        Image imageCreated = createImageWithContent(png(400, 200));
+
+        byte[] result = mockMvc.perform(get("/image/" + imageCreated.getUuid() + "/transform")
+                        .param("w", "100").param("h", "100").param("fit", "cover"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/jpeg"))
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        BufferedImage resized = ImageIO.read(new ByteArrayInputStream(result));
+        assertThat(resized.getWidth(), equalTo(100));
+        assertThat(resized.getHeight(), equalTo(100));
+    }
+
+    @Test
+    void shouldReturnSameResizedImageWhenTransformIsRequestedAgain() throws Exception {
+        Image imageCreated = createImageWithContent(png(400, 200));
+
+        MvcResult first = mockMvc.perform(get("/image/" + imageCreated.getUuid() + "/transform").param("w", "100"))
+                .andExpect(status().isOk())
+                .andReturn();
+        byte[] second = mockMvc.perform(get("/image/" + imageCreated.getUuid() + "/transform").param("w", "100"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", first.getResponse().getHeader("ETag")))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(second, equalTo(first.getResponse().getContentAsByteArray()));
+        assertThat(ImageIO.read(new ByteArrayInputStream(second)).getHeight(), equalTo(50));
+    }
+
+    @Test
+    void shouldReturnErrorWhenTransformFitIsUnknown() throws Exception {
+        Image imageCreated = createImageWithContent(png(40, 20));
+
+        mockMvc.perform(get("/image/" + imageCreated.getUuid() + "/transform")
+                        .param("w", "10").param("h", "10").param("fit", "stretch"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldReturnUnprocessableEntityWhenTransformedContentIsNotAnImage() throws Exception {
+        Image imageCreated = createImageWithContent("not an image".getBytes());
+
+        mockMvc.perform(get("/image/" + imageCreated.getUuid() + "/transform").param("w", "10"))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void shouldReturnImagesMatchingSearchQuery() throws Exception {
+        Image match = imageRepository.save(Image.builder().title("Aurora borealis").description("Night sky").path("path").build());
+        Image other = imageRepository.save(Image.builder().title("Beach").description("Sand and sea").path("path").build());
+        imageSearchIndex.index(match);
+        imageSearchIndex.index(other);
+        imageSearchIndex.refresh();
+
+        String result = mockMvc.perform(get("/image/search").param("q", "auror"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        ImageSearchResult searchResult = mapper.readValue(result, ImageSearchResult.class);
+        assertThat(searchResult.getTotal(), equalTo(1L));
+        assertThat(searchResult.getImages().get(0).getUuid(), equalTo(match.getUuid()));
+    }
+
+    @Test
+    void shouldReturnErrorWhenSearchMonthIsNotValid() throws Exception {
+        mockMvc.perform(get("/image/search").param("q", "sky").param("added", "January"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldReturnImagesThatLookTheSame() throws Exception {
+        Image original = createImageWithContent(png(320, 240));
+        Image smaller = createImageWithContent(png(160, 120));
+        assertThat(original.getPerceptualHash(), notNullValue());
+        // The index follows committed changes only, this test rolls back
+        perceptualHashIndex.put(original.getUuid(), original.getPerceptualHash());
+        perceptualHashIndex.put(smaller.getUuid(), smaller.getPerceptualHash());
+        try {
+            String result = mockMvc.perform(get("/image/" + original.getUuid() + "/similar").param("distance", "4"))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+
+            List<SimilarImage> similarImages = mapper.readValue(result, new TypeReference<List<SimilarImage>>() {});
+            assertThat(similarImages.size(), equalTo(1));
+            assertThat(similarImages.get(0).getImage().getUuid(), equalTo(smaller.getUuid()));
+        } finally {
+            perceptualHashIndex.remove(original.getUuid());
+            perceptualHashIndex.remove(smaller.getUuid());
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldRejectNearDuplicateWhenAskedToAndReleaseItsContent() throws Exception {
+        // The refused content is released in a transaction of its own, so the image has to really commit
+        Image original = createImageWithContent(png(320, 240));
+        perceptualHashIndex.put(original.getUuid(), original.getPerceptualHash());
+        try {
+            byte[] copy = png(300, 200);
+            mockMvc.perform(MockMvcRequestBuilders
+                            .multipart("/image")
+                            .file(new MockMultipartFile("file", copy))
+                            .header("content-type", "multipart/*")
+                            .param("title", "Copy")
+                            .param("rejectNearDuplicate", "true"))
+                    .andExpect(status().isConflict());
+
+            MessageDigest digest = BlobKeys.newDigest();
+            assertThat(orphanBlobRepository.countByPathIn(Collections.singleton(BlobKeys.toHex(digest.digest(copy)))),
+                    equalTo(1L));
+        } finally {
+            perceptualHashIndex.remove(original.getUuid());
+            imageVariantRepository.deleteAll();
+            imageRepository.deleteAll();
+            orphanBlobRepository.deleteAll();
+            outboxEventRepository.deleteAll();
+        }
+    }
+
+    @Test
+    void shouldReturnErrorWhenSimilarityDistanceIsTooLarge() throws Exception {
+        mockMvc.perform(get("/image/" + UUID.randomUUID() + "/similar").param("distance", "40"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldRelayCommittedImageChangesInOrder() throws Exception {
+        // The outbox row is written just before commit, so the change has to really commit
+        Image image = createImageWithContent("outbox".getBytes());
+        try {
+            mockMvc.perform(delete("/image/" + image.getUuid())).andExpect(status().isOk());
+
+            outboxRelay.relay();
+
+            List<OutboxEvent> events = outboxEventSink.getEvents().stream()
+                    .filter(event -> event.getImageUuid().equals(image.getUuid()))
+                    .collect(Collectors.toList());
+            assertThat(events.stream().map(OutboxEvent::getType).collect(Collectors.toList()),
+                    contains(ImageChangeType.CREATED, ImageChangeType.DELETED));
+            assertThat(mapper.readValue(events.get(0).getPayload(), Image.class).getTitle(), equalTo("With content"));
+            assertThat(events.get(1).getPayload(), nullValue());
+            assertThat(outboxEventRepository.count(), equalTo(0L));
+        } finally {
+            imageRepository.deleteAll();
+            deletedImageCollector.purgeDeletedImages();
+            orphanBlobRepository.deleteAll();
+            outboxEventRepository.deleteAll();
+            outboxEventSink.clear();
+        }
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", output);
+        return output.toByteArray();
+    }
+
+    private Image createImageWithKey(String idempotencyKey, String content) throws Exception {
+        String result = mockMvc
+                .perform(MockMvcRequestBuilders
+                        .multipart("/image")
+                        .file(new MockMultipartFile("file", content.getBytes()))
+                        .header("content-type", "multipart/*")
+                        .header("Idempotency-Key", idempotencyKey)
+                        .param("title", "Retried"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readValue(result, Image.class);
+    }
+
+    private Image createImageWithContent(byte[] content) throws Exception {
+        String result = mockMvc
+                .perform(MockMvcRequestBuilders
+                        .multipart("/image")
+                        .file(new MockMultipartFile("file", content))
+                        .header("content-type", "multipart/*")
+                        .param("title", "With content"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readValue(result, Image.class);
+    }
 }
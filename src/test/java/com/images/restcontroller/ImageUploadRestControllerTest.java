@@ -0,0 +1,120 @@
+package com.images.restcontroller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.images.domain.Image;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@Transactional
+class ImageUploadRestControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        mapper.registerModule(new JavaTimeModule());
+    }
+
+    @Test
+    void shouldCreateImageFromChunkedUpload() throws Exception {
+        byte[] content = "resumable upload content".getBytes(StandardCharsets.UTF_8);
+        String location = createUpload(content.length);
+
+        mockMvc.perform(patch(location)
+                        .header("Upload-Offset", 0)
+                        .contentType(ImageUploadRestController.CHUNK_CONTENT_TYPE)
+                        .content(Arrays.copyOfRange(content, 0, 10)))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string("Upload-Offset", "10"));
+
+        // A client that lost the connection asks where to carry on
+        mockMvc.perform(head(location))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Upload-Offset", "10"))
+                .andExpect(header().string("Upload-Length", String.valueOf(content.length)));
+
+        mockMvc.perform(patch(location)
+                        .header("Upload-Offset", 10)
+                        .contentType(ImageUploadRestController.CHUNK_CONTENT_TYPE)
+                        .content(Arrays.copyOfRange(content, 10, content.length)))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string("Upload-Offset", String.valueOf(content.length)));
+
+        String result = mockMvc.perform(post(location + "/complete").param("title", "Resumed"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        Image image = mapper.readValue(result, Image.class);
+        assertThat(image.getTitle(), equalTo("Resumed"));
+        mockMvc.perform(get("/image/" + image.getUuid() + "/content"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(content));
+
+        // Completing again, e.g. after the response was lost, returns the same image
+        String retried = mockMvc.perform(post(location + "/complete").param("title", "Resumed"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(mapper.readValue(retried, Image.class).getUuid(), equalTo(image.getUuid()));
+    }
+
+    @Test
+    void shouldReturnConflictWhenChunkOffsetDoesNotMatch() throws Exception {
+        String location = createUpload(10);
+
+        mockMvc.perform(patch(location)
+                        .header("Upload-Offset", 5)
+                        .contentType(ImageUploadRestController.CHUNK_CONTENT_TYPE)
+                        .content(new byte[5]))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void shouldReturnConflictWhenIncompleteUploadIsCompleted() throws Exception {
+        String location = createUpload(10);
+
+        mockMvc.perform(post(location + "/complete").param("title", "Too early"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void shouldReturnErrorWhenUploadLengthIsTooLarge() throws Exception {
+        mockMvc.perform(post("/image/upload").header("Upload-Length", Long.MAX_VALUE))
+                .andExpect(status().isBadRequest());
+    }
+
+    private String createUpload(long length) throws Exception {
+        return mockMvc.perform(post("/image/upload").header("Upload-Length", length))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Upload-Offset", "0"))
+                .andReturn().getResponse().getHeader("Location");
+    }
+}
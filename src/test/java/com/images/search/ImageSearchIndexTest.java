@@ -0,0 +1,151 @@
+package com.images.search;
+
+import com.images.domain.Image;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class ImageSearchIndexTest {
+
+    @TempDir
+    Path root;
+
+    private ImageSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ImageSearchIndex(root.toString());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        index.close();
+    }
+
+    @Test
+    void testSearch_whenLastWordIsIncomplete_thenImagesMatchingThePrefixReturned() throws IOException {
+        final Image mountain = image("Mountain lake", "Early morning at the lake", LocalDateTime.of(2022, 1, 5, 10, 0));
+        final Image city = image("City at night", "Lights of the city", LocalDateTime.of(2022, 1, 6, 10, 0));
+        index.index(mountain);
+        index.index(city);
+        index.refresh();
+
+        final ImageSearchHits hits = index.search("morning la", null, 10);
+
+        assertThat(hits.getTotal(), equalTo(1L));
+        assertThat(hits.getUuids(), contains(mountain.getUuid()));
+    }
+
+    @Test
+    void testSearch_whenWordInTitleOfOneAndDescriptionOfAnother_thenTitleMatchRankedFirst() throws IOException {
+        final Image inDescription = image("Harbour", "Boats next to the sunset pier", LocalDateTime.of(2022, 1, 5, 10, 0));
+        final Image inTitle = image("Sunset", "Evening sky", LocalDateTime.of(2022, 2, 5, 10, 0));
+        index.index(inDescription);
+        index.index(inTitle);
+        index.refresh();
+
+        final ImageSearchHits hits = index.search("Sunset", null, 10);
+
+        assertThat(hits.getUuids(), contains(inTitle.getUuid(), inDescription.getUuid()));
+    }
+
+    @Test
+    void testSearch_whenImagesAddedInDifferentMonths_thenCountedPerMonthAndDrillDownFilters() throws IOException {
+        final Image january = image("Snow", "Snow on trees", LocalDateTime.of(2022, 1, 5, 10, 0));
+        final Image february = image("Snow again", "More snow", LocalDateTime.of(2022, 2, 5, 10, 0));
+        final Image otherFebruary = image("Snowman", "Snow in the garden", LocalDateTime.of(2022, 2, 6, 10, 0));
+        index.index(january);
+        index.index(february);
+        index.index(otherFebruary);
+        index.refresh();
+
+        final ImageSearchHits all = index.search("snow", null, 10);
+        final ImageSearchHits inFebruary = index.search("snow", "2022-02", 10);
+
+        assertThat(all.getAdded(), allOf(hasEntry("2022-01", 1L), hasEntry("2022-02", 2L)));
+        assertThat(inFebruary.getTotal(), equalTo(2L));
+        assertThat(inFebruary.getUuids(), containsInAnyOrder(february.getUuid(), otherFebruary.getUuid()));
+    }
+
+    @Test
+    void testSearch_whenImageUpdatedAndAnotherDeleted_thenOnlyCurrentContentMatches() throws IOException {
+        final Image image = image("Forest", "Tall trees", LocalDateTime.of(2022, 1, 5, 10, 0));
+        final Image deleted = image("Forest path", "Trees", LocalDateTime.of(2022, 1, 5, 10, 0));
+        index.index(image);
+        index.index(deleted);
+        index.refresh();
+
+        image.setTitle("Desert");
+        index.index(image);
+        index.delete(deleted.getUuid());
+        index.refresh();
+
+        assertThat(index.search("forest", null, 10).getTotal(), equalTo(0L));
+        assertThat(index.search("desert", null, 10).getUuids(), contains(image.getUuid()));
+    }
+
+    @Test
+    void testSearch_whenChangesNotRefreshedYet_thenTheyAreNotVisible() throws IOException {
+        index.index(image("River", "Water", LocalDateTime.of(2022, 1, 5, 10, 0)));
+
+        assertThat(index.search("river", null, 10).getTotal(), equalTo(0L));
+        assertThat(index.size(), equalTo(1L));
+    }
+
+    @Test
+    void testSearch_whenImagesAddedAfterARefresh_thenMonthCountsFollowTheNewReader() throws IOException {
+        index.index(image("Snow", "Snow on trees", LocalDateTime.of(2022, 1, 5, 10, 0)));
+        index.refresh();
+        assertThat(index.search("snow", null, 10).getAdded(), equalTo(Collections.singletonMap("2022-01", 1L)));
+
+        index.index(image("Snowman", "Snow in the garden", LocalDateTime.of(2022, 1, 6, 10, 0)));
+        index.refresh();
+
+        assertThat(index.search("snow", null, 10).getAdded(), equalTo(Collections.singletonMap("2022-01", 2L)));
+    }
+
+    @Test
+    void testClear_whenImagesIndexed_thenNoneIsLeftAfterRefresh() throws IOException {
+        final Image image = image("Lighthouse", "Coast", LocalDateTime.of(2022, 1, 5, 10, 0));
+        index.index(image);
+        index.refresh();
+        assertThat(index.contains(image.getUuid()), equalTo(true));
+
+        index.clear();
+        index.refresh();
+
+        assertThat(index.contains(image.getUuid()), equalTo(false));
+        assertThat(index.size(), equalTo(0L));
+    }
+
+    @Test
+    void testConstructor_whenIndexReopened_thenCommittedImagesAreSearchable() throws IOException {
+        final Image image = image("Bridge", "Old stone bridge", LocalDateTime.of(2022, 1, 5, 10, 0));
+        index.index(image);
+        index.close();
+
+        index = new ImageSearchIndex(root.toString());
+
+        assertThat(index.search("bridge", null, 10).getUuids(), contains(image.getUuid()));
+    }
+
+    private static Image image(String title, String description, LocalDateTime added) {
+        return Image.builder()
+                .uuid(UUID.randomUUID())
+                .title(title)
+                .description(description)
+                .path("path")
+                .dateAdded(added)
+                .build();
+    }
+}
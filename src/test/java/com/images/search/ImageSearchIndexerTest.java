@@ -0,0 +1,145 @@
+package com.images.search;
+
+import com.images.domain.Image;
+import com.images.events.ImageChangedEvent;
+import com.images.repository.ImageRepository;
+import com.images.services.ImageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class ImageSearchIndexerTest {
+
+    @TempDir
+    Path root;
+
+    private ImageSearchIndex index;
+    @Mock
+    private ImageService imageService;
+    @Mock
+    private ImageRepository imageRepository;
+
+    @BeforeEach
+    void setUp() {
+        index = new ImageSearchIndex(root.toString());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        index.close();
+    }
+
+    @Test
+    void testReconcile_whenIndexMissesTheNewestImage_thenItIsRebuiltFromTheTable() throws IOException {
+        final Image stale = image("Stale");
+        final Image older = image("Older");
+        final Image newest = image("Newest");
+        index.index(stale);
+        index.refresh();
+        given(imageRepository.count()).willReturn(2L);
+        given(imageRepository.findNewestUuids(any(Pageable.class))).willReturn(Collections.singletonList(newest.getUuid()));
+        streamAll(older, newest);
+
+        new ImageSearchIndexer(index, imageService, imageRepository).reconcile();
+
+        assertThat(index.size(), equalTo(2L));
+        assertThat(index.contains(stale.getUuid()), equalTo(false));
+        assertThat(index.search("newest", null, 10).getUuids(), contains(newest.getUuid()));
+    }
+
+    @Test
+    void testReconcile_whenIndexHoldsEveryImage_thenTableIsNotRead() throws IOException {
+        final Image image = image("Kept");
+        index.index(image);
+        index.refresh();
+        given(imageRepository.count()).willReturn(1L);
+        given(imageRepository.findNewestUuids(any(Pageable.class))).willReturn(Collections.singletonList(image.getUuid()));
+
+        new ImageSearchIndexer(index, imageService, imageRepository).reconcile();
+
+        verify(imageService, never()).streamAll(any());
+        assertThat(index.contains(image.getUuid()), equalTo(true));
+    }
+
+    @Test
+    void testRetryFailed_whenUpdateFailed_thenCurrentRowIsIndexedOnTheNextRun() throws IOException {
+        final ImageSearchIndex failing = spy(index);
+        final Image image = image("Retried");
+        willThrow(new UncheckedIOException(new IOException("disk full"))).given(failing).index(image);
+        final ImageSearchIndexer indexer = new ImageSearchIndexer(failing, imageService, imageRepository);
+
+        indexer.onImageChanged(ImageChangedEvent.created(image));
+        assertThat(indexer.failedCount(), equalTo(1));
+
+        final Image current = image("Retried again");
+        current.setUuid(image.getUuid());
+        given(imageRepository.findById(image.getUuid())).willReturn(Optional.of(current));
+        indexer.retryFailed();
+        index.refresh();
+
+        assertThat(indexer.failedCount(), equalTo(0));
+        assertThat(index.search("again", null, 10).getUuids(), contains(image.getUuid()));
+    }
+
+    @Test
+    void testRetryFailed_whenImageIsGone_thenItIsRemovedFromTheIndex() throws IOException {
+        final ImageSearchIndex failing = spy(index);
+        final Image image = image("Removed");
+        index.index(image);
+        index.refresh();
+        willThrow(new UncheckedIOException(new IOException("disk full"))).given(failing).delete(image.getUuid());
+        final ImageSearchIndexer indexer = new ImageSearchIndexer(failing, imageService, imageRepository);
+
+        indexer.onImageChanged(ImageChangedEvent.deleted(image.getUuid()));
+        reset(failing);
+        given(imageRepository.findById(image.getUuid())).willReturn(Optional.empty());
+        indexer.retryFailed();
+        index.refresh();
+
+        assertThat(indexer.failedCount(), equalTo(0));
+        assertThat(index.contains(image.getUuid()), equalTo(false));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void streamAll(Image... images) {
+        willAnswer(invocation -> {
+            final Consumer<Image> action = invocation.getArgument(0);
+            for (Image image : images) {
+                action.accept(image);
+            }
+            return null;
+        }).given(imageService).streamAll(any());
+    }
+
+    private static Image image(String title) {
+        return Image.builder()
+                .uuid(UUID.randomUUID())
+                .title(title)
+                .path("path")
+                .dateAdded(LocalDateTime.of(2022, 1, 5, 10, 0))
+                .build();
+    }
+}
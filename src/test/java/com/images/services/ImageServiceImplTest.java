@@ -1,20 +1,40 @@
 package com.images.services;
 
+import com.images.cache.ImageCache;
 import com.images.domain.Image;
+import com.images.events.ImageChangeType;
+import com.images.events.ImageChangedEvent;
 import com.images.exception.DatabaseOperationException;
 import com.images.forms.ImageCreateForm;
 import com.images.forms.ImageUpdateForm;
+import com.images.metrics.ImageMetrics;
 import com.images.notification.NotificationService;
 import com.images.repository.ImageRepository;
+import com.images.repository.OrphanBlobRepository;
+import com.images.search.ImageSearchHits;
+import com.images.search.ImageSearchIndex;
+import com.images.similarity.PerceptualHashIndex;
+import com.images.exception.BlobStoreException;
+import com.images.storage.BlobStore;
+import com.images.storage.BlobStoreExecutor;
+import com.images.storage.StoredBlob;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDateTime;
 import java.util.*;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -22,19 +42,41 @@ import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(SpringExtension.class)
 class ImageServiceImplTest {
+    private static final String BLOB_KEY = "a0f1c3c0f8e4b7a2d1e9f0c5b6a7d8e9f0a1b2c3d4e5f60718293a4b5c6d7e8f";
+
     private ImageServiceImpl service;
+    private SimpleMeterRegistry meterRegistry;
     @Mock
     private ImageRepository imageRepository;
     @Mock
     private NotificationService notificationService;
+    @Mock
+    private BlobStore blobStore;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private ImageSearchIndex imageSearchIndex;
+    @Mock
+    private OrphanBlobRepository orphanBlobRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    private PerceptualHashIndex perceptualHashIndex;
 
     @BeforeEach
     void setUp() {
-        service = new ImageServiceImpl(imageRepository, notificationService);
+        meterRegistry = new SimpleMeterRegistry();
+        perceptualHashIndex = new PerceptualHashIndex();
+        given(transactionManager.getTransaction(any())).willReturn(new SimpleTransactionStatus());
+        service = new ImageServiceImpl(imageRepository, notificationService, blobStore,
+                new BlobStoreExecutor(blobStore, 2, 4), new ImageCache(100, 60), eventPublisher,
+                new ImageMetrics(meterRegistry), imageSearchIndex, perceptualHashIndex, orphanBlobRepository,
+                transactionManager, 4);
+        given(blobStore.store(any(MultipartFile.class))).willReturn(new StoredBlob(BLOB_KEY, 8));
     }
 
     @Test
@@ -71,6 +113,55 @@ class ImageServiceImplTest {
 
     }
 
+    @Test
+    void testFindPage_whenMoreImagesThanLimit_thenPageWithCursorOfLastImageReturned() {
+        final Image image1 = Image.builder().uuid(UUID.randomUUID()).build();
+        final Image image2 = Image.builder().uuid(UUID.randomUUID()).build();
+        final Image image3 = Image.builder().uuid(UUID.randomUUID()).build();
+
+        given(imageRepository
+                .findFirstPage(PageRequest.of(0, 3)))
+                .willReturn(Arrays.asList(image1, image2, image3));
+
+        final ImagePage result = service.findPage(null, 2);
+
+        assertThat(result.getImages(), contains(image1, image2));
+        assertThat(ImageCursor.decode(result.getNext()), equalTo(ImageCursor.of(image2)));
+    }
+
+    @Test
+    void testFindPage_whenCursorGiven_thenImagesAfterCursorReturnedWithoutNextCursor() {
+        final ImageCursor cursor = new ImageCursor(LocalDateTime.of(2022, 5, 1, 12, 30), UUID.randomUUID());
+        final Image image = Image.builder().uuid(UUID.randomUUID()).build();
+
+        given(imageRepository
+                .findPageAfter(cursor.getDateAdded(), cursor.getUuid(), PageRequest.of(0, 3)))
+                .willReturn(Collections.singletonList(image));
+
+        final ImagePage result = service.findPage(cursor, 2);
+
+        assertThat(result.getImages(), contains(image));
+        assertThat(result.getNext(), is(nullValue()));
+    }
+
+    @Test
+    void testSearch_whenIndexReturnsHits_thenImagesReturnedInRankOrderWithoutMissingOnes() throws Exception {
+        final Image first = Image.builder().uuid(UUID.randomUUID()).title("first").build();
+        final Image second = Image.builder().uuid(UUID.randomUUID()).title("second").build();
+        final UUID deleted = UUID.randomUUID();
+        final List<UUID> ranked = Arrays.asList(second.getUuid(), deleted, first.getUuid());
+
+        given(imageSearchIndex.search("query", null, 10))
+                .willReturn(new ImageSearchHits(3, ranked, Collections.singletonMap("2022-01", 3L)));
+        given(imageRepository.findAllById(ranked)).willReturn(Arrays.asList(first, second));
+
+        final ImageSearchResult result = service.search("query", null, 10);
+
+        assertThat(result.getImages(), contains(second, first));
+        assertThat(result.getTotal(), equalTo(3L));
+        assertThat(result.getAdded(), hasEntry("2022-01", 3L));
+    }
+
     @Test
     void testCreateImage_whenImageFailedToSave_thenDatabaseOperationErrorThrown() {
         final MultipartFile fileMock = new MockMultipartFile("mockFile", "whatever".getBytes());
@@ -87,6 +178,8 @@ class ImageServiceImplTest {
 
         assertThat(result.getMessage(), equalTo("Database operation failed"));
         verify(notificationService).addErrorMessage("Database operation failed with message: " + exceptionToThrow.getMessage());
+        verify(orphanBlobRepository).record(Collections.singleton(BLOB_KEY));
+        assertThat(meterRegistry.get("images.operation").tags("operation", "create", "outcome", "error").timer().count(), equalTo(1L));
     }
 
     @Test
@@ -103,6 +196,141 @@ class ImageServiceImplTest {
         final Image result = service.createImage(fileMock, imageCreateForm);
         assertThat(result.getDescription(), equalTo(imageReturned.getDescription()));
         verify(notificationService).addInfoMessage("Image has been created successfully");
+        verify(imageRepository).save(argThat(image -> BLOB_KEY.equals(image.getPath())));
+        verify(eventPublisher).publishEvent(argThat((ImageChangedEvent event) ->
+                event.getType() == ImageChangeType.CREATED && event.getImage() == imageReturned));
+        assertThat(meterRegistry.get("images.operation").tags("operation", "create", "outcome", "success").timer().count(), equalTo(1L));
+        assertThat(meterRegistry.get("images.uploaded").counter().count(), equalTo(8.0));
+    }
+
+    @Test
+    void testCreateImage_whenTransactionFailsToCommit_thenOperationIsRecordedAsErrorOnCompletion() {
+        given(imageRepository
+                .save(any(Image.class)))
+                .willReturn(Image.builder().build());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.createImage(new MockMultipartFile("mockFile", "whatever".getBytes()), ImageCreateForm.builder().build());
+            assertThat(meterRegistry.find("images.operation").timer(), is(nullValue()));
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(meterRegistry.get("images.operation").tags("operation", "create", "outcome", "error").timer().count(), equalTo(1L));
+        assertThat(meterRegistry.find("images.operation").tags("outcome", "success").timer(), is(nullValue()));
+    }
+
+    @Test
+    void testCreateImage_whenTransactionRollsBack_thenStoredContentIsReleasedOnlyThen() {
+        given(imageRepository
+                .save(any(Image.class)))
+                .willReturn(Image.builder().build());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.createImage(new MockMultipartFile("mockFile", "whatever".getBytes()), ImageCreateForm.builder().build());
+            verify(orphanBlobRepository, never()).record(any());
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        verify(orphanBlobRepository).record(Collections.singleton(BLOB_KEY));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.createImage(new MockMultipartFile("mockFile", "whatever".getBytes()), ImageCreateForm.builder().build());
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        verify(orphanBlobRepository, times(1)).record(any());
+    }
+
+    @Test
+    void testCreateImages_whenOneBlobFailsToStore_thenOtherImagesCreatedInOneSave() {
+        final MultipartFile goodFile = new MockMultipartFile("file", "good".getBytes());
+        final MultipartFile badFile = new MockMultipartFile("file", "bad".getBytes());
+        final List<ImageCreateForm> forms = Arrays.asList(
+                ImageCreateForm.builder().title("good").build(),
+                ImageCreateForm.builder().title("bad").build());
+
+        given(blobStore.store(badFile)).willThrow(new BlobStoreException("disk full"));
+        given(imageRepository
+                .saveAll(anyList()))
+                .willAnswer(invocation -> invocation.getArgument(0));
+
+        final List<ImageBatchResult> result = service.createImages(Arrays.asList(goodFile, badFile), forms);
+
+        assertThat(result, hasSize(2));
+        assertThat(result.get(0).getImage().getTitle(), equalTo("good"));
+        assertThat(result.get(0).getImage().getPath(), equalTo(BLOB_KEY));
+        assertThat(result.get(1).getImage(), is(nullValue()));
+        assertThat(result.get(1).getError(), equalTo("Image content could not be stored"));
+        verify(imageRepository).saveAll(argThat(images -> ((List<Image>) images).size() == 1));
+        verify(imageRepository).flush();
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void testCreateImages_whenBatchFailsToFlush_thenRowsAreSavedOneByOneAndRefusedContentIsReleased() {
+        final MultipartFile goodFile = new MockMultipartFile("file", "good".getBytes());
+        final MultipartFile badFile = new MockMultipartFile("file", "bad".getBytes());
+        final List<ImageCreateForm> forms = Arrays.asList(
+                ImageCreateForm.builder().title("good").build(),
+                ImageCreateForm.builder().title("bad").build());
+
+        given(blobStore.store(badFile)).willReturn(new StoredBlob("bad" + BLOB_KEY.substring(3), 3));
+        given(imageRepository
+                .saveAll(anyList()))
+                .willAnswer(invocation -> invocation.getArgument(0));
+        willThrow(new DataIntegrityViolationException("too long")).given(imageRepository).flush();
+        given(imageRepository
+                .saveAndFlush(any(Image.class)))
+                .willAnswer(invocation -> {
+                    final Image image = invocation.getArgument(0);
+                    if ("bad".equals(image.getTitle())) {
+                        throw new DataIntegrityViolationException("too long");
+                    }
+                    return image;
+                });
+
+        final List<ImageBatchResult> result = service.createImages(Arrays.asList(goodFile, badFile), forms);
+
+        assertThat(result.get(0).getImage().getTitle(), equalTo("good"));
+        assertThat(result.get(1).getImage(), is(nullValue()));
+        assertThat(result.get(1).getError(), equalTo("Database operation failed"));
+        verify(imageRepository, times(2)).saveAndFlush(any(Image.class));
+        verify(orphanBlobRepository).record(Collections.singleton("bad" + BLOB_KEY.substring(3)));
+        verify(orphanBlobRepository, never()).record(Collections.singleton(BLOB_KEY));
+        verify(eventPublisher).publishEvent(argThat((ImageChangedEvent event) -> event.getImage() == result.get(0).getImage()));
+        verify(transactionManager, times(2)).rollback(any());
+    }
+
+    @Test
+    void testCreateImages_whenSaveFails_thenEveryStoredItemReportedAsFailed() {
+        final MultipartFile file = new MockMultipartFile("file", "content".getBytes());
+
+        given(imageRepository
+                .saveAll(anyList()))
+                .willThrow(new IllegalArgumentException("message"));
+        given(imageRepository
+                .saveAndFlush(any(Image.class)))
+                .willThrow(new IllegalArgumentException("message"));
+
+        final List<ImageBatchResult> result = service.createImages(Collections.singletonList(file),
+                Collections.singletonList(ImageCreateForm.builder().build()));
+
+        assertThat(result.get(0).getError(), equalTo("Database operation failed"));
+        verify(notificationService).addErrorMessage("Image [0] database operation failed with message: message");
+        verify(orphanBlobRepository).record(Collections.singleton(BLOB_KEY));
     }
 
     @Test
@@ -120,6 +348,7 @@ class ImageServiceImplTest {
 
         assertThat(result, is(nullValue()));
         verify(notificationService).addErrorMessage("Image has not been found in database");
+        verify(blobStore, never()).store(any(MultipartFile.class));
     }
 
     @Test
@@ -143,6 +372,19 @@ class ImageServiceImplTest {
         verify(notificationService).addErrorMessage("Error occurred: " + exceptionThrown.getMessage());
     }
 
+    @Test
+    void testUpdateImage_whenContentChanges_thenPreviousBlobIsRecordedAsOrphan() {
+        final UUID imageUuid = UUID.randomUUID();
+        final Image imageFromDb = Image.builder().uuid(imageUuid).path("previous").build();
+        given(imageRepository.findById(imageUuid)).willReturn(Optional.of(imageFromDb));
+        given(imageRepository.save(imageFromDb)).willReturn(imageFromDb);
+
+        service.updateImage(new MockMultipartFile("mockFile", "whatever".getBytes()),
+                ImageUpdateForm.builder().uuid(imageUuid).title("new").build());
+
+        verify(orphanBlobRepository).record(Collections.singleton("previous"));
+    }
+
     @Test
     void testUpdateImage_whenImageSavesToDatabase_thenEditedImageReturned() {
         final UUID imageUuid = UUID.randomUUID();
@@ -193,6 +435,60 @@ class ImageServiceImplTest {
         assertThat(result, equalTo(imageReturnedFromDb));
     }
 
+    @Test
+    void testGetImage_whenImageRequestedTwice_thenDatabaseQueriedOnce() {
+        final UUID uuid = UUID.randomUUID();
+        final Image imageReturnedFromDb = Image.builder().uuid(uuid).build();
+
+        given(imageRepository
+                .findById(uuid))
+                .willReturn(Optional.of(imageReturnedFromDb));
+
+        service.getImage(uuid);
+        final Image result = service.getImage(uuid);
+
+        assertThat(result, equalTo(imageReturnedFromDb));
+        verify(imageRepository, times(1)).findById(uuid);
+    }
+
+    @Test
+    void testGetImage_whenImageUpdatedAfterBeingCached_thenUpdatedImageReturned() {
+        final UUID uuid = UUID.randomUUID();
+        final Image cachedImage = Image.builder().uuid(uuid).title("old").build();
+        final Image updatedImage = Image.builder().uuid(uuid).title("new").build();
+        final MultipartFile fileMock = new MockMultipartFile("mockFile", "whatever".getBytes());
+
+        given(imageRepository
+                .findById(uuid))
+                .willReturn(Optional.of(cachedImage), Optional.of(cachedImage), Optional.of(updatedImage));
+        given(imageRepository
+                .save(any(Image.class)))
+                .willReturn(updatedImage);
+
+        service.getImage(uuid);
+        service.updateImage(fileMock, ImageUpdateForm.builder().uuid(uuid).title("new").build());
+        final Image result = service.getImage(uuid);
+
+        assertThat(result.getTitle(), equalTo("new"));
+    }
+
+    @Test
+    void testGetImage_whenImageDeletedAfterBeingCached_thenImageNoLongerReturned() {
+        final UUID uuid = UUID.randomUUID();
+
+        given(imageRepository
+                .findById(uuid))
+                .willReturn(Optional.of(Image.builder().uuid(uuid).build()), Optional.empty());
+
+        given(imageRepository.markDeleted(eq(Collections.singleton(uuid)), any(LocalDateTime.class))).willReturn(1);
+
+        service.getImage(uuid);
+        service.deleteImage(uuid);
+        final Image result = service.getImage(uuid);
+
+        assertThat(result, is(nullValue()));
+    }
+
     @Test
     void testGetImage_whenImageNotFoundInDatabase_thenNullValueReturned() {
         final UUID uuid = UUID.randomUUID();
@@ -207,16 +503,20 @@ class ImageServiceImplTest {
 
         assertThat(result, is(nullValue()));
         verify(notificationService).addErrorMessage(String.format("Image with uuid [%s] is not found", uuid));
+        assertThat(meterRegistry.get("images.operation").tags("operation", "get", "outcome", "not_found").timer().count(), equalTo(1L));
     }
 
     @Test
     void testDeleteImage_whenUuidIsDefined_thenImageDeletedAndInfoNotificationAdded() {
         final UUID uuid = UUID.randomUUID();
+        given(imageRepository.markDeleted(eq(Collections.singleton(uuid)), any(LocalDateTime.class))).willReturn(1);
 
         service.deleteImage(uuid);
 
         verify(notificationService).addInfoMessage(String.format("Successfully deleted an image with uuid [%s]", uuid));
         verify(notificationService, never()).addErrorMessage("Image can not be deleted");
+        verify(eventPublisher).publishEvent(argThat((ImageChangedEvent event) ->
+                event.getType() == ImageChangeType.DELETED && uuid.equals(event.getUuid())));
     }
 
     @Test
@@ -226,7 +526,7 @@ class ImageServiceImplTest {
 
         doThrow(exceptionThrown)
                 .when(imageRepository)
-                .deleteById(uuid);
+                .markDeleted(eq(Collections.singleton(uuid)), any(LocalDateTime.class));
 
         final DatabaseOperationException result = assertThrows(DatabaseOperationException.class, () ->
                 service.deleteImage(uuid));
@@ -236,4 +536,31 @@ class ImageServiceImplTest {
         assertThat(result.getMessage(), equalTo("Image could not be deleted"));
     }
 
+    @Test
+    void testDeleteImage_whenImageDoesNotExist_thenDatabaseOperationExceptionIsThrown() {
+        final UUID uuid = UUID.randomUUID();
+
+        final DatabaseOperationException result = assertThrows(DatabaseOperationException.class, () ->
+                service.deleteImage(uuid));
+
+        assertThat(result.getMessage(), equalTo("Image could not be deleted"));
+        verify(eventPublisher, never()).publishEvent(any(ImageChangedEvent.class));
+    }
+
+    @Test
+    void testDeleteImages_whenSomeImagesExist_thenOnlyThoseAreMarkedDeletedAndPublished() {
+        final UUID existing = UUID.randomUUID();
+        final UUID missing = UUID.randomUUID();
+        final List<UUID> requested = Arrays.asList(existing, missing);
+        given(imageRepository.findExistingUuids(requested)).willReturn(Collections.singletonList(existing));
+
+        final List<UUID> result = service.deleteImages(requested);
+
+        assertThat(result, contains(existing));
+        verify(imageRepository).markDeleted(eq(Collections.singletonList(existing)), any(LocalDateTime.class));
+        verify(eventPublisher).publishEvent(argThat((ImageChangedEvent event) ->
+                event.getType() == ImageChangeType.DELETED && existing.equals(event.getUuid())));
+        verify(notificationService).addInfoMessage("Successfully deleted [1] of [2] images");
+    }
+
 }
@@ -0,0 +1,97 @@
+package com.images.similarity;
+
+import com.images.imaging.PerceptualHash;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PerceptualHashIndexTest {
+
+    private final PerceptualHashIndex index = new PerceptualHashIndex();
+
+    @Test
+    void testSearch_whenHashesAreClose_thenClosestReturnedFirst() {
+        final UUID same = UUID.randomUUID();
+        final UUID close = UUID.randomUUID();
+        final UUID far = UUID.randomUUID();
+        index.put(same, 0xF0F0F0F0F0F0F0F0L);
+        index.put(close, 0xF0F0F0F0F0F0F0F0L ^ 0b1011L);
+        index.put(far, ~0xF0F0F0F0F0F0F0F0L);
+
+        final List<SimilarityMatch> matches = index.search(0xF0F0F0F0F0F0F0F0L, 5, 10, null);
+
+        assertThat(matches, contains(new SimilarityMatch(same, 0), new SimilarityMatch(close, 3)));
+    }
+
+    @Test
+    void testSearch_whenImageIsExcluded_thenItIsLeftOut() {
+        final UUID uuid = UUID.randomUUID();
+        index.put(uuid, 42L);
+
+        assertThat(index.search(42L, 0, 10, uuid), is(empty()));
+    }
+
+    @Test
+    void testRemove_whenImageRemoved_thenNotFoundAnymore() {
+        final UUID uuid = UUID.randomUUID();
+        index.put(uuid, 42L);
+        index.put(uuid, 43L);
+
+        index.remove(uuid);
+
+        assertThat(index.search(42L, 4, 10, null), is(empty()));
+        assertThat(index.size(), equalTo(0));
+    }
+
+    @Test
+    void testSearch_whenDistanceIsTooLarge_thenRejected() {
+        assertThrows(IllegalArgumentException.class, () -> index.search(0L, PerceptualHashIndex.MAX_DISTANCE + 1, 10, null));
+    }
+
+    @Test
+    void testSearch_whenManyHashesIndexed_thenSameResultAsFullScan() {
+        final Random random = new Random(11);
+        final List<UUID> uuids = new ArrayList<>();
+        final List<Long> hashes = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            // Every fourth hash is a variation of an earlier one, so there are close pairs to find
+            final long hash = i % 4 == 3 ? flipBits(hashes.get(random.nextInt(i)), random.nextInt(12), random) : random.nextLong();
+            uuids.add(UUID.randomUUID());
+            hashes.add(hash);
+            index.put(uuids.get(i), hash);
+        }
+
+        for (int query = 0; query < 200; query++) {
+            final long hash = flipBits(hashes.get(random.nextInt(hashes.size())), random.nextInt(6), random);
+            final Set<UUID> expected = new HashSet<>();
+            for (int i = 0; i < hashes.size(); i++) {
+                if (PerceptualHash.distance(hash, hashes.get(i)) <= PerceptualHashIndex.MAX_DISTANCE) {
+                    expected.add(uuids.get(i));
+                }
+            }
+
+            final Set<UUID> found = index.search(hash, PerceptualHashIndex.MAX_DISTANCE, Integer.MAX_VALUE, null).stream()
+                    .map(SimilarityMatch::getUuid)
+                    .collect(Collectors.toSet());
+
+            assertThat(found, equalTo(expected));
+        }
+    }
+
+    private static long flipBits(long hash, int bits, Random random) {
+        for (int i = 0; i < bits; i++) {
+            hash ^= 1L << random.nextInt(64);
+        }
+        return hash;
+    }
+}
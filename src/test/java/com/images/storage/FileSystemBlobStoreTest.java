@@ -0,0 +1,129 @@
+package com.images.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class FileSystemBlobStoreTest {
+
+    @TempDir
+    Path root;
+
+    private FileSystemBlobStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new FileSystemBlobStore(root.toString());
+    }
+
+    @Test
+    void testStore_whenContentStored_thenKeyIsSha256OfContentAndFileWritten() throws IOException {
+        final byte[] content = "hello".getBytes(StandardCharsets.UTF_8);
+
+        final StoredBlob blob = store.store(new ByteArrayInputStream(content));
+
+        assertThat(blob.getKey(), equalTo("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824"));
+        assertThat(blob.getSize(), equalTo((long) content.length));
+        assertThat(store.exists(blob.getKey()), equalTo(true));
+        assertThat(Files.readAllBytes(root.resolve("2c").resolve("f2").resolve(blob.getKey())), equalTo(content));
+    }
+
+    @Test
+    void testStore_whenContentIsLargerThanBuffer_thenWholeContentWritten() throws IOException {
+        final byte[] content = new byte[300 * 1024 + 17];
+        new Random(42).nextBytes(content);
+
+        final StoredBlob blob = store.store(new ByteArrayInputStream(content));
+
+        assertThat(blob.getSize(), equalTo((long) content.length));
+        assertThat(Files.readAllBytes(root.resolve(blob.getKey().substring(0, 2))
+                .resolve(blob.getKey().substring(2, 4)).resolve(blob.getKey())), equalTo(content));
+    }
+
+    @Test
+    void testStore_whenSameContentStoredTwice_thenBlobIsDeduplicated() throws IOException {
+        final byte[] content = "same bytes".getBytes(StandardCharsets.UTF_8);
+
+        final StoredBlob first = store.store(new ByteArrayInputStream(content));
+        final StoredBlob second = store.store(new ByteArrayInputStream(content));
+
+        assertThat(second, equalTo(first));
+        try (Stream<Path> incoming = Files.list(root.resolve("incoming"))) {
+            assertThat("Temporary files should be cleaned up", incoming.count(), equalTo(0L));
+        }
+    }
+
+    @Test
+    void testImportFile_whenKeyIsKnown_thenFileMovedIntoPlace() throws IOException {
+        final Path file = Files.write(root.resolve("upload.part"), "hello".getBytes(StandardCharsets.UTF_8));
+
+        final StoredBlob blob = store.importFile(file, "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824");
+
+        assertThat(blob.getSize(), equalTo(5L));
+        assertThat(store.exists(blob.getKey()), equalTo(true));
+        assertThat(Files.exists(file), equalTo(false));
+    }
+
+    @Test
+    void testLocate_whenBlobExists_thenWholeFileRegionReturned() {
+        final StoredBlob blob = store.store(new ByteArrayInputStream("located".getBytes(StandardCharsets.UTF_8)));
+
+        final Optional<BlobLocation> location = store.locate(blob.getKey());
+
+        assertThat(location.isPresent(), equalTo(true));
+        assertThat(location.get().getOffset(), equalTo(0L));
+        assertThat(location.get().getLength(), equalTo(blob.getSize()));
+        assertThat(Files.isRegularFile(location.get().getFile()), equalTo(true));
+    }
+
+    @Test
+    void testLocate_whenBlobDoesNotExist_thenEmptyReturned() {
+        assertThat(store.locate("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824").isPresent(), equalTo(false));
+    }
+
+    @Test
+    void testDelete_whenBlobExists_thenBlobRemoved() {
+        final StoredBlob blob = store.store(new ByteArrayInputStream("to delete".getBytes(StandardCharsets.UTF_8)));
+
+        store.delete(blob.getKey());
+
+        assertThat(store.exists(blob.getKey()), equalTo(false));
+    }
+
+    @Test
+    void testDeleteUnlessStoredSince_whenSameContentIsUploadedAgain_thenBlobIsKept() throws IOException {
+        final StoredBlob blob = store.store(new ByteArrayInputStream("shared".getBytes(StandardCharsets.UTF_8)));
+        final Path file = store.locate(blob.getKey()).get().getFile();
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minusSeconds(3600)));
+        final Instant storedBefore = Instant.now().minusSeconds(60);
+
+        // The duplicate upload counts as storing the content again
+        store.store(new ByteArrayInputStream("shared".getBytes(StandardCharsets.UTF_8)));
+        assertThat(store.deleteUnlessStoredSince(blob.getKey(), storedBefore), equalTo(false));
+        assertThat(store.exists(blob.getKey()), equalTo(true));
+
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minusSeconds(3600)));
+        assertThat(store.deleteUnlessStoredSince(blob.getKey(), storedBefore), equalTo(true));
+        assertThat(store.exists(blob.getKey()), equalTo(false));
+    }
+
+    @Test
+    void testExists_whenKeyIsNotAHash_thenFalseReturned() {
+        assertThat(store.exists("../../etc/passwd"), equalTo(false));
+        assertThat(store.exists("/images/legacy.png"), equalTo(false));
+    }
+}
@@ -0,0 +1,194 @@
+package com.images.storage.pack;
+
+import com.images.storage.BlobKeys;
+import com.images.storage.StoredBlob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class PackStoreTest {
+
+    @TempDir
+    Path root;
+
+    private PackStore store;
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void testAppend_whenStoreIsReopened_thenIndexIsRebuiltFromSegments() throws IOException {
+        store = new PackStore(root, 1024 * 1024);
+        final byte[] kept = bytes("kept");
+        final byte[] deleted = bytes("deleted");
+        store.append(key(kept), new ByteArrayInputStream(kept), false);
+        store.append(key(deleted), new ByteArrayInputStream(deleted), false);
+        store.delete(key(deleted));
+        store.close();
+
+        store = new PackStore(root, 1024 * 1024);
+
+        assertThat(store.size(), equalTo(1));
+        assertThat(store.contains(key(deleted)), equalTo(false));
+        assertThat(read(key(kept)), equalTo(kept));
+    }
+
+    @Test
+    void testDeleteUnlessStoredSince_whenContentWasStoredAfterTheCutoff_thenItIsKept() {
+        store = new PackStore(root, 1024 * 1024);
+        final Instant before = Instant.now().minusSeconds(60);
+        final StoredBlob blob = store.store(new ByteArrayInputStream(bytes("recent")));
+
+        assertThat(store.deleteUnlessStoredSince(blob.getKey(), before), equalTo(false));
+        assertThat(store.deleteUnlessStoredSince(blob.getKey(), Instant.now().plusSeconds(60)), equalTo(true));
+        assertThat(store.contains(blob.getKey()), equalTo(false));
+    }
+
+    @Test
+    void testAppend_whenDeflated_thenReadsOriginalContent() throws IOException {
+        store = new PackStore(root, 1024 * 1024);
+        final byte[] content = new byte[200 * 1024];
+        final Random random = new Random(7);
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) random.nextInt(4);
+        }
+
+        final PackEntry entry = store.append(key(content), new ByteArrayInputStream(content), true);
+
+        assertThat(entry.isDeflated(), equalTo(true));
+        assertThat(entry.getLength(), lessThan((long) content.length));
+        assertThat(read(key(content)), equalTo(content));
+    }
+
+    @Test
+    void testCompact_whenSegmentsAreMostlyDead_thenLiveBlobsSurviveAndDeletedStayDeleted() throws IOException {
+        // Every record fills a segment of its own
+        store = new PackStore(root, 1);
+        final byte[] first = bytes("first");
+        final byte[] second = bytes("second");
+        final byte[] third = bytes("third");
+        store.append(key(first), new ByteArrayInputStream(first), false);
+        store.append(key(second), new ByteArrayInputStream(second), false);
+        store.append(key(third), new ByteArrayInputStream(third), false);
+        store.delete(key(second));
+        final long before = store.totalBytes();
+
+        assertThat(store.compact(0.5), greaterThan(0L));
+        // Retired segments are removed by the next run
+        store.compact(0.5);
+        store.close();
+        store = new PackStore(root, 1);
+
+        assertThat(store.totalBytes(), lessThan(before));
+        assertThat(store.contains(key(second)), equalTo(false));
+        assertThat(read(key(first)), equalTo(first));
+        assertThat(read(key(third)), equalTo(third));
+    }
+
+    @Test
+    void testOpen_whenLastRecordIsIncomplete_thenItIsCutOff() throws IOException {
+        store = new PackStore(root, 1024 * 1024);
+        final byte[] content = bytes("complete");
+        store.append(key(content), new ByteArrayInputStream(content), false);
+        final long size = store.totalBytes();
+        store.close();
+        Files.write(root.resolve("000000000001.pack"), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        store = new PackStore(root, 1024 * 1024);
+
+        assertThat(store.totalBytes(), equalTo(size));
+        assertThat(read(key(content)), equalTo(content));
+    }
+
+    @Test
+    void testOpen_whenDataOfLastRecordWasNotPersisted_thenRecordIsCutOffByItsChecksum() throws IOException {
+        store = new PackStore(root, 1024 * 1024);
+        final byte[] kept = bytes("kept");
+        final byte[] torn = bytes("torn");
+        store.append(key(kept), new ByteArrayInputStream(kept), false);
+        final long size = store.totalBytes();
+        final PackEntry entry = store.append(key(torn), new ByteArrayInputStream(torn), false);
+        store.close();
+        try (FileChannel channel = FileChannel.open(root.resolve("000000000001.pack"), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[(int) entry.getLength()]), entry.getDataOffset());
+        }
+
+        store = new PackStore(root, 1024 * 1024);
+
+        assertThat(store.totalBytes(), equalTo(size));
+        assertThat(store.contains(key(torn)), equalTo(false));
+        assertThat(read(key(kept)), equalTo(kept));
+    }
+
+    @Test
+    void testCompact_whenStreamOverRetiredSegmentIsOpen_thenSegmentIsKeptUntilItIsClosed() throws IOException {
+        store = new PackStore(root, 1);
+        final byte[] first = bytes("first");
+        final byte[] second = bytes("second");
+        store.append(key(first), new ByteArrayInputStream(first), false);
+        store.append(key(second), new ByteArrayInputStream(second), false);
+        final PackEntry entry = store.find(key(first)).orElseThrow(IllegalStateException::new);
+        final Path file = root.resolve("000000000001.pack");
+        store.delete(key(second));
+        store.delete(key(first));
+
+        try (InputStream content = store.open(entry)) {
+            assertThat(store.compact(0.5), greaterThan(0L));
+            store.compact(0.5);
+
+            assertThat(Files.exists(file), equalTo(true));
+            assertThat(content.readAllBytes(), equalTo(first));
+        }
+        store.compact(0.5);
+
+        assertThat(Files.exists(file), equalTo(false));
+    }
+
+    @Test
+    void testStore_whenContentIsStoredTwice_thenItIsAppendedOnceAndNothingIsLeftStaged() throws IOException {
+        store = new PackStore(root, 1024 * 1024);
+
+        final StoredBlob first = store.store(new ByteArrayInputStream(bytes("same")));
+        final long size = store.totalBytes();
+        final StoredBlob second = store.store(new ByteArrayInputStream(bytes("same")));
+
+        assertThat(second.getKey(), equalTo(first.getKey()));
+        assertThat(store.totalBytes(), equalTo(size));
+        assertThat(read(first.getKey()), equalTo(bytes("same")));
+        try (Stream<Path> files = Files.list(root)) {
+            assertThat(files.count(), equalTo(1L));
+        }
+    }
+
+    private byte[] read(String key) throws IOException {
+        try (InputStream content = store.open(store.find(key).orElseThrow(IllegalStateException::new))) {
+            return content.readAllBytes();
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String key(byte[] content) {
+        return BlobKeys.toHex(BlobKeys.newDigest().digest(content));
+    }
+}
@@ -0,0 +1,96 @@
+package com.images.storage.pack;
+
+import com.images.storage.BlobLocation;
+import com.images.storage.StoredBlob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class PackedBlobStoreTest {
+
+    @TempDir
+    Path root;
+
+    private PackedBlobStore store;
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void testStore_whenSameContentStoredTwice_thenItIsAppendedOnce() {
+        final PackStore packStore = new PackStore(root, 1024 * 1024);
+        store = new PackedBlobStore(packStore, 0.3);
+        final byte[] content = bytes("same bytes");
+
+        final StoredBlob first = store.store(new ByteArrayInputStream(content));
+        final long size = packStore.totalBytes();
+        final StoredBlob second = store.store(new ByteArrayInputStream(content));
+
+        assertThat(second, equalTo(first));
+        assertThat(packStore.totalBytes(), equalTo(size));
+        assertThat(packStore.size(), equalTo(1));
+    }
+
+    @Test
+    void testLocate_whenSegmentIsSealed_thenRegionIsServedFromTheMapping() throws IOException {
+        // Every blob fills a segment, so all but the last one are sealed
+        store = new PackedBlobStore(new PackStore(root, 1), 0.3);
+        final byte[] content = bytes("first image");
+        final StoredBlob blob = store.store(new ByteArrayInputStream(content));
+        store.store(new ByteArrayInputStream(bytes("second image")));
+
+        final BlobLocation location = store.locate(blob.getKey()).orElseThrow(IllegalStateException::new);
+
+        assertThat(location.getLength(), equalTo((long) content.length));
+        assertThat(location.mapped().isPresent(), equalTo(true));
+        assertThat(toBytes(location.mapped().get()), equalTo(content));
+        assertThat(read(location), equalTo(content));
+    }
+
+    @Test
+    void testCompact_whenBlobsWereDeleted_thenSpaceIsReclaimedAndOthersStayReadable() throws IOException {
+        final PackStore packStore = new PackStore(root, 1);
+        store = new PackedBlobStore(packStore, 0.3);
+        final StoredBlob deleted = store.store(new ByteArrayInputStream(bytes("deleted image")));
+        final StoredBlob kept = store.store(new ByteArrayInputStream(bytes("kept image")));
+        store.delete(deleted.getKey());
+
+        assertThat(store.compact(), greaterThan(0L));
+
+        assertThat(store.exists(deleted.getKey()), equalTo(false));
+        assertThat(store.locate(deleted.getKey()).isPresent(), equalTo(false));
+        assertThat(read(store.locate(kept.getKey()).orElseThrow(IllegalStateException::new)), equalTo(bytes("kept image")));
+    }
+
+    private static byte[] read(BlobLocation location) throws IOException {
+        // A single positioned read of the region
+        final ByteBuffer content = ByteBuffer.allocate((int) location.getLength());
+        try (FileChannel channel = FileChannel.open(location.getFile(), StandardOpenOption.READ)) {
+            channel.read(content, location.getOffset());
+        }
+        return content.array();
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
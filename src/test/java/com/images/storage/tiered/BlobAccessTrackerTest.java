@@ -0,0 +1,86 @@
+package com.images.storage.tiered;
+
+import com.images.domain.BlobAccessStats;
+import com.images.domain.BlobTier;
+import com.images.repository.BlobAccessStatsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class BlobAccessTrackerTest {
+
+    private static final String KEY = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    @Mock
+    private BlobAccessStatsRepository repository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private BlobAccessTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        given(transactionManager.getTransaction(any())).willReturn(new SimpleTransactionStatus());
+        given(repository.findAllById(anyIterable())).willReturn(Collections.emptyList());
+        tracker = new BlobAccessTracker(repository, transactionManager, 100);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlush_whenBlobWasReadSeveralTimes_thenWritesOneRowWithTheCount() {
+        tracker.record(KEY);
+        tracker.record(KEY);
+        tracker.record(KEY);
+
+        assertThat(tracker.flush(), equalTo(1));
+
+        final ArgumentCaptor<List<BlobAccessStats>> saved = ArgumentCaptor.forClass(List.class);
+        verify(repository).saveAll(saved.capture());
+        assertThat(saved.getValue(), hasSize(1));
+        assertThat(saved.getValue().get(0).getBlobKey(), equalTo(KEY));
+        assertThat(saved.getValue().get(0).getAccessCount(), equalTo(3L));
+        assertThat(saved.getValue().get(0).getTier(), equalTo(BlobTier.HOT));
+    }
+
+    @Test
+    void testFlush_whenNothingWasReadSinceLastFlush_thenWritesNothingAndForgetsTheBlob() {
+        tracker.record(KEY);
+        tracker.flush();
+
+        assertThat(tracker.flush(), equalTo(0));
+        assertThat(tracker.accessedSince(KEY, Instant.now().minusSeconds(60)), equalTo(false));
+        verify(repository, times(1)).saveAll(anyIterable());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlush_whenWriteFails_thenCountsAreKeptForTheNextFlush() {
+        tracker.record(KEY);
+        given(repository.saveAll(anyIterable())).willThrow(new IllegalStateException("down")).willReturn(null);
+
+        assertThat(tracker.flush(), equalTo(0));
+        tracker.record(KEY);
+        assertThat(tracker.flush(), equalTo(1));
+
+        final ArgumentCaptor<List<BlobAccessStats>> saved = ArgumentCaptor.forClass(List.class);
+        verify(repository, times(2)).saveAll(saved.capture());
+        assertThat(saved.getValue().get(0).getAccessCount(), equalTo(2L));
+    }
+}
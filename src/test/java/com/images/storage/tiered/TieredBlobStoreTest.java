@@ -0,0 +1,134 @@
+package com.images.storage.tiered;
+
+import com.images.storage.BlobLocation;
+import com.images.storage.FileSystemBlobStore;
+import com.images.storage.StoredBlob;
+import com.images.storage.pack.PackStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(SpringExtension.class)
+class TieredBlobStoreTest {
+
+    @TempDir
+    Path root;
+    @Mock
+    private BlobAccessTracker accessTracker;
+
+    private FileSystemBlobStore hot;
+    private PackStore cold;
+    private TieredBlobStore store;
+
+    @BeforeEach
+    void setUp() {
+        hot = new FileSystemBlobStore(root.resolve("hot").toString());
+        cold = new PackStore(root.resolve("cold"), 1024 * 1024);
+        store = new TieredBlobStore(hot, cold, accessTracker);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void testDemote_whenBlobWasNotRead_thenMovesToColdTierAndComesBackWhenLocated() throws IOException {
+        final byte[] content = "rarely read".getBytes(StandardCharsets.UTF_8);
+        final StoredBlob blob = store.store(new ByteArrayInputStream(content));
+
+        assertThat(store.demote(Collections.singletonList(blob.getKey()), Instant.now()), contains(blob.getKey()));
+        assertThat(hot.exists(blob.getKey()), equalTo(false));
+        assertThat(cold.contains(blob.getKey()), equalTo(true));
+        assertThat(store.exists(blob.getKey()), equalTo(true));
+
+        final Optional<BlobLocation> location = store.locate(blob.getKey());
+
+        assertThat(location.isPresent(), equalTo(true));
+        assertThat(Files.readAllBytes(location.get().getFile()), equalTo(content));
+        assertThat(hot.exists(blob.getKey()), equalTo(true));
+        assertThat(cold.contains(blob.getKey()), equalTo(false));
+    }
+
+    @Test
+    void testDemote_whenBlobIsReadWhileCopied_thenStaysHot() {
+        final StoredBlob blob = store.store(new ByteArrayInputStream("busy".getBytes(StandardCharsets.UTF_8)));
+        given(accessTracker.accessedSince(eq(blob.getKey()), any(Instant.class))).willReturn(false, true);
+
+        assertThat(store.demote(Collections.singletonList(blob.getKey()), Instant.now()), empty());
+        assertThat(hot.exists(blob.getKey()), equalTo(true));
+        assertThat(cold.contains(blob.getKey()), equalTo(false));
+    }
+
+    @Test
+    void testDemote_whenBlobIsLocatedBeforeHotFileIsRemoved_thenLocateWaitsAndReadsThePromotedCopy() throws Exception {
+        final byte[] content = "read during demotion".getBytes(StandardCharsets.UTF_8);
+        final StoredBlob blob = store.store(new ByteArrayInputStream(content));
+        final AtomicReference<Optional<BlobLocation>> located = new AtomicReference<>();
+        final Thread reader = new Thread(() -> located.set(store.locate(blob.getKey())));
+        final AtomicInteger checks = new AtomicInteger();
+        given(accessTracker.accessedSince(eq(blob.getKey()), any(Instant.class))).willAnswer(invocation -> {
+            // The second check is the one made right before the hot file is removed
+            if (checks.incrementAndGet() == 2) {
+                reader.start();
+                // The reader blocks until the hot file is removed instead of being handed a file about to go
+                reader.join(200);
+                assertThat(reader.isAlive(), equalTo(true));
+            }
+            return false;
+        });
+
+        assertThat(store.demote(Collections.singletonList(blob.getKey()), Instant.now()), contains(blob.getKey()));
+        reader.join();
+
+        assertThat(located.get().isPresent(), equalTo(true));
+        assertThat(Files.readAllBytes(located.get().get().getFile()), equalTo(content));
+        assertThat(cold.contains(blob.getKey()), equalTo(false));
+    }
+
+    @Test
+    void testStore_whenContentIsInColdTier_thenOnlyTheNewHotCopyIsKept() {
+        final byte[] content = "uploaded twice".getBytes(StandardCharsets.UTF_8);
+        final StoredBlob blob = store.store(new ByteArrayInputStream(content));
+        store.demote(Collections.singletonList(blob.getKey()), Instant.now());
+        assertThat(cold.contains(blob.getKey()), equalTo(true));
+
+        store.store(new ByteArrayInputStream(content));
+
+        assertThat(hot.exists(blob.getKey()), equalTo(true));
+        assertThat(cold.contains(blob.getKey()), equalTo(false));
+        assertThat(cold.size(), equalTo(0));
+    }
+
+    @Test
+    void testLocate_whenBlobIsRead_thenAccessIsRecorded() {
+        final StoredBlob blob = store.store(new ByteArrayInputStream("read".getBytes(StandardCharsets.UTF_8)));
+
+        store.locate(blob.getKey());
+
+        verify(accessTracker, times(2)).record(blob.getKey());
+    }
+}
@@ -0,0 +1,143 @@
+package com.images.uploads;
+
+import com.images.exception.UploadConflictException;
+import com.images.exception.UploadNotFoundException;
+import com.images.storage.FileSystemBlobStore;
+import com.images.storage.StoredBlob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UploadSessionManagerTest {
+
+    @TempDir
+    Path root;
+
+    private FileSystemBlobStore blobStore;
+    private UploadSessionManager manager;
+
+    @BeforeEach
+    void setUp() {
+        blobStore = new FileSystemBlobStore(root.resolve("blobs").toString());
+        manager = new UploadSessionManager(blobStore, root.resolve("uploads").toString(), 1024 * 1024, 60);
+    }
+
+    @Test
+    void testComplete_whenAllChunksAppended_thenContentStoredUnderItsHash() throws IOException {
+        final byte[] content = new byte[200 * 1024 + 3];
+        new Random(7).nextBytes(content);
+        final UploadSession session = manager.create(content.length);
+
+        long offset = manager.append(session.getId(), 0, new ByteArrayInputStream(Arrays.copyOfRange(content, 0, 70000)));
+        offset = manager.append(session.getId(), offset, new ByteArrayInputStream(Arrays.copyOfRange(content, 70000, content.length)));
+        final StoredBlob blob = manager.complete(session.getId(), stored -> stored);
+
+        assertThat(offset, equalTo((long) content.length));
+        assertThat(blob, equalTo(blobStore.store(new ByteArrayInputStream(content))));
+        assertThat(Files.exists(session.getFile()), equalTo(false));
+        assertThat(manager.size(), equalTo(0));
+    }
+
+    @Test
+    void testComplete_whenCommitFails_thenSessionIsKeptAndRetryReturnsTheFirstResultFromThenOn() throws IOException {
+        final UploadSession session = manager.create(4);
+        manager.append(session.getId(), 0, new ByteArrayInputStream(new byte[]{1, 2, 3, 4}));
+        final List<StoredBlob> committed = new ArrayList<>();
+
+        assertThrows(IllegalStateException.class, () -> manager.complete(session.getId(), blob -> {
+            throw new IllegalStateException("Transaction rolled back");
+        }));
+        final String first = manager.complete(session.getId(), blob -> {
+            committed.add(blob);
+            return "image";
+        });
+        final String second = manager.complete(session.getId(), blob -> {
+            committed.add(blob);
+            return "another image";
+        });
+
+        assertThat(first, equalTo("image"));
+        assertThat(second, equalTo("image"));
+        assertThat(committed.size(), equalTo(1));
+        assertThat(blobStore.exists(committed.get(0).getKey()), equalTo(true));
+    }
+
+    @Test
+    void testConstructor_whenUploadsAreUnfinished_thenTheyAreRestoredAndOtherFilesRemoved() throws IOException {
+        final byte[] content = new byte[1000];
+        new Random(11).nextBytes(content);
+        final UploadSession session = manager.create(content.length);
+        manager.append(session.getId(), 0, new ByteArrayInputStream(Arrays.copyOfRange(content, 0, 600)));
+        final Path stray = Files.createFile(root.resolve("uploads").resolve("stray.part"));
+
+        final UploadSessionManager restarted = new UploadSessionManager(blobStore, root.resolve("uploads").toString(), 1024 * 1024, 60);
+        final long offset = restarted.append(session.getId(), 600, new ByteArrayInputStream(Arrays.copyOfRange(content, 600, content.length)));
+        final StoredBlob blob = restarted.complete(session.getId(), stored -> stored);
+
+        assertThat(offset, equalTo((long) content.length));
+        assertThat(blob, equalTo(blobStore.store(new ByteArrayInputStream(content))));
+        assertThat(Files.exists(stray), equalTo(false));
+        try (Stream<Path> files = Files.list(root.resolve("uploads"))) {
+            assertThat(files.count(), equalTo(0L));
+        }
+    }
+
+    @Test
+    void testAppend_whenOffsetDoesNotMatch_thenConflictAndNothingWritten() {
+        final UploadSession session = manager.create(10);
+
+        assertThrows(UploadConflictException.class,
+                () -> manager.append(session.getId(), 4, new ByteArrayInputStream(new byte[2])));
+
+        assertThat(session.getOffset(), equalTo(0L));
+    }
+
+    @Test
+    void testAppend_whenChunkGoesPastLength_thenConflict() {
+        final UploadSession session = manager.create(4);
+
+        assertThrows(UploadConflictException.class,
+                () -> manager.append(session.getId(), 0, new ByteArrayInputStream(new byte[5])));
+
+        assertThat(session.getOffset(), equalTo(0L));
+    }
+
+    @Test
+    void testComplete_whenBytesAreMissing_thenConflictAndSessionKept() throws IOException {
+        final UploadSession session = manager.create(10);
+        manager.append(session.getId(), 0, new ByteArrayInputStream(new byte[6]));
+
+        assertThrows(UploadConflictException.class, () -> manager.complete(session.getId(), blob -> blob));
+
+        assertThat(manager.find(session.getId()).isPresent(), equalTo(true));
+        assertThat(Files.size(session.getFile()), equalTo(6L));
+    }
+
+    @Test
+    void testExpireIdleSessions_whenSessionIsIdleTooLong_thenSessionAndFileRemoved() {
+        final UploadSession idle = manager.create(10);
+
+        assertThat(manager.expireIdleSessions(Instant.now()), equalTo(0));
+        assertThat(manager.expireIdleSessions(Instant.now().plus(Duration.ofMinutes(2))), equalTo(1));
+
+        assertThat(Files.exists(idle.getFile()), equalTo(false));
+        assertThrows(UploadNotFoundException.class,
+                () -> manager.append(idle.getId(), 0, new ByteArrayInputStream(new byte[1])));
+    }
+}
@@ -0,0 +1,177 @@
+package com.images.variants;
+
+import com.images.cache.TransformCache;
+import com.images.domain.Image;
+import com.images.exception.ImageTooLargeException;
+import com.images.exception.TranscodeRejectedException;
+import com.images.storage.BlobLocation;
+import com.images.storage.FileSystemBlobStore;
+import com.images.storage.StoredBlob;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ImageFormatNegotiatorTest {
+
+    // Writers for both ship with the JDK, unlike avif
+    private final ImageFormatNegotiator negotiator = new ImageFormatNegotiator("avif, bmp, png", 1000);
+
+    @TempDir
+    Path root;
+
+    @Test
+    void testGetFormats_whenNoWriterIsInstalledForAFormat_thenItIsNotOffered() {
+        assertThat(negotiator.getFormats(), contains("bmp", "png"));
+    }
+
+    @Test
+    void testGetFormats_whenWebpWriterIsOnTheClasspath_thenWebpIsOffered() {
+        assertThat(new ImageFormatNegotiator("avif,webp", 1000).getFormats(), contains("webp"));
+    }
+
+    @Test
+    void testNegotiate_whenClientAcceptsSeveralFormats_thenHighestQualityWinsAndTiesGoToTheConfiguredOrder() {
+        final Image image = image("image/jpeg", 20, 20);
+
+        assertThat(negotiator.negotiate(image, "image/png,image/bmp,*/*;q=0.8"), equalTo(Optional.of("bmp")));
+        assertThat(negotiator.negotiate(image, "image/png,image/bmp;q=0.5"), equalTo(Optional.of("png")));
+    }
+
+    @Test
+    void testNegotiate_whenClientOnlyAcceptsWildcards_thenUploadedContentIsServed() {
+        assertThat(negotiator.negotiate(image("image/jpeg", 20, 20), "image/*,*/*;q=0.8"), equalTo(Optional.empty()));
+        assertThat(negotiator.negotiate(image("image/jpeg", 20, 20), "image/png;q=0"), equalTo(Optional.empty()));
+        assertThat(negotiator.negotiate(image("image/jpeg", 20, 20), "not a media type"), equalTo(Optional.empty()));
+    }
+
+    @Test
+    void testNegotiate_whenImageShouldNotBeTranscoded_thenUploadedContentIsServed() {
+        final String accept = "image/bmp,image/png";
+
+        assertThat(negotiator.negotiate(image("image/bmp", 20, 20), accept), equalTo(Optional.empty()));
+        assertThat(negotiator.negotiate(image("image/gif", 20, 20), accept), equalTo(Optional.empty()));
+        assertThat(negotiator.negotiate(image("image/jpeg", 100, 100), accept), equalTo(Optional.empty()));
+        assertThat(negotiator.negotiate(image("application/octet-stream", null, null), accept), equalTo(Optional.empty()));
+    }
+
+    @Test
+    void testTranscode_whenTargetHasNoAlpha_thenTransparentImageIsFlattenedAndCachedOnce() throws IOException {
+        final FileSystemBlobStore blobStore = new FileSystemBlobStore(root.resolve("blobs").toString());
+        final TransformCache transformCache = new TransformCache(root.resolve("cache").toString(), 1024 * 1024);
+        final ImageTransformer transformer = new ImageTransformer(transformCache, 85, 1000, 1);
+        final StoredBlob blob = blobStore.store(new ByteArrayInputStream(transparentPng(30, 20)));
+        final Image image = Image.builder().uuid(UUID.randomUUID()).path(blob.getKey()).mimeType("image/png").build();
+
+        final TransformCache.Entry first = transformer.transcode(image, blobStore.locate(blob.getKey()).get(), "jpeg");
+        final TransformCache.Entry second = transformer.transcode(image, blobStore.locate(blob.getKey()).get(), "jpeg");
+        first.close();
+        second.close();
+
+        final BufferedImage transcoded = ImageIO.read(first.getFile().toFile());
+        assertThat(first.getFormat(), equalTo("jpeg"));
+        assertThat(transcoded.getWidth(), equalTo(30));
+        assertThat(transcoded.getColorModel().hasAlpha(), equalTo(false));
+        assertThat(second.getFile(), equalTo(first.getFile()));
+        assertThat(transformCache.size(), equalTo(1));
+        assertThat(Files.size(first.getFile()), greaterThan(0L));
+    }
+
+    @Test
+    void testTranscode_whenImageHasMorePixelsThanAllowed_thenItIsRefusedBeforeDecoding() throws IOException {
+        final FileSystemBlobStore blobStore = new FileSystemBlobStore(root.resolve("blobs").toString());
+        final TransformCache transformCache = new TransformCache(root.resolve("cache").toString(), 1024 * 1024);
+        final ImageTransformer transformer = new ImageTransformer(transformCache, 85, 1000, 1);
+        final StoredBlob blob = blobStore.store(new ByteArrayInputStream(transparentPng(50, 50)));
+        final Image image = Image.builder().uuid(UUID.randomUUID()).path(blob.getKey()).mimeType("image/png").build();
+
+        assertThrows(ImageTooLargeException.class,
+                () -> transformer.transcode(image, blobStore.locate(blob.getKey()).get(), "jpeg"));
+        assertThat(transformCache.size(), equalTo(0));
+    }
+
+    @Test
+    void testTranscode_whenTargetIsWebp_thenRiffWebpFileIsWritten() throws IOException {
+        final FileSystemBlobStore blobStore = new FileSystemBlobStore(root.resolve("blobs").toString());
+        final ImageTransformer transformer = new ImageTransformer(
+                new TransformCache(root.resolve("cache").toString(), 1024 * 1024), 85, 1000, 1);
+        final StoredBlob blob = blobStore.store(new ByteArrayInputStream(transparentPng(30, 20)));
+        final Image image = Image.builder().uuid(UUID.randomUUID()).path(blob.getKey()).mimeType("image/png").build();
+
+        try (TransformCache.Entry transcoded = transformer.transcode(image, blobStore.locate(blob.getKey()).get(), "webp")) {
+            final byte[] content = Files.readAllBytes(transcoded.getFile());
+            assertThat(new String(content, 0, 4, StandardCharsets.US_ASCII), equalTo("RIFF"));
+            assertThat(new String(content, 8, 4, StandardCharsets.US_ASCII), equalTo("WEBP"));
+        }
+    }
+
+    @Test
+    void testTranscode_whenAsManyTranscodesAsAllowedAreRunning_thenItIsRejectedAndNothingIsCached() throws Exception {
+        final FileSystemBlobStore blobStore = new FileSystemBlobStore(root.resolve("blobs").toString());
+        final TransformCache transformCache = new TransformCache(root.resolve("cache").toString(), 1024 * 1024);
+        final ImageTransformer transformer = new ImageTransformer(transformCache, 85, 1000, 1);
+        final StoredBlob first = blobStore.store(new ByteArrayInputStream(transparentPng(30, 20)));
+        final StoredBlob second = blobStore.store(new ByteArrayInputStream(transparentPng(20, 30)));
+        final Image firstImage = Image.builder().uuid(UUID.randomUUID()).path(first.getKey()).mimeType("image/png").build();
+        final Image secondImage = Image.builder().uuid(UUID.randomUUID()).path(second.getKey()).mimeType("image/png").build();
+        final CountDownLatch decoding = new CountDownLatch(1);
+        final CountDownLatch rejected = new CountDownLatch(1);
+        // Stands in for content that takes long to decode, the first transcode holds the only permit meanwhile
+        final BlobLocation source = blobStore.locate(first.getKey()).get();
+        final BlobLocation slowSource = new BlobLocation(source.getFile(), source.getOffset(), source.getLength()) {
+            @Override
+            public Path getFile() {
+                decoding.countDown();
+                try {
+                    rejected.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getFile();
+            }
+        };
+        final CompletableFuture<TransformCache.Entry> running = CompletableFuture.supplyAsync(() -> {
+            try {
+                return transformer.transcode(firstImage, slowSource, "jpeg");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        decoding.await();
+
+        assertThrows(TranscodeRejectedException.class,
+                () -> transformer.transcode(secondImage, blobStore.locate(second.getKey()).get(), "jpeg"));
+        rejected.countDown();
+        running.get().close();
+
+        assertThat(transformCache.size(), equalTo(1));
+        transformer.transcode(secondImage, blobStore.locate(second.getKey()).get(), "jpeg").close();
+        assertThat(transformCache.size(), equalTo(2));
+    }
+
+    private static Image image(String mimeType, Integer width, Integer height) {
+        return Image.builder().uuid(UUID.randomUUID()).path("path").mimeType(mimeType).width(width).height(height).build();
+    }
+
+    private static byte[] transparentPng(int width, int height) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", output);
+        return output.toByteArray();
+    }
+}
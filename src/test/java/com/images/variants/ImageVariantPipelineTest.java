@@ -0,0 +1,174 @@
+package com.images.variants;
+
+import com.images.domain.Image;
+import com.images.domain.ImageVariant;
+import com.images.events.ImageChangedEvent;
+import com.images.services.ImageVariantService;
+import com.images.storage.FileSystemBlobStore;
+import com.images.storage.StoredBlob;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+class ImageVariantPipelineTest {
+
+    @TempDir
+    Path root;
+
+    private FileSystemBlobStore blobStore;
+    private ImageVariantService imageVariantService;
+    private ImageVariantPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        blobStore = new FileSystemBlobStore(root.toString());
+        imageVariantService = mock(ImageVariantService.class);
+        pipeline = new ImageVariantPipeline(blobStore, imageVariantService, new SimpleMeterRegistry(),
+                "thumbnail:200x200:jpeg:80, medium:1024x1024:png:90", 1, 1, 10);
+    }
+
+    @Test
+    void testGenerateVariants_whenContentIsAnImage_thenEveryVariantFitsItsBoxAndIsStored() throws IOException {
+        final UUID uuid = UUID.randomUUID();
+        final StoredBlob original = blobStore.store(new ByteArrayInputStream(png(800, 400)));
+        given(imageVariantService.replaceVariants(eq(uuid), eq(original.getKey()), anyList())).willReturn(true);
+
+        pipeline.generateVariants(uuid, original.getKey());
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<List<ImageVariant>> variants = ArgumentCaptor.forClass(List.class);
+        verify(imageVariantService).replaceVariants(eq(uuid), eq(original.getKey()), variants.capture());
+        final ImageVariant thumbnail = variants.getValue().get(0);
+        final ImageVariant medium = variants.getValue().get(1);
+
+        assertThat(thumbnail.getName(), equalTo("thumbnail"));
+        assertThat(thumbnail.getWidth(), equalTo(200));
+        assertThat(thumbnail.getHeight(), equalTo(100));
+        assertThat(thumbnail.getMimeType(), equalTo("image/jpeg"));
+        assertThat(blobStore.exists(thumbnail.getPath()), equalTo(true));
+
+        assertThat("Images smaller than the box should not be enlarged", medium.getWidth(), equalTo(800));
+        assertThat(medium.getHeight(), equalTo(400));
+        assertThat(medium.getMimeType(), equalTo("image/png"));
+        assertThat(blobStore.exists(medium.getPath()), equalTo(true));
+    }
+
+    @Test
+    void testGenerateVariants_whenContentIsNotAnImage_thenNoVariantsSaved() {
+        final StoredBlob original = blobStore.store(new ByteArrayInputStream("not an image".getBytes()));
+
+        pipeline.generateVariants(UUID.randomUUID(), original.getKey());
+
+        verify(imageVariantService, never()).replaceVariants(any(UUID.class), anyString(), anyList());
+    }
+
+    @Test
+    void testOnImageChanged_whenQueueIsFull_thenImageIsDeferredAndSubmittedAgainLater() throws Exception {
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        pipeline = new ImageVariantPipeline(blobStore, imageVariantService, meterRegistry, "thumbnail:200x200:jpeg:80", 1, 1, 10);
+        final StoredBlob original = blobStore.store(new ByteArrayInputStream(png(100, 100)));
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> threads = new CopyOnWriteArrayList<>();
+        given(imageVariantService.replaceVariants(any(UUID.class), eq(original.getKey()), anyList())).willAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            release.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+        try {
+            // The first job keeps the only worker busy and the second fills the queue
+            for (int i = 0; i < 3; i++) {
+                pipeline.onImageChanged(ImageChangedEvent.created(
+                        Image.builder().uuid(UUID.randomUUID()).path(original.getKey()).build()));
+            }
+
+            assertThat(meterRegistry.counter("images.variants.deferred").count(), equalTo(1.0));
+            assertThat(pipeline.deferredCount(), equalTo(1));
+
+            release.countDown();
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (threads.size() < 3 && System.currentTimeMillis() < deadline) {
+                pipeline.submitDeferred();
+                Thread.sleep(10);
+            }
+
+            assertThat(threads.size(), equalTo(3));
+            assertThat(pipeline.deferredCount(), equalTo(0));
+            assertThat("Variants should never be generated on the committing thread",
+                    threads, everyItem(org.hamcrest.Matchers.startsWith("image-variants-")));
+        } finally {
+            release.countDown();
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    void testOnImageChanged_whenDeferredImagesAreAtTheLimit_thenImageIsDropped() throws Exception {
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        pipeline = new ImageVariantPipeline(blobStore, imageVariantService, meterRegistry, "thumbnail:200x200:jpeg:80", 1, 1, 1);
+        final StoredBlob original = blobStore.store(new ByteArrayInputStream(png(100, 100)));
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        given(imageVariantService.replaceVariants(any(UUID.class), eq(original.getKey()), anyList())).willAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            done.countDown();
+            return true;
+        });
+        try {
+            for (int i = 0; i < 4; i++) {
+                pipeline.onImageChanged(ImageChangedEvent.created(
+                        Image.builder().uuid(UUID.randomUUID()).path(original.getKey()).build()));
+            }
+
+            assertThat(meterRegistry.counter("images.variants.deferred").count(), equalTo(1.0));
+            assertThat(meterRegistry.counter("images.variants.dropped").count(), equalTo(1.0));
+        } finally {
+            release.countDown();
+            // The queued job still writes to the temporary directory once the worker is released
+            done.await(5, TimeUnit.SECONDS);
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    void testParse_whenSpecIsMalformed_thenIllegalArgumentExceptionThrown() {
+        assertThrows(IllegalArgumentException.class, () -> VariantSpec.parse("thumbnail:200:jpeg"));
+        assertThrows(IllegalArgumentException.class, () -> VariantSpec.parse("thumbnail:200x200:jpeg:101"));
+    }
+
+    @Test
+    void testConstructor_whenFormatHasNoWriter_thenFallsBackToJpeg() {
+        final ImageVariantPipeline fallbackPipeline = new ImageVariantPipeline(blobStore, imageVariantService,
+                new SimpleMeterRegistry(), "small:100x100:nosuchformat:80", 1, 1, 10);
+
+        assertThat(fallbackPipeline.getSpecs().get(0).getFormat(), equalTo("jpeg"));
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", output);
+        return output.toByteArray();
+    }
+}